@@ -0,0 +1,43 @@
+package org.cave.rabbit.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Ponto de entrada dos benchmarks (profile "benchmark" do pom).
+ * <p>
+ * jmh: microbenchmarks de {@link ConversaoBenchmark}, resultado em target/benchmark/jmh.json.
+ * ponta-a-ponta: {@link PontaAPonta}, resultado em target/benchmark/ponta-a-ponta.json.
+ * <p>
+ * Os JSONs seguem sempre o mesmo formato, pra comparar um build com outro.
+ */
+public class Benchmarks {
+
+    static final Path SAIDA = Paths.get("target", "benchmark");
+
+    public static void main(String[] args) throws Exception {
+        String qual = args.length > 0 ? args[0] : "ponta-a-ponta";
+        Files.createDirectories(SAIDA);
+
+        switch (qual) {
+            case "jmh":
+                new Runner(new OptionsBuilder()
+                        .include(ConversaoBenchmark.class.getName())
+                        .resultFormat(ResultFormatType.JSON)
+                        .result(SAIDA.resolve("jmh.json").toString())
+                        .build())
+                        .run();
+                break;
+            case "ponta-a-ponta":
+                PontaAPonta.executa(SAIDA.resolve("ponta-a-ponta.json"));
+                break;
+            default:
+                throw new IllegalArgumentException("Benchmark desconhecido: " + qual + " (use jmh ou ponta-a-ponta)");
+        }
+    }
+
+}
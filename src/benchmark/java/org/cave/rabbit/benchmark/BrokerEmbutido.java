@@ -0,0 +1,56 @@
+package org.cave.rabbit.benchmark;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.qpid.server.SystemLauncher;
+import org.apache.qpid.server.model.SystemConfig;
+
+/**
+ * Broker AMQP 0-9-1 em memória (Qpid Broker-J) rodando dentro da JVM do benchmark. Mesmos usuário, senha e virtual
+ * host do {@link org.cave.rabbit.rabbit.config.ConexaoProperties}, só a porta é sorteada.
+ * <p>
+ * Não é um RabbitMQ: serve para comparar um build com outro, não para prever números de produção. Argumentos de fila
+ * que ele não conhece (dead letter) são ignorados.
+ */
+class BrokerEmbutido implements AutoCloseable {
+
+    private static final String CONFIGURACAO = "/qpid-benchmark.json";
+
+    private final SystemLauncher launcher = new SystemLauncher();
+    private final int porta;
+
+    BrokerEmbutido() throws Exception {
+        porta = portaLivre();
+
+        Map<String, String> contexto = new HashMap<>();
+        contexto.put("qpid.amqp_port", String.valueOf(porta));
+        contexto.put("qpid.work_dir", Files.createTempDirectory("qpid-benchmark").toString());
+        contexto.put("queue.behaviourOnUnknownDeclareArgument", "IGNORE"); // O Qpid não conhece x-dead-letter-*; o benchmark não passa pela DLQ
+
+        Map<String, Object> atributos = new HashMap<>();
+        atributos.put(SystemConfig.TYPE, "Memory");
+        atributos.put(SystemConfig.INITIAL_CONFIGURATION_LOCATION, BrokerEmbutido.class.getResource(CONFIGURACAO).toExternalForm());
+        atributos.put(SystemConfig.STARTUP_LOGGED_TO_SYSTEM_OUT, false);
+        atributos.put(SystemConfig.CONTEXT, contexto);
+        launcher.startup(atributos);
+    }
+
+    String endereco() {
+        return "localhost:" + porta;
+    }
+
+    @Override
+    public void close() {
+        launcher.shutdown();
+    }
+
+    private static int portaLivre() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+package org.cave.rabbit.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.cave.rabbit.rabbit.config.FormatosProperties;
+import org.cave.rabbit.rabbit.config.RabbitConfig;
+import org.cave.rabbit.rabbit.mensagem.CargaJson;
+import org.cave.rabbit.rabbit.mensagem.Compressao;
+import org.cave.rabbit.rabbit.mensagem.ConversorPorContentType;
+import org.cave.rabbit.rabbit.mensagem.FormatoCarga;
+import org.cave.rabbit.rabbit.mensagem.RegistroDeFormatos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.messaging.support.GenericMessage;
+
+/**
+ * Custo de transformar o que chega no controller em {@link Message} e de volta.
+ * <p>
+ * - mapa*: o caminho antigo, Map desserializado pelo Spring e serializado de novo pelo converter.
+ * - bytesCrus: o caminho atual do controller, corpo repassado sem conversão ({@link CargaJson#mensagem()}).
+ * - smileLz4: bytes crus transcodificados e comprimidos pelo {@link RegistroDeFormatos}.
+ * - listener*: o lado do consumidor, com o converter do {@link RabbitConfig#conversorDeListener()} (POJO/Map) ou leitura
+ *   preguiçosa de um campo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversaoBenchmark {
+
+    /**
+     * Tamanho aproximado do JSON. 2000 fica abaixo do limite de compressão padrão, 20000 acima.
+     */
+    @Param({"2000", "20000"})
+    private int tamanhoBytes;
+
+    private Map<String, Object> mapa;
+    private byte[] json;
+    private Message mensagemJson;
+
+    private Jackson2JsonMessageConverter jackson2Json;
+    private ConversorPorContentType conversor;
+    private ConversorPorContentType conversorDoListener;
+    private RegistroDeFormatos smileLz4;
+
+    @Setup
+    public void setup() throws Exception {
+        mapa = Cargas.mapa(tamanhoBytes);
+        json = new ObjectMapper().writeValueAsBytes(mapa);
+        mensagemJson = new CargaJson(json).mensagem();
+
+        jackson2Json = new Jackson2JsonMessageConverter();
+        conversor = new ConversorPorContentType(FormatoCarga.JSON);
+        conversorDoListener = new RabbitConfig(new FormatosProperties()).conversorDeListener();
+
+        FormatosProperties formatos = new FormatosProperties();
+        formatos.setPadrao(FormatoCarga.SMILE);
+        formatos.setCompressao(Compressao.LZ4);
+        formatos.setLimiteCompressaoBytes(0);
+        smileLz4 = new RegistroDeFormatos(formatos);
+    }
+
+    @Benchmark
+    public Message mapaJackson2Json() {
+        return jackson2Json.toMessage(mapa, new MessageProperties());
+    }
+
+    @Benchmark
+    public Message mapaConversorPorContentType() {
+        return conversor.toMessage(mapa, new MessageProperties());
+    }
+
+    @Benchmark
+    public Message bytesCrus() {
+        return new CargaJson(json).mensagem();
+    }
+
+    @Benchmark
+    public Message smileLz4() {
+        return smileLz4.codifica("benchmark", new CargaJson(json).mensagem());
+    }
+
+    @Benchmark
+    public Object listenerConversorPorContentType() {
+        return conversorDoListener.fromMessage(new GenericMessage<>(json), Map.class);
+    }
+
+    @Benchmark
+    public Object listenerJackson2Json() {
+        return jackson2Json.fromMessage(mensagemJson);
+    }
+
+    @Benchmark
+    public String listenerCampoPreguicoso() {
+        return CargaJson.de(mensagemJson).texto("id");
+    }
+
+    /**
+     * Geração das cargas de teste, compartilhada com o {@link PontaAPonta}.
+     */
+    static class Cargas {
+
+        static Map<String, Object> mapa(int tamanhoBytes) {
+            Map<String, Object> mapa = new LinkedHashMap<>();
+            mapa.put("id", "3f0c6d2e-9a4b-4d8e-b1f7-5c2a7e9d0b13");
+            mapa.put("tipo", "PEDIDO");
+            List<Map<String, Object>> itens = new ArrayList<>();
+            mapa.put("itens", itens);
+            for (int i = 0, tamanho = 60; tamanho < tamanhoBytes; i++) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("sku", "SKU-" + i);
+                item.put("quantidade", i % 7 + 1);
+                item.put("preco", 10.5 + i);
+                item.put("descricao", "Item de exemplo número " + i);
+                itens.add(item);
+                tamanho += 90;
+            }
+            return mapa;
+        }
+
+        static byte[] json(int tamanhoBytes) {
+            try {
+                return new ObjectMapper().writeValueAsBytes(mapa(tamanhoBytes));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,258 @@
+package org.cave.rabbit.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Data;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.cave.rabbit.ExemploRabbitApiApplication;
+import org.cave.rabbit.rabbit.config.RabbitContainerFactoryConfig;
+import org.cave.rabbit.rabbit.config.constants.RabbitQueueConstants;
+import org.cave.rabbit.rabbit.mensagem.CargaJson;
+import org.cave.rabbit.rabbit.publicacao.PublicadorConfirmado;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Sobe a aplicação inteira contra o {@link BrokerEmbutido} e mede, para cada cenário de consumidores/lote/prefetch:
+ * <p>
+ * - publicação: mensagens/s até a última confirmação do broker ({@link PublicadorConfirmado}).
+ * - consumo: mensagens/s do início da publicação até a última mensagem processada pelo listener do nome-do-processo.
+ * - latência ponta a ponta (p50/p99/p999): do envio até o fim do lote em que a mensagem foi processada. Inclui a espera
+ *   pelo lote encher.
+ * <p>
+ * A medição no consumidor é um advice no container (não mexe no listener). O envio grava System.nanoTime num header;
+ * broker e aplicação estão na mesma JVM, então o relógio é o mesmo.
+ * <p>
+ * Parâmetros (system properties):
+ * - bench.mensagens: mensagens medidas por cenário (padrão 20000). Antes de cada cenário roda um aquecimento de 1/4 disso.
+ * - bench.tamanho-bytes: tamanho aproximado do JSON (padrão 512).
+ * - bench.cenarios: lista "consumidores:lote:prefetch" separada por vírgula (padrão 1:1:1,3:10:250,10:50:500).
+ */
+class PontaAPonta {
+
+    static final String HEADER_ENVIO = "x-benchmark-envio-nanos";
+
+    private static final long TIMEOUT_MINUTOS = 5;
+
+    static void executa(Path saida) throws Exception {
+        int mensagens = Integer.getInteger("bench.mensagens", 20000);
+        int tamanhoBytes = Integer.getInteger("bench.tamanho-bytes", 512);
+        String cenarios = System.getProperty("bench.cenarios", "1:1:1,3:10:250,10:50:500");
+        byte[] corpo = ConversaoBenchmark.Cargas.json(tamanhoBytes);
+
+        List<Resultado> resultados = new ArrayList<>();
+        try (BrokerEmbutido broker = new BrokerEmbutido()) {
+            for (String cenario : cenarios.split(",")) {
+                Resultado resultado = executaCenario(broker, cenario.trim(), corpo, mensagens);
+                System.out.println(resultado);
+                resultados.add(resultado);
+            }
+        }
+
+        Map<String, Object> relatorio = new LinkedHashMap<>();
+        relatorio.put("quando", Instant.now().toString());
+        relatorio.put("java", System.getProperty("java.version"));
+        relatorio.put("mensagens", mensagens);
+        relatorio.put("tamanhoBytes", corpo.length);
+        relatorio.put("cenarios", resultados);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(saida.toFile(), relatorio);
+        System.out.println("Resultado em " + saida.toAbsolutePath());
+    }
+
+    private static Resultado executaCenario(BrokerEmbutido broker, String cenario, byte[] corpo, int mensagens) throws Exception {
+        String[] partes = cenario.split(":");
+        Resultado resultado = new Resultado();
+        resultado.setConsumidores(Integer.parseInt(partes[0]));
+        resultado.setLote(Integer.parseInt(partes[1]));
+        resultado.setPrefetch(Integer.parseInt(partes[2]));
+
+        Cronometro cronometro = new Cronometro();
+        try (ConfigurableApplicationContext contexto = sobeAplicacao(broker, resultado, cronometro)) {
+            contexto.getBean(RabbitAdmin.class).purgeQueue(RabbitQueueConstants.PROCESSO_QUEUE, false);
+            PublicadorConfirmado publicador = contexto.getBean(PublicadorConfirmado.class);
+            RabbitTemplate rabbitTemplate = contexto.getBean(RabbitTemplate.class);
+
+            rodada(publicador, rabbitTemplate, cronometro, corpo, Math.max(1, mensagens / 4));
+            Rodada medida = rodada(publicador, rabbitTemplate, cronometro, corpo, mensagens);
+
+            resultado.setPublicacaoMsgsPorSegundo(porSegundo(mensagens, medida.fimPublicacao - medida.inicio));
+            resultado.setConsumoMsgsPorSegundo(porSegundo(mensagens, medida.fimConsumo - medida.inicio));
+            long[] latencias = medida.latencias;
+            Arrays.sort(latencias);
+            resultado.setLatenciaP50Ms(percentilMs(latencias, 0.50));
+            resultado.setLatenciaP99Ms(percentilMs(latencias, 0.99));
+            resultado.setLatenciaP999Ms(percentilMs(latencias, 0.999));
+        }
+        return resultado;
+    }
+
+    private static ConfigurableApplicationContext sobeAplicacao(BrokerEmbutido broker, Resultado cenario, Cronometro cronometro) {
+        // Como argumentos, e não .properties(...): aquilo vira default e perde pro application.properties
+        return new SpringApplicationBuilder(ExemploRabbitApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .initializers(contexto -> contexto.getBeanFactory().addBeanPostProcessor(new Instrumentacao(cronometro)))
+                .run("--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        "--rabbit.conexao.addresses=" + broker.endereco(),
+                        "--rabbit.container.nome-do-processo.consumidores-min=" + cenario.getConsumidores(),
+                        "--rabbit.container.nome-do-processo.consumidores-max=" + cenario.getConsumidores(),
+                        "--rabbit.container.nome-do-processo.tamanho-lote=" + cenario.getLote(),
+                        "--rabbit.container.nome-do-processo.prefetch=" + cenario.getPrefetch(),
+                        "--rabbit.container.nome-do-processo.receive-timeout-ms=100",
+                        "--rabbit.container.nome-do-processo.adaptativo.habilitado=false",
+                        "--rabbit.container.nome-do-processo.log-amostragem=0");
+    }
+
+    private static Rodada rodada(PublicadorConfirmado publicador, RabbitTemplate rabbitTemplate, Cronometro cronometro,
+                                 byte[] corpo, int mensagens) throws Exception {
+        Rodada rodada = new Rodada(mensagens);
+        cronometro.rodada = rodada;
+
+        CompletableFuture<?>[] confirmacoes = new CompletableFuture<?>[mensagens];
+        rodada.inicio = System.nanoTime();
+        for (int i = 0; i < mensagens; i++) {
+            Message message = new CargaJson(corpo).mensagem();
+            message.getMessageProperties().setHeader(HEADER_ENVIO, System.nanoTime());
+            confirmacoes[i] = publicador.publicaAguardandoJanela(rabbitTemplate, RabbitQueueConstants.PROCESSO_EX, "", message);
+        }
+        CompletableFuture.allOf(confirmacoes).get(TIMEOUT_MINUTOS, TimeUnit.MINUTES);
+        rodada.fimPublicacao = System.nanoTime();
+
+        if (!rodada.consumidas.await(TIMEOUT_MINUTOS, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Consumo não terminou: faltaram " + rodada.consumidas.getCount() + " mensagens");
+        }
+        return rodada;
+    }
+
+    private static double porSegundo(int mensagens, long nanos) {
+        return mensagens / (nanos / 1e9);
+    }
+
+    private static double percentilMs(long[] ordenadas, double percentil) {
+        int indice = (int) Math.ceil(percentil * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, indice)] / 1e6;
+    }
+
+    /**
+     * Pendura o {@link Cronometro} no container do nome-do-processo.
+     * A factory é um lambda, então embrulhamos ela em outro que adiciona o advice em cada container criado.
+     */
+    private static class Instrumentacao implements BeanPostProcessor {
+
+        private final Cronometro cronometro;
+
+        Instrumentacao(Cronometro cronometro) {
+            this.cronometro = cronometro;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!RabbitContainerFactoryConfig.NOME_DO_PROCESSO_FACTORY_NAME.equals(beanName)) {
+                return bean;
+            }
+            RabbitListenerContainerFactory<SimpleMessageListenerContainer> original = (RabbitListenerContainerFactory<SimpleMessageListenerContainer>) bean;
+            return (RabbitListenerContainerFactory<SimpleMessageListenerContainer>) endpoint -> {
+                SimpleMessageListenerContainer container = original.createListenerContainer(endpoint);
+                container.setAdviceChain(cronometro);
+                return container;
+            };
+        }
+
+    }
+
+    /**
+     * Envolve a chamada do listener. Quando o lote volta, cada mensagem dele está processada.
+     */
+    private static class Cronometro implements MethodInterceptor {
+
+        private volatile Rodada rodada;
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Object retorno = invocation.proceed();
+            long agora = System.nanoTime();
+            Object dados = invocation.getArguments()[1];
+            if (dados instanceof List) {
+                for (Object message : (List<?>) dados) {
+                    registra((Message) message, agora);
+                }
+            } else if (dados instanceof Message) {
+                registra((Message) dados, agora);
+            }
+            return retorno;
+        }
+
+        private void registra(Message message, long agora) {
+            Object envio = message.getMessageProperties().getHeaders().get(HEADER_ENVIO);
+            Rodada atual = rodada;
+            if (envio instanceof Long && atual != null) {
+                atual.registra(agora - (Long) envio, agora);
+            }
+        }
+
+    }
+
+    private static class Rodada {
+
+        private final long[] latencias;
+        private final AtomicInteger proxima = new AtomicInteger();
+        private final CountDownLatch consumidas;
+        private volatile long inicio;
+        private volatile long fimPublicacao;
+        private volatile long fimConsumo;
+
+        Rodada(int mensagens) {
+            latencias = new long[mensagens];
+            consumidas = new CountDownLatch(mensagens);
+        }
+
+        void registra(long latencia, long agora) {
+            int i = proxima.getAndIncrement();
+            if (i >= latencias.length) {
+                return; // Sobra de rodada anterior (redelivery)
+            }
+            latencias[i] = latencia;
+            if (i == latencias.length - 1) {
+                fimConsumo = agora;
+            }
+            consumidas.countDown();
+        }
+
+    }
+
+    @Data
+    static class Resultado {
+
+        private int consumidores;
+        private int lote;
+        private int prefetch;
+        private double publicacaoMsgsPorSegundo;
+        private double consumoMsgsPorSegundo;
+        private double latenciaP50Ms;
+        private double latenciaP99Ms;
+        private double latenciaP999Ms;
+
+    }
+
+}
@@ -1,22 +1,126 @@
 package org.cave.rabbit.rabbit;
 
-import java.util.Map;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import org.cave.rabbit.rabbit.admissao.ControleDeAdmissao;
+import org.cave.rabbit.rabbit.admissao.DecisaoDeAdmissao;
+import org.cave.rabbit.rabbit.config.PrioridadeProperties;
 import org.cave.rabbit.rabbit.config.constants.RabbitQueueConstants;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.cave.rabbit.rabbit.lote.NomeDoProcessoLoteService;
+import org.cave.rabbit.rabbit.lote.ResultadoLote;
+import org.cave.rabbit.rabbit.mensagem.CargaJson;
+import org.cave.rabbit.rabbit.mensagem.ValidadorJson;
+import org.cave.rabbit.rabbit.outbox.Outbox;
+import org.cave.rabbit.rabbit.particionamento.RoteadorDeParticao;
+import org.cave.rabbit.rabbit.publicacao.AcumuladorDePublicacao;
+import org.springframework.amqp.core.Message;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
 public class NomeDoProcessoController {
 
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final String X_PRIORIDADE = "X-Prioridade"; // 0 (padrão) até rabbit.prioridade.nome-do-processo.maxima
+
+    @Autowired
+    private AcumuladorDePublicacao acumulador;
+
+    @Autowired
+    private NomeDoProcessoLoteService loteService;
+
     @Autowired
-    private RabbitTemplate rabbitTemplate;
+    private ControleDeAdmissao admissao;
+
+    @Autowired
+    private RoteadorDeParticao roteador;
+
+    @Autowired
+    private PrioridadeProperties prioridade;
+
+    @Autowired(required = false)
+    private Outbox outbox; // Null com rabbit.publicacao.outbox.habilitado=false
+
+    /**
+     * A resposta só sai quando o broker confirmar a mensagem. 200 no ack, 503 no nack/devolução/timeout.
+     * <p>
+     * Devolvemos um CompletableFuture, então a thread da requisição não fica presa esperando o broker.
+     * <p>
+     * O corpo chega como bytes e vai pro broker do jeito que chegou, com content-type application/json. Só validamos
+     * que é um objeto JSON, em streaming. Nada de Map&lt;String, Object&gt; e nada de serialização Java do HashMap.
+     * <p>
+     * A mensagem não sai sozinha: vai pro {@link AcumuladorDePublicacao}, que junta com as de outras requisições e
+     * envia em lote.
+     * <p>
+     * Consumidor atrasado ou broker bloqueado: 503 (ou 429 se só a confirmação estiver lenta) com Retry-After, antes de
+     * validar ou publicar. Ver {@link ControleDeAdmissao}.
+     * <p>
+     * O header {@link #X_PRIORIDADE} vira a prioridade da mensagem na fila, ver {@link PrioridadeProperties}.
+     * <p>
+     * Com o {@link Outbox} ligado, a resposta é 202 assim que a mensagem estiver no disco; o broker recebe depois, e
+     * broker fora ou lento não aparece pra quem chamou. 503 só com o outbox cheio.
+     */
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<Void>> postaNaFila(@RequestBody byte[] body,
+                                                               @RequestHeader(name = X_PRIORIDADE, required = false) Integer prioridadePedida) {
+        if (outbox == null) { // Com outbox o broker não segura a requisição, quem limita é o disco
+            DecisaoDeAdmissao decisao = admissao.avalia();
+            if (!decisao.aceita()) {
+                return CompletableFuture.completedFuture(recusa(decisao).build());
+            }
+        }
+
+        try {
+            ValidadorJson.validaObjeto(body);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+
+        Message message = roteador.mensagem(new CargaJson(body));
+        message.getMessageProperties().setPriority(prioridade.prioridade(prioridadePedida));
+
+        if (outbox != null) {
+            return outbox.grava(RabbitQueueConstants.PROCESSO_EX, null, message)
+                    .handle((ok, erro) -> erro == null
+                            ? ResponseEntity.accepted().<Void>build()
+                            : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).<Void>build());
+        }
+
+        return acumulador.publica(RabbitQueueConstants.PROCESSO_EX, null, message)
+                .handle((ok, erro) -> erro == null
+                        ? ResponseEntity.ok().<Void>build()
+                        : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).<Void>build());
+    }
+
+    /**
+     * Recebe um array JSON ou NDJSON e posta cada elemento na exchange. O corpo é lido em streaming.
+     *
+     * @param corpo InputStream cru da requisição (não deixamos o Spring MVC desserializar tudo de uma vez)
+     * @return contadores de aceitos/rejeitados, depois que todos os elementos foram confirmados ou recusados
+     */
+    @PostMapping(path = "/lote", consumes = { MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE })
+    public CompletableFuture<ResponseEntity<ResultadoLote>> postaLoteNaFila(InputStream corpo) {
+        DecisaoDeAdmissao decisao = admissao.avalia();
+        if (!decisao.aceita()) {
+            return CompletableFuture.completedFuture(recusa(decisao).build());
+        }
+
+        return loteService.postaLote(corpo)
+                .thenApply(resultado -> resultado.getErro() == null
+                        ? ResponseEntity.ok(resultado)
+                        : ResponseEntity.badRequest().body(resultado));
+    }
 
-    @PostMapping
-    public void postaNaFila(@RequestBody Map<String, Object> body) {
-        rabbitTemplate.convertAndSend(RabbitQueueConstants.PROCESSO_EX, null, body);
+    private ResponseEntity.BodyBuilder recusa(DecisaoDeAdmissao decisao) {
+        return ResponseEntity.status(decisao.status())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(admissao.retryAfterSegundos(decisao)));
     }
 
 }
@@ -1,20 +1,157 @@
 package org.cave.rabbit.rabbit;
 
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.cave.rabbit.rabbit.claimcheck.ClaimCheck;
+import org.cave.rabbit.rabbit.concorrencia.LatenciaRecente;
+import org.cave.rabbit.rabbit.config.NomeDoProcessoContainerProperties;
 import org.cave.rabbit.rabbit.config.RabbitContainerFactoryConfig;
 import org.cave.rabbit.rabbit.config.constants.RabbitQueueConstants;
+import org.cave.rabbit.rabbit.idempotencia.Idempotencia;
+import org.cave.rabbit.rabbit.mensagem.CargaJson;
+import org.cave.rabbit.rabbit.metricas.AmostradorDeLog;
+import org.cave.rabbit.rabbit.metricas.MetricasRabbit;
+import org.cave.rabbit.rabbit.retentativa.PoliticaDeRetentativa;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+@Slf4j
 @Service
 public class NomeDoProcessoRabbitService {
 
+    private static final String FILA = RabbitQueueConstants.PROCESSO_QUEUE;
+    private static final String FACTORY = RabbitContainerFactoryConfig.NOME_DO_PROCESSO_FACTORY_NAME;
+
+    @Autowired
+    private PoliticaDeRetentativa retentativaNomeDoProcesso;
+
+    @Autowired
+    private LatenciaRecente latenciaNomeDoProcesso;
+
+    @Autowired(required = false)
+    private Idempotencia idempotenciaNomeDoProcesso; // Null com rabbit.idempotencia.nome-do-processo.habilitado=false
+
+    @Autowired
+    private MetricasRabbit metricas;
+
+    @Autowired
+    private ClaimCheck claimCheck;
+
+    @Autowired
+    private NomeDoProcessoContainerProperties properties;
+
+    private AmostradorDeLog amostrador;
+
+    @PostConstruct
+    public void init() {
+        amostrador = new AmostradorDeLog(properties.getLogAmostragem());
+    }
+
+    /**
+     * Recebe um lote de mensagens (ver {@link RabbitContainerFactoryConfig#nomeDoProcessoContainerFactory}).
+     * <p>
+     * Cada mensagem é processada individualmente. Se UMA falhar, só ela é reagendada (próximo degrau de retentativa,
+     * ou DLQ se já esgotou) e o resto do lote segue normal. Se deixássemos a exception subir, o container rejeitaria o
+     * lote inteiro e as mensagens boas iriam junto pra DLQ.
+     * <p>
+     * Mensagem que já foi processada com sucesso (redelivery, reenvio do publicador) é pulada sem chamar o
+     * {@link #processa}, ver {@link Idempotencia}. Ela entra no ack do lote como as outras.
+     * <p>
+     * Mensagem com claim-check chega sem corpo. Processou (ou era duplicata), o blob é descartado quando o lote inteiro
+     * termina (antes disso o lote ainda pode ser rejeitado); foi pra retentativa, a referência vai junto e o blob fica.
+     * Ver {@link ClaimCheck}.
+     * <p>
+     * No modo PARALELO o "lote" tem uma mensagem só e chega de uma thread do pool, ver
+     * {@link org.cave.rabbit.rabbit.concorrencia.ProcessamentoParalelo}.
+     *
+     * @param mensagens lote entregue pelo container
+     */
     @RabbitListener(
+            id = RabbitContainerFactoryConfig.NOME_DO_PROCESSO_LISTENER_ID,
             queues = { RabbitQueueConstants.PROCESSO_QUEUE },
             containerFactory = RabbitContainerFactoryConfig.NOME_DO_PROCESSO_FACTORY_NAME
     )
-    public void consumer(Message message) {
-        System.out.println(message);
+    public void consumer(List<Message> mensagens) {
+        List<Message> descartes = new ArrayList<>(); // Blobs só saem se o lote inteiro passar, ver abaixo
+        for (int i = 0; i < mensagens.size(); i++) {
+            Message message = mensagens.get(i);
+            String fila = fila(message);
+            String factory = FILA.equals(fila) ? FACTORY : RabbitContainerFactoryConfig.PARTICAO_FACTORY_NAME;
+            if (Boolean.TRUE.equals(message.getMessageProperties().getRedelivered())) {
+                metricas.redelivery(fila, factory);
+            }
+            if (idempotenciaNomeDoProcesso != null && idempotenciaNomeDoProcesso.duplicada(message)) {
+                metricas.consumo(fila, factory, MetricasRabbit.DUPLICADA, 1);
+                descartes.add(message); // Cada publicação tem o seu blob, o da duplicata não vai ser lido
+                continue;
+            }
+            long inicio = System.nanoTime();
+            try {
+                processa(message, fila);
+                long nanos = System.nanoTime() - inicio;
+                latenciaNomeDoProcesso.registra(nanos);
+                metricas.processamento(fila, factory, nanos);
+                metricas.consumo(fila, factory, MetricasRabbit.ACK, 1);
+            } catch (Exception e) {
+                reagenda(message, e, fila, factory, mensagens.size() - i);
+                continue;
+            }
+            if (idempotenciaNomeDoProcesso != null) {
+                idempotenciaNomeDoProcesso.registra(message);
+            }
+            descartes.add(message);
+        }
+        // Só aqui o container vai mandar o ack. Se um reagenda estourar no meio do lote, o lote inteiro é rejeitado e
+        // as já processadas vão pra DLQ: com o descarte feito antes, a DLQ ficaria com referência pra blob apagado.
+        descartes.forEach(claimCheck::descarta);
+    }
+
+    private void reagenda(Message message, Exception e, String fila, String factory, int restantesNoLote) {
+        String destino;
+        try {
+            destino = retentativaNomeDoProcesso.reagenda(message, e);
+        } catch (RuntimeException falha) {
+            // Não conseguimos reagendar: a exception sobe e o container rejeita o lote inteiro (as que já foram
+            // processadas voltam junto, não tem como separar no ack de lote).
+            metricas.consumo(fila, factory, MetricasRabbit.REJEITADA, restantesNoLote);
+            throw falha;
+        }
+        metricas.consumo(fila, factory, RabbitQueueConstants.PROCESSO_DLQ.equals(destino) ? MetricasRabbit.DLQ : MetricasRabbit.RETENTATIVA, 1);
+        log.warn("Falha processando messageId={} fila={} destino={} erro={}",
+                message.getMessageProperties().getMessageId(), fila, destino, e.toString());
+    }
+
+    /**
+     * O mesmo listener atende a fila principal e as partições (ver ParticionamentoConfig). As métricas saem com a
+     * fila de onde a mensagem veio.
+     */
+    private static String fila(Message message) {
+        String fila = message.getMessageProperties().getConsumerQueue();
+        return fila != null ? fila : FILA;
+    }
+
+    /**
+     * Aqui entra a regra de negócio. O corpo é JSON cru (application/json): use {@link CargaJson#de(Message)} para
+     * ler só os campos necessários (parse preguiçoso) ou repassar os bytes sem conversão nenhuma.
+     * <p>
+     * Mensagem grande pode chegar só com a referência (corpo vazio, ver {@link ClaimCheck}): {@link ClaimCheck#abre}
+     * lê em streaming do armazém, CargaJson.de(claimCheck.resolve(message)) carrega o corpo inteiro.
+     * <p>
+     * No modo PARALELO (rabbit.container.nome-do-processo.modo) várias mensagens passam aqui ao mesmo tempo, na ordem
+     * que terminarem.
+     */
+    private void processa(Message message, String fila) {
+        if (amostrador.deveLogar()) {
+            MessageProperties props = message.getMessageProperties();
+            Object bytes = ClaimCheck.ehReferencia(message) ? props.getHeaders().get(ClaimCheck.X_CLAIM_CHECK_BYTES) : message.getBody().length;
+            log.info("Amostra fila={} messageId={} bytes={} contentType={} redelivered={}",
+                    fila, props.getMessageId(), bytes, props.getContentType(), props.getRedelivered());
+        }
     }
 
 }
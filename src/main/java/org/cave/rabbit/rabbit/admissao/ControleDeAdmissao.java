@@ -0,0 +1,132 @@
+package org.cave.rabbit.rabbit.admissao;
+
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.cave.rabbit.rabbit.config.AdmissaoProperties;
+import org.cave.rabbit.rabbit.config.ParticionamentoProperties;
+import org.cave.rabbit.rabbit.config.constants.RabbitQueueConstants;
+import org.cave.rabbit.rabbit.metricas.MetricasRabbit;
+import org.cave.rabbit.rabbit.publicacao.PublicadorConfirmado;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionBlockedEvent;
+import org.springframework.amqp.rabbit.connection.ConnectionUnblockedEvent;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decide se o POST do nome-do-processo aceita mais trabalho. Sem isso, consumidor atrasado faz a fila crescer até o
+ * broker disparar o alarme de memória e bloquear TODAS as conexões de publicação; aí as requisições ficam penduradas
+ * em vez de falhar rápido.
+ * <p>
+ * Três sinais, do mais grave pro menos:
+ * - Broker bloqueado: o broker mandou connection.blocked (alarme de memória/disco). A CachingConnectionFactory vira
+ *   isso em {@link ConnectionBlockedEvent}. 503 até chegar o unblocked.
+ * - Fila cheia: profundidade da fila acima de "profundidadeMaxima", lida a cada "intervaloMs". 503 até baixar de
+ *   "profundidadeRetomada". Com partições ({@link ParticionamentoProperties}), é a soma da fila principal com as partições.
+ * - Muitas publicações em voo: o {@link PublicadorConfirmado} tem mais que "emVooMaximo" aguardando ack. 429.
+ * <p>
+ * A decisão é só leitura de campos voláteis, não custa nada por requisição. Recusa sempre leva Retry-After.
+ */
+@Slf4j
+@Component
+public class ControleDeAdmissao {
+
+    private final RabbitAdmin rabbitAdmin;
+    private final PublicadorConfirmado publicador;
+    private final MetricasRabbit metricas;
+    private final AdmissaoProperties properties;
+    private final ParticionamentoProperties particionamento;
+    private final Set<Connection> bloqueadas = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean filaCheia;
+
+    public ControleDeAdmissao(RabbitAdmin rabbitAdmin, PublicadorConfirmado publicador, MetricasRabbit metricas,
+                              AdmissaoProperties properties, ParticionamentoProperties particionamento) {
+        this.rabbitAdmin = rabbitAdmin;
+        this.publicador = publicador;
+        this.metricas = metricas;
+        this.properties = properties;
+        this.particionamento = particionamento;
+        metricas.gauge("rabbit.admissao.broker.bloqueado", () -> bloqueadas.isEmpty() ? 0 : 1);
+        metricas.gauge("rabbit.admissao.fila.cheia", () -> filaCheia ? 1 : 0);
+    }
+
+    public DecisaoDeAdmissao avalia() {
+        if (!properties.isHabilitado()) {
+            return DecisaoDeAdmissao.ACEITA;
+        }
+        DecisaoDeAdmissao decisao;
+        if (!bloqueadas.isEmpty()) {
+            decisao = DecisaoDeAdmissao.BROKER_BLOQUEADO;
+        } else if (filaCheia) {
+            decisao = DecisaoDeAdmissao.FILA_CHEIA;
+        } else if (publicador.emVoo() >= properties.getEmVooMaximo()) {
+            decisao = DecisaoDeAdmissao.PUBLICACOES_EM_VOO;
+        } else {
+            return DecisaoDeAdmissao.ACEITA;
+        }
+        metricas.admissaoRecusada(decisao.motivo());
+        return decisao;
+    }
+
+    /**
+     * @return segundos para o header Retry-After
+     */
+    public long retryAfterSegundos(DecisaoDeAdmissao decisao) {
+        return decisao == DecisaoDeAdmissao.PUBLICACOES_EM_VOO
+                ? properties.getRetryAfterLimiteSegundos()
+                : properties.getRetryAfterIndisponivelSegundos();
+    }
+
+    @EventListener
+    public void bloqueada(ConnectionBlockedEvent event) {
+        log.warn("Broker bloqueou a publicação: {}", event.getReason());
+        bloqueadas.add(event.getConnection());
+    }
+
+    @EventListener
+    public void desbloqueada(ConnectionUnblockedEvent event) {
+        log.info("Broker liberou a publicação");
+        bloqueadas.remove(event.getConnection());
+    }
+
+    @Scheduled(fixedDelayString = "${rabbit.admissao.nome-do-processo.intervalo-ms:1000}")
+    public void atualiza() {
+        bloqueadas.removeIf(connection -> !connection.isOpen()); // Conexão que caiu bloqueada nunca recebe o unblocked
+
+        Long profundidade = profundidade();
+        if (profundidade == null) {
+            return; // Sem leitura, mantém o último estado
+        }
+        if (!filaCheia && profundidade > properties.getProfundidadeMaxima()) {
+            log.warn("Fila {} com {} mensagens, recusando novas publicações", RabbitQueueConstants.PROCESSO_QUEUE, profundidade);
+            filaCheia = true;
+        } else if (filaCheia && profundidade < properties.getProfundidadeRetomada()) {
+            log.info("Fila {} com {} mensagens, aceitando publicações de novo", RabbitQueueConstants.PROCESSO_QUEUE, profundidade);
+            filaCheia = false;
+        }
+    }
+
+    private Long profundidade() {
+        long total = 0;
+        for (String fila : particionamento.filas()) {
+            try {
+                Properties propriedades = rabbitAdmin.getQueueProperties(fila);
+                if (propriedades == null) {
+                    return null;
+                }
+                total += Long.parseLong(propriedades.get(RabbitAdmin.QUEUE_MESSAGE_COUNT).toString());
+            } catch (AmqpException e) {
+                log.debug("Não foi possível ler a profundidade de {}", fila, e);
+                return null;
+            }
+        }
+        return total;
+    }
+
+}
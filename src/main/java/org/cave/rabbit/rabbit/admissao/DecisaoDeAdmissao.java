@@ -0,0 +1,35 @@
+package org.cave.rabbit.rabbit.admissao;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Resultado do {@link ControleDeAdmissao}. O motivo vai como tag na métrica de recusas.
+ */
+public enum DecisaoDeAdmissao {
+
+    ACEITA(HttpStatus.OK, "aceita"),
+    PUBLICACOES_EM_VOO(HttpStatus.TOO_MANY_REQUESTS, "em_voo"),
+    FILA_CHEIA(HttpStatus.SERVICE_UNAVAILABLE, "fila_cheia"),
+    BROKER_BLOQUEADO(HttpStatus.SERVICE_UNAVAILABLE, "broker_bloqueado");
+
+    private final HttpStatus status;
+    private final String motivo;
+
+    DecisaoDeAdmissao(HttpStatus status, String motivo) {
+        this.status = status;
+        this.motivo = motivo;
+    }
+
+    public boolean aceita() {
+        return this == ACEITA;
+    }
+
+    public HttpStatus status() {
+        return status;
+    }
+
+    public String motivo() {
+        return motivo;
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.cave.rabbit.rabbit.claimcheck;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Instant;
+
+/**
+ * Onde o {@link ClaimCheck} guarda os corpos grandes. A primeira implementação é o {@link ArmazemEmDisco}; outra
+ * (S3, banco...) entra declarando um bean @Primary desse tipo.
+ */
+public interface ArmazemDeBlobs {
+
+    /**
+     * Só volta depois que o conteúdo estiver durável: a referência vai pro broker logo em seguida.
+     *
+     * @return id do blob, vai no header da mensagem
+     */
+    String guarda(byte[] conteudo) throws IOException;
+
+    /**
+     * @return channel posicionado no começo do blob, quem chama fecha
+     * @throws java.nio.file.NoSuchFileException se o blob não existir (ou já foi apagado)
+     */
+    ReadableByteChannel abre(String id) throws IOException;
+
+    void apaga(String id) throws IOException;
+
+    /**
+     * Coleta de órfãos: apaga todo blob guardado antes de "limite".
+     *
+     * @return quantos foram apagados
+     */
+    int apagaAnterioresA(Instant limite) throws IOException;
+
+}
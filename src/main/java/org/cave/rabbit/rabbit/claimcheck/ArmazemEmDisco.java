@@ -0,0 +1,96 @@
+package org.cave.rabbit.rabbit.claimcheck;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link ArmazemDeBlobs} num diretório: um arquivo por blob, em subdiretórios pelos 2 primeiros caracteres do id
+ * (pra não ter um diretório com milhões de arquivos).
+ * <p>
+ * Grava num .tmp, faz o force e só então renomeia (move atômico): quem abrir pelo id nunca vê arquivo pela metade.
+ * A leitura é um FileChannel, o consumidor lê em streaming sem carregar o blob inteiro no heap.
+ */
+public class ArmazemEmDisco implements ArmazemDeBlobs {
+
+    private static final String TEMPORARIO = ".tmp";
+
+    private final Path diretorio;
+
+    public ArmazemEmDisco(Path diretorio) {
+        this.diretorio = diretorio;
+    }
+
+    @Override
+    public String guarda(byte[] conteudo) throws IOException {
+        String id = UUID.randomUUID().toString();
+        Path destino = caminho(id);
+        Files.createDirectories(destino.getParent());
+        Path temporario = destino.resolveSibling(id + TEMPORARIO);
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(conteudo);
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            canal.force(false);
+        }
+        Files.move(temporario, destino, StandardCopyOption.ATOMIC_MOVE);
+        return id;
+    }
+
+    @Override
+    public ReadableByteChannel abre(String id) throws IOException {
+        return FileChannel.open(caminho(id), StandardOpenOption.READ);
+    }
+
+    @Override
+    public void apaga(String id) throws IOException {
+        Files.deleteIfExists(caminho(id));
+    }
+
+    @Override
+    public int apagaAnterioresA(Instant limite) throws IOException {
+        if (!Files.isDirectory(diretorio)) {
+            return 0;
+        }
+        List<Path> velhos;
+        try (Stream<Path> arquivos = Files.walk(diretorio, 2)) {
+            velhos = arquivos.filter(Files::isRegularFile)
+                    .filter(arquivo -> modificadoEm(arquivo).isBefore(limite))
+                    .collect(Collectors.toList());
+        }
+        int apagados = 0;
+        for (Path arquivo : velhos) {
+            if (Files.deleteIfExists(arquivo)) {
+                apagados++;
+            }
+        }
+        return apagados;
+    }
+
+    private Path caminho(String id) {
+        if (id.length() < 3 || id.contains("/") || id.contains("\\") || id.contains("..")) {
+            throw new IllegalArgumentException("Id de blob inválido: " + id); // O id vem de header, não confiamos
+        }
+        return diretorio.resolve(id.substring(0, 2)).resolve(id);
+    }
+
+    private static Instant modificadoEm(Path arquivo) {
+        try {
+            return Files.getLastModifiedTime(arquivo).toInstant();
+        } catch (IOException e) {
+            return Instant.MAX; // Sumiu no meio da varredura (apagado depois do ack), nada a fazer
+        }
+    }
+
+}
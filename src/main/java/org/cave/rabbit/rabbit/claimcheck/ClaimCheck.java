@@ -0,0 +1,168 @@
+package org.cave.rabbit.rabbit.claimcheck;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.time.Instant;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import lombok.extern.slf4j.Slf4j;
+import org.cave.rabbit.rabbit.config.ClaimCheckProperties;
+import org.cave.rabbit.rabbit.metricas.MetricasRabbit;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.MessagePropertiesBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Claim-check: corpo grande não passa pelo broker.
+ * <p>
+ * Mensagem grande na fila ocupa memória do broker (fila clássica guarda o corpo em memória até paginar) e atrasa
+ * todo mundo atrás dela: o consumidor baixa o corpo inteiro no prefetch, mesmo que vá usar só um campo. Aqui,
+ * corpo acima de "limiteBytes" vai pro {@link ArmazemDeBlobs} e o que sai pro broker é uma mensagem vazia com o id do
+ * blob no header {@link #X_CLAIM_CHECK}. Content-type, content-encoding, messageId e os outros headers continuam
+ * na mensagem, então o blob é exatamente o corpo que teria ido (já no formato e comprimido).
+ * <p>
+ * Quem publica: o {@link org.cave.rabbit.rabbit.publicacao.PublicadorConfirmado} chama o {@link #referencia} depois
+ * de codificar. Não conseguiu guardar? A mensagem vai inteira, como antes.
+ * <p>
+ * Quem consome: nada é lido até alguém pedir. {@link #abre} devolve um stream direto do armazém (sem carregar o
+ * blob no heap); {@link #resolve} devolve a mensagem com o corpo, pra quem precisa dos bytes (ex: CargaJson.de).
+ * <p>
+ * Coleta: depois de processar com sucesso, o consumidor chama {@link #descarta} e o blob é apagado "apagarAposMs"
+ * depois (o ack do lote sai só quando o consumidor retorna). Falhou e foi pra retentativa/DLQ: a referência segue
+ * junto e o blob fica. O que sobrar (publicação recusada, reenvio, DLQ esquecida) sai pela "retencao", numa
+ * varredura separada e bem mais espaçada ("intervaloRetencaoMs").
+ */
+@Slf4j
+@Component
+public class ClaimCheck {
+
+    public static final String X_CLAIM_CHECK = "x-claim-check"; // Id do blob
+    public static final String X_CLAIM_CHECK_BYTES = "x-claim-check-bytes"; // Tamanho do corpo que ficou no armazém
+
+    private final ArmazemDeBlobs armazem;
+    private final ClaimCheckProperties properties;
+    private final MetricasRabbit metricas;
+    private final Queue<Descarte> descartes = new ConcurrentLinkedQueue<>(); // Em ordem de prazo: o atraso é sempre o mesmo
+
+    public ClaimCheck(ArmazemDeBlobs armazem, ClaimCheckProperties properties, MetricasRabbit metricas) {
+        this.armazem = armazem;
+        this.properties = properties;
+        this.metricas = metricas;
+        metricas.gauge("rabbit.claim.check.descartes", descartes::size);
+    }
+
+    public static boolean ehReferencia(Message message) {
+        return message.getMessageProperties().getHeaders().get(X_CLAIM_CHECK) != null;
+    }
+
+    /**
+     * @return a própria mensagem, se for pequena (ou o claim-check estiver desligado), ou a referência
+     */
+    public Message referencia(String exchange, Message message) {
+        byte[] corpo = message.getBody();
+        if (!properties.isHabilitado() || corpo.length <= properties.getLimiteBytes() || ehReferencia(message)) {
+            return message;
+        }
+        String id;
+        try {
+            id = armazem.guarda(corpo);
+        } catch (IOException e) {
+            log.warn("Claim-check indisponível, mensagem de {} bytes vai inteira pro broker: {}", corpo.length, e.toString());
+            return message;
+        }
+        MessageProperties referencia = MessagePropertiesBuilder.fromClonedProperties(message.getMessageProperties()).build(); // A original volta inteira se o broker recusar
+        referencia.setHeader(X_CLAIM_CHECK, id);
+        referencia.setHeader(X_CLAIM_CHECK_BYTES, corpo.length);
+        metricas.claimCheck(exchange, corpo.length);
+        return new Message(new byte[0], referencia);
+    }
+
+    /**
+     * Leitura preguiçosa: o blob é lido do armazém conforme o stream é consumido. Mensagem comum devolve o próprio corpo.
+     *
+     * @return corpo, como foi publicado (comprimido, se tiver content-encoding). Quem chama fecha.
+     */
+    public InputStream abre(Message message) throws IOException {
+        if (!ehReferencia(message)) {
+            return new ByteArrayInputStream(message.getBody());
+        }
+        return Channels.newInputStream(armazem.abre(id(message)));
+    }
+
+    /**
+     * @return a mensagem com o corpo do armazém (a própria mensagem, se não for referência)
+     */
+    public Message resolve(Message message) {
+        if (!ehReferencia(message)) {
+            return message;
+        }
+        try (InputStream corpo = abre(message)) {
+            return new Message(StreamUtils.copyToByteArray(corpo), message.getMessageProperties());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Blob " + id(message) + " indisponível", e);
+        }
+    }
+
+    /**
+     * Mensagem processada: o blob pode ir embora, depois que o ack tiver chegado no broker.
+     */
+    public void descarta(Message message) {
+        if (ehReferencia(message)) {
+            descartes.offer(new Descarte(id(message), System.currentTimeMillis() + properties.getApagarAposMs()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${rabbit.claim-check.intervalo-coleta-ms:10000}")
+    public void coleta() {
+        long agora = System.currentTimeMillis();
+        for (Descarte descarte = descartes.peek(); descarte != null && descarte.prazo <= agora; descarte = descartes.peek()) {
+            descartes.poll();
+            try {
+                armazem.apaga(descarte.id);
+            } catch (IOException e) {
+                log.warn("Não foi possível apagar o blob {}: {}", descarte.id, e.toString()); // A retenção pega depois
+            }
+        }
+    }
+
+    /**
+     * Órfãos: varre o diretório inteiro, então roda bem menos que a {@link #coleta} (blob só é órfão depois de dias).
+     */
+    @Scheduled(fixedDelayString = "${rabbit.claim-check.intervalo-retencao-ms:3600000}", initialDelayString = "${rabbit.claim-check.intervalo-retencao-ms:3600000}")
+    public void aplicaRetencao() {
+        if (properties.getRetencao() == null || properties.getRetencao().isZero()) {
+            return;
+        }
+        try {
+            int orfaos = armazem.apagaAnterioresA(Instant.now().minus(properties.getRetencao()));
+            if (orfaos > 0) {
+                log.info("Claim-check: {} blobs mais velhos que {} apagados", orfaos, properties.getRetencao());
+            }
+        } catch (IOException e) {
+            log.warn("Falha na coleta de blobs antigos: {}", e.toString());
+        }
+    }
+
+    private static String id(Message message) {
+        return message.getMessageProperties().getHeaders().get(X_CLAIM_CHECK).toString();
+    }
+
+    private static class Descarte {
+
+        private final String id;
+        private final long prazo;
+
+        Descarte(String id, long prazo) {
+            this.id = id;
+            this.prazo = prazo;
+        }
+
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.cave.rabbit.rabbit.concorrencia;
+
+import java.util.Properties;
+import lombok.extern.slf4j.Slf4j;
+import org.cave.rabbit.rabbit.config.NomeDoProcessoContainerProperties;
+import org.cave.rabbit.rabbit.config.RabbitContainerFactoryConfig;
+import org.cave.rabbit.rabbit.config.constants.RabbitQueueConstants;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ajusta em tempo de execução quantos consumidores o container do nome-do-processo usa.
+ * <p>
+ * A cada "intervaloMs" lemos a profundidade da fila (RabbitAdmin#getQueueProperties) e o p99 do handler
+ * ({@link LatenciaRecente}) e pedimos ao {@link ControleDeConcorrencia} o novo número de consumidores, sempre entre
+ * "consumidoresMin" e "consumidoresMax".
+ * <p>
+ * Quando ligado, concurrentConsumers e maxConcurrentConsumers do container ficam iguais ao alvo calculado aqui, desde
+ * a primeira leitura (o container nasce com max = consumidoresMax), assim o auto-scale próprio do
+ * SimpleMessageListenerContainer não briga com esse controle.
+ * <p>
+ * No modo LOTE, o prefetch é recalculado a cada leitura, independente de redimensionar, mas o
+ * SimpleMessageListenerContainer só aplica prefetch em consumidores novos. Os que já estão rodando ficam com o valor
+ * antigo até serem recriados. No modo PARALELO o prefetch não muda, ver {@link #ajustaPrefetch}.
+ * <p>
+ * Com o {@link EscalonadorJusto} ligado (rabbit.escalonamento.habilitado=true) esse cara não sobe: os dois brigariam
+ * pelo mesmo container.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("${rabbit.container.nome-do-processo.adaptativo.habilitado:true} and !${rabbit.escalonamento.habilitado:false}")
+public class ConcorrenciaAdaptativa {
+
+    private final RabbitAdmin rabbitAdmin;
+    private final RabbitListenerEndpointRegistry registry;
+    private final LatenciaRecente latencia;
+    private final NomeDoProcessoContainerProperties properties;
+    private final ControleDeConcorrencia controle;
+
+    private int atual;
+    private int prefetch;
+    private boolean fixado;
+
+    public ConcorrenciaAdaptativa(RabbitAdmin rabbitAdmin, RabbitListenerEndpointRegistry registry, LatenciaRecente latencia,
+                                  NomeDoProcessoContainerProperties properties) {
+        this.rabbitAdmin = rabbitAdmin;
+        this.registry = registry;
+        this.latencia = latencia;
+        this.properties = properties;
+
+        NomeDoProcessoContainerProperties.Adaptativo adaptativo = properties.getAdaptativo();
+        this.controle = new ControleDeConcorrencia(properties.getConsumidoresMin(), properties.getConsumidoresMax(),
+                adaptativo.getMensagensPorConsumidor(), adaptativo.getLatenciaAlvoMs(), adaptativo.getTicksParaSubir(), adaptativo.getTicksParaDescer(),
+                adaptativo.getCarenciaMs());
+        this.atual = properties.getConsumidoresMin();
+        this.prefetch = Math.max(properties.getPrefetch(), properties.getTamanhoLote()); // O mesmo que a factory configura
+    }
+
+    @Scheduled(fixedDelayString = "${rabbit.container.nome-do-processo.adaptativo.intervalo-ms:5000}")
+    public void ajusta() {
+        SimpleMessageListenerContainer container = (SimpleMessageListenerContainer) registry.getListenerContainer(RabbitContainerFactoryConfig.NOME_DO_PROCESSO_LISTENER_ID);
+        if (container == null || !container.isRunning()) {
+            return;
+        }
+        if (!fixado) {
+            redimensiona(container, atual, atual); // Desliga o auto-scale do container: max = concurrent
+            fixado = true;
+        }
+
+        double p99Ms = latencia.percentilMs(0.99);
+        if (properties.getModo() == NomeDoProcessoContainerProperties.Modo.LOTE) {
+            ajustaPrefetch(container, p99Ms);
+        }
+
+        Long profundidade = profundidade();
+        if (profundidade == null) {
+            return; // Sem broker não tem o que decidir, mantém como está
+        }
+
+        int alvo = controle.proximo(atual, profundidade, p99Ms, System.currentTimeMillis());
+        if (alvo == atual) {
+            return;
+        }
+
+        log.info("Redimensionando {}: {} -> {} consumidores (fila={}, p99={}ms)",
+                RabbitQueueConstants.PROCESSO_QUEUE, atual, alvo, profundidade, String.format("%.1f", p99Ms));
+
+        redimensiona(container, atual, alvo);
+        atual = alvo;
+    }
+
+    /**
+     * Só no modo LOTE. No PARALELO o prefetch é o limite de concorrência e a retenção de acks da
+     * {@link JanelaDeAcks} ("acksRetidos", no máximo prefetch/2) é calculada em cima dele na criação do container.
+     * Baixar o prefetch aqui (handler lento = p99 alto) deixaria a janela menor que a retenção: as prontas nunca
+     * passariam do limite pra serem liberadas e uma mensagem lenta pararia o channel.
+     */
+    private void ajustaPrefetch(SimpleMessageListenerContainer container, double p99Ms) {
+        int novoPrefetch = ControleDeConcorrencia.prefetch(p99Ms, properties.getAdaptativo().getLatenciaAlvoMs(),
+                properties.getTamanhoLote(), properties.getAdaptativo().getPrefetchMaximo());
+        if (novoPrefetch != prefetch) {
+            log.info("Prefetch de {}: {} -> {} (p99={}ms)", RabbitQueueConstants.PROCESSO_QUEUE, prefetch, novoPrefetch, String.format("%.1f", p99Ms));
+            container.setPrefetchCount(novoPrefetch);
+            prefetch = novoPrefetch;
+        }
+    }
+
+    /**
+     * Troca os consumidores do container deixando concurrentConsumers == maxConcurrentConsumers. A ordem importa: o
+     * container recusa concurrentConsumers acima do max (e max abaixo do concurrent).
+     */
+    static void redimensiona(SimpleMessageListenerContainer container, int atual, int alvo) {
+        if (alvo > atual) {
+            container.setMaxConcurrentConsumers(alvo);
+            container.setConcurrentConsumers(alvo);
+        } else {
+            container.setConcurrentConsumers(alvo);
+            container.setMaxConcurrentConsumers(alvo);
+        }
+    }
+
+    /**
+     * Só a fila que este container lê. Com partições ligadas ela recebe só as retentativas; as partições têm os
+     * containers delas, e o backlog lá não é motivo pra subir consumidor aqui (quem soma tudo é o ControleDeAdmissao).
+     */
+    private Long profundidade() {
+        try {
+            Properties fila = rabbitAdmin.getQueueProperties(RabbitQueueConstants.PROCESSO_QUEUE);
+            return fila == null ? null : Long.valueOf(fila.get(RabbitAdmin.QUEUE_MESSAGE_COUNT).toString());
+        } catch (AmqpException e) {
+            log.debug("Não foi possível ler a profundidade de {}", RabbitQueueConstants.PROCESSO_QUEUE, e);
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package org.cave.rabbit.rabbit.concorrencia;
+
+/**
+ * A decisão de quantos consumidores usar, separada do Spring e do broker pra ficar fácil de testar.
+ * <p>
+ * Regras:
+ * <p>
+ * - O backlog por consumidor é pesado pelo p99 do handler: pesado = backlog x p99 / latenciaAlvo. Handler lento
+ * demora mais pra esvaziar o mesmo backlog, então sobe antes; handler rápido dá conta sozinho, então segura mais. O
+ * peso fica entre 1/{@value #PESO_MAXIMO} e {@value #PESO_MAXIMO}, pra uma medida esquisita não decidir sozinha. Sem
+ * medida ainda (p99 = -1), peso 1.
+ * - Backlog por consumidor acima de "mensagensPorConsumidor" por "ticksParaSubir" leituras seguidas: sobe metade do
+ * que tem hoje (tráfego em rajada precisa crescer rápido).
+ * - Backlog por consumidor abaixo de 1/4 disso por "ticksParaDescer" leituras seguidas: desce um (devagar).
+ * - Entre as duas marcas nada muda, e depois de qualquer mudança esperamos "carenciaMs". Essa é a histerese que
+ * impede o pool de ficar sobe/desce a cada leitura.
+ * <p>
+ * Não é thread-safe, quem usa é uma única thread agendada.
+ */
+public class ControleDeConcorrencia {
+
+    private static final double PESO_MAXIMO = 10;
+
+    private final int minimo;
+    private final int maximo;
+    private final long mensagensPorConsumidor;
+    private final long latenciaAlvoMs;
+    private final int ticksParaSubir;
+    private final int ticksParaDescer;
+    private final long carenciaMs;
+
+    private int ticksAcima;
+    private int ticksAbaixo;
+    private long ultimaMudanca = Long.MIN_VALUE / 2;
+
+    public ControleDeConcorrencia(int minimo, int maximo, long mensagensPorConsumidor, long latenciaAlvoMs, int ticksParaSubir,
+                                  int ticksParaDescer, long carenciaMs) {
+        this.minimo = minimo;
+        this.maximo = Math.max(minimo, maximo);
+        this.mensagensPorConsumidor = mensagensPorConsumidor;
+        this.latenciaAlvoMs = latenciaAlvoMs;
+        this.ticksParaSubir = ticksParaSubir;
+        this.ticksParaDescer = ticksParaDescer;
+        this.carenciaMs = carenciaMs;
+    }
+
+    /**
+     * @param atual        consumidores hoje
+     * @param profundidade mensagens prontas na fila
+     * @param p99Ms        latência p99 do handler, -1 se ainda não medida
+     * @param agoraMs      relógio, em milissegundos
+     * @return quantos consumidores usar a partir de agora (pode ser o mesmo valor)
+     */
+    public int proximo(int atual, long profundidade, double p99Ms, long agoraMs) {
+        double backlogPorConsumidor = profundidade * peso(p99Ms) / Math.max(1, atual);
+
+        if (backlogPorConsumidor > mensagensPorConsumidor) {
+            ticksAcima++;
+            ticksAbaixo = 0;
+        } else if (backlogPorConsumidor < mensagensPorConsumidor / 4.0) {
+            ticksAbaixo++;
+            ticksAcima = 0;
+        } else {
+            ticksAcima = 0;
+            ticksAbaixo = 0;
+        }
+
+        if (agoraMs - ultimaMudanca < carenciaMs) {
+            return limita(atual);
+        }
+
+        int alvo = atual;
+        if (ticksAcima >= ticksParaSubir) {
+            alvo = atual + Math.max(1, atual / 2);
+        } else if (ticksAbaixo >= ticksParaDescer) {
+            alvo = atual - 1;
+        }
+        alvo = limita(alvo);
+
+        if (alvo != atual) {
+            ultimaMudanca = agoraMs;
+            ticksAcima = 0;
+            ticksAbaixo = 0;
+        }
+        return alvo;
+    }
+
+    /**
+     * Handler rápido: pode buscar mais mensagens de uma vez. Handler lento: prefetch menor, pra mensagem não ficar
+     * parada no buffer de um consumidor ocupado enquanto outro está livre.
+     *
+     * @param p99Ms       latência p99 do handler, -1 se ainda não medida
+     * @param latenciaAlvoMs latência de referência
+     * @param prefetchMinimo nunca abaixo disso (o tamanho do lote)
+     * @param prefetchMaximo nunca acima disso
+     * @return prefetch sugerido
+     */
+    public static int prefetch(double p99Ms, long latenciaAlvoMs, int prefetchMinimo, int prefetchMaximo) {
+        if (p99Ms <= 0) {
+            return prefetchMaximo;
+        }
+        double fator = Math.max(1.0, latenciaAlvoMs / p99Ms);
+        long sugerido = Math.round(prefetchMinimo * fator);
+        return (int) Math.max(prefetchMinimo, Math.min(prefetchMaximo, sugerido));
+    }
+
+    private double peso(double p99Ms) {
+        if (p99Ms <= 0 || latenciaAlvoMs <= 0) {
+            return 1;
+        }
+        return Math.max(1 / PESO_MAXIMO, Math.min(PESO_MAXIMO, p99Ms / latenciaAlvoMs));
+    }
+
+    private int limita(int valor) {
+        return Math.max(minimo, Math.min(maximo, valor));
+    }
+
+}
@@ -0,0 +1,60 @@
+package org.cave.rabbit.rabbit.concorrencia;
+
+/**
+ * A conta do {@link EscalonadorJusto}, separada do Spring e do broker pra ficar fácil de testar.
+ * <p>
+ * Divisão max-min ponderada ("water-filling"):
+ * <p>
+ * - Cada fluxo começa com o seu mínimo.
+ * - O que sobra do orçamento sai de um em um, sempre pro fluxo com menos consumidores por peso (quem ficaria mais
+ * atrás se recebesse o próximo).
+ * - Fluxo que chegou no alvo (o que o backlog dele pede) sai da disputa e a sobra vai pros outros.
+ * <p>
+ * Resultado: fluxo com pouco backlog recebe tudo que pede, e uma enxurrada num fluxo só leva o que os outros não
+ * estão usando. Nunca passa do orçamento, a não ser que a soma dos mínimos já passe.
+ */
+public final class DivisaoJusta {
+
+    private DivisaoJusta() {
+    }
+
+    /**
+     * @param orcamento total de consumidores
+     * @param pesos     peso de cada fluxo (menor que 1 conta como 1)
+     * @param minimos   mínimo de cada fluxo
+     * @param alvos     quanto cada fluxo quer agora (já limitado ao máximo dele)
+     * @return consumidores de cada fluxo, na mesma ordem
+     */
+    public static int[] divide(int orcamento, int[] pesos, int[] minimos, int[] alvos) {
+        int[] divisao = new int[pesos.length];
+        int livre = orcamento;
+        for (int i = 0; i < divisao.length; i++) {
+            divisao[i] = minimos[i];
+            livre -= minimos[i];
+        }
+
+        while (livre > 0) {
+            int escolhido = -1;
+            for (int i = 0; i < divisao.length; i++) {
+                if (divisao[i] >= alvos[i]) {
+                    continue;
+                }
+                // (divisao[i] + 1) / peso[i] < (divisao[escolhido] + 1) / peso[escolhido], sem divisão
+                if (escolhido < 0 || (long) (divisao[i] + 1) * peso(pesos, escolhido) < (long) (divisao[escolhido] + 1) * peso(pesos, i)) {
+                    escolhido = i;
+                }
+            }
+            if (escolhido < 0) {
+                break; // Todo mundo satisfeito, o resto do orçamento fica parado
+            }
+            divisao[escolhido]++;
+            livre--;
+        }
+        return divisao;
+    }
+
+    private static int peso(int[] pesos, int i) {
+        return Math.max(1, pesos[i]);
+    }
+
+}
@@ -0,0 +1,114 @@
+package org.cave.rabbit.rabbit.concorrencia;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import lombok.extern.slf4j.Slf4j;
+import org.cave.rabbit.rabbit.config.EscalonamentoProperties;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Divide um orçamento fixo de threads consumidoras entre os containers da instância, por peso.
+ * <p>
+ * Cada container tem o seu auto-scale, e cada um sobe sem olhar pros outros: numa enxurrada no nome-do-processo ele
+ * vai pro máximo, a máquina satura e o fluxo que precisa de latência baixa (mesmo com pouca mensagem) fica na fila de
+ * CPU atrás. Aqui, a cada "intervaloMs", lemos o backlog de cada fluxo configurado, calculamos quantos consumidores
+ * ele pediria e dividimos o orçamento com a {@link DivisaoJusta}: quem tem pouco backlog recebe o que pede, e a
+ * enxurrada fica com o resto.
+ * <p>
+ * A prioridade dentro de UMA fila é outra coisa, ver {@link org.cave.rabbit.rabbit.config.PrioridadeProperties}.
+ * <p>
+ * O backlog é só o que está pronto na fila (as já entregues no prefetch não contam). Sem broker, o fluxo mantém o que
+ * tinha.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "rabbit.escalonamento", name = "habilitado", havingValue = "true")
+public class EscalonadorJusto {
+
+    private final RabbitAdmin rabbitAdmin;
+    private final RabbitListenerEndpointRegistry registry;
+    private final EscalonamentoProperties properties;
+
+    private final Map<String, Integer> atuais = new HashMap<>(); // Só a thread agendada mexe
+
+    public EscalonadorJusto(RabbitAdmin rabbitAdmin, RabbitListenerEndpointRegistry registry, EscalonamentoProperties properties) {
+        this.rabbitAdmin = rabbitAdmin;
+        this.registry = registry;
+        this.properties = properties;
+    }
+
+    @Scheduled(fixedDelayString = "${rabbit.escalonamento.intervalo-ms:2000}")
+    public void escalona() {
+        List<String> ids = new ArrayList<>();
+        List<SimpleMessageListenerContainer> containers = new ArrayList<>();
+        for (String id : properties.getFluxos().keySet()) {
+            MessageListenerContainer container = registry.getListenerContainer(id);
+            if (container instanceof SimpleMessageListenerContainer && container.isRunning()) {
+                ids.add(id);
+                containers.add((SimpleMessageListenerContainer) container);
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        int[] pesos = new int[ids.size()];
+        int[] minimos = new int[ids.size()];
+        int[] alvos = new int[ids.size()];
+        for (int i = 0; i < ids.size(); i++) {
+            EscalonamentoProperties.Fluxo fluxo = properties.getFluxos().get(ids.get(i));
+            pesos[i] = fluxo.getPeso();
+            minimos[i] = Math.max(1, fluxo.getMinimo());
+            Long backlog = backlog(containers.get(i));
+            int pedido = backlog == null
+                    ? atuais.getOrDefault(ids.get(i), minimos[i])
+                    : (int) Math.min(Integer.MAX_VALUE, (backlog + properties.getMensagensPorConsumidor() - 1) / Math.max(1, properties.getMensagensPorConsumidor()));
+            alvos[i] = Math.max(minimos[i], Math.min(pedido, fluxo.getMaximo()));
+        }
+
+        int[] divisao = DivisaoJusta.divide(properties.getOrcamento(), pesos, minimos, alvos);
+
+        for (int i = 0; i < ids.size(); i++) {
+            // Primeira vez: não dá pra ler o concurrentConsumers do container, os ativos são a melhor aproximação
+            int atual = atuais.getOrDefault(ids.get(i), containers.get(i).getActiveConsumerCount());
+            if (atuais.containsKey(ids.get(i)) && atual == divisao[i]) {
+                continue;
+            }
+            log.info("Escalonando {}: {} -> {} consumidores (pedia {}, peso {})", ids.get(i), atual, divisao[i], alvos[i], pesos[i]);
+            try {
+                ConcorrenciaAdaptativa.redimensiona(containers.get(i), atual, divisao[i]);
+                atuais.put(ids.get(i), divisao[i]);
+            } catch (IllegalArgumentException e) {
+                log.warn("Não deu pra redimensionar {} para {} consumidores", ids.get(i), divisao[i], e);
+            }
+        }
+    }
+
+    private Long backlog(SimpleMessageListenerContainer container) {
+        long total = 0;
+        for (String fila : container.getQueueNames()) {
+            try {
+                Properties propriedades = rabbitAdmin.getQueueProperties(fila);
+                if (propriedades == null) {
+                    return null;
+                }
+                total += Long.parseLong(propriedades.get(RabbitAdmin.QUEUE_MESSAGE_COUNT).toString());
+            } catch (AmqpException e) {
+                log.debug("Não foi possível ler a profundidade de {}", fila, e);
+                return null;
+            }
+        }
+        return total;
+    }
+
+}
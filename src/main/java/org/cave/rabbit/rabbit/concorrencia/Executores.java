@@ -0,0 +1,64 @@
+package org.cave.rabbit.rabbit.concorrencia;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fábrica dos executors usados pelos containers.
+ * <p>
+ * Compilamos para Java 11, então Executors#newVirtualThreadPerTaskExecutor (Java 21) é procurado por reflection.
+ * Rodando num JDK 21+, ganhamos virtual threads sem mudar o build.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class Executores {
+
+    public enum Tipo {
+        PLATAFORMA,
+        VIRTUAL
+    }
+
+    public static ExecutorService cria(Tipo tipo, int threadsPlataforma, String prefixo) {
+        if (tipo == Tipo.VIRTUAL) {
+            ExecutorService virtual = virtualThreadPorTarefa();
+            if (virtual != null) {
+                return virtual;
+            }
+            log.warn("Executor VIRTUAL pedido mas a JVM ({}) não tem virtual threads. Usando {} threads de plataforma.",
+                    System.getProperty("java.version"), threadsPlataforma);
+        }
+        AtomicInteger contador = new AtomicInteger();
+        return Executors.newFixedThreadPool(threadsPlataforma, r -> new Thread(r, prefixo + contador.incrementAndGet()));
+    }
+
+    public static boolean temVirtualThreads() {
+        return metodoVirtual() != null;
+    }
+
+    private static ExecutorService virtualThreadPorTarefa() {
+        Method metodo = metodoVirtual();
+        if (metodo == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) metodo.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Falha criando executor de virtual threads", e);
+            return null;
+        }
+    }
+
+    private static Method metodoVirtual() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+}
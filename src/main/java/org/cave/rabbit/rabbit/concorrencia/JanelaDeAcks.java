@@ -0,0 +1,100 @@
+package org.cave.rabbit.rabbit.concorrencia;
+
+import com.rabbitmq.client.Channel;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Acks de UM channel quando as mensagens terminam fora de ordem (ver {@link ProcessamentoParalelo}).
+ * <p>
+ * O delivery tag é sequencial por channel, e o ack com multiple=true confirma tudo até aquele tag. Então guardamos os
+ * tags na ordem de entrega e uma marca: quando a mais antiga em aberto termina, andamos a marca por todas as seguintes
+ * que já terminaram e mandamos UM ack múltiplo.
+ * <p>
+ * Quem termina antes da mais antiga fica retido esperando a marca chegar. Mas retido continua ocupando o prefetch: se
+ * uma mensagem lenta segurar a marca, a janela enche de mensagens prontas e o consumo para. Por isso, passou de
+ * "retencaoMaxima" retidas, elas são confirmadas uma a uma (multiple=false) e a marca só pula por cima delas depois.
+ * <p>
+ * Falha vira nack sem requeue na hora (vai pra DLQ pelo dead-letter da fila), que também é uma confirmação individual.
+ * <p>
+ * Thread-safe: as threads do pool chamam concluida/rejeitada, a thread do consumidor chama entregue. O Channel do
+ * client aceita ack de outra thread; o synchronized aqui só garante que a marca e os acks saem em ordem.
+ */
+public class JanelaDeAcks {
+
+    private final Channel channel;
+    private final int retencaoMaxima;
+
+    private final ArrayDeque<Long> abertas = new ArrayDeque<>(); // Em ordem de entrega, da marca pra frente
+    private final Map<Long, Boolean> prontas = new HashMap<>(); // true = já confirmada sozinha, false = retida
+
+    private int retidas;
+
+    public JanelaDeAcks(Channel channel, int retencaoMaxima) {
+        this.channel = channel;
+        this.retencaoMaxima = retencaoMaxima;
+    }
+
+    /**
+     * Chamado pela thread do consumidor, na ordem de entrega, antes de passar a mensagem pro pool.
+     */
+    public synchronized void entregue(long tag) {
+        abertas.addLast(tag);
+    }
+
+    public synchronized void concluida(long tag) throws IOException {
+        prontas.put(tag, false);
+        retidas++;
+        avanca();
+        if (retidas > retencaoMaxima) {
+            liberaRetidas();
+        }
+    }
+
+    public synchronized void rejeitada(long tag) throws IOException {
+        channel.basicNack(tag, false, false);
+        prontas.put(tag, true);
+        avanca();
+    }
+
+    /**
+     * @return entregues e ainda não confirmadas pela marca (processando, retidas ou confirmadas sozinhas à frente da marca)
+     */
+    public synchronized int emAberto() {
+        return abertas.size();
+    }
+
+    private void avanca() throws IOException {
+        long alvo = -1;
+        while (!abertas.isEmpty()) {
+            Boolean confirmada = prontas.remove(abertas.peekFirst());
+            if (confirmada == null) {
+                break; // A mais antiga ainda está processando
+            }
+            long tag = abertas.pollFirst();
+            if (!confirmada) {
+                alvo = tag;
+                retidas--;
+            }
+        }
+        if (alvo >= 0) {
+            channel.basicAck(alvo, true); // As confirmadas sozinhas no meio já saíram do broker, o multiple só pega as retidas
+        }
+    }
+
+    private void liberaRetidas() throws IOException {
+        Iterator<Map.Entry<Long, Boolean>> it = prontas.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Boolean> pronta = it.next();
+            if (!pronta.getValue()) {
+                channel.basicAck(pronta.getKey(), false);
+                pronta.setValue(true);
+            }
+        }
+        retidas = 0;
+    }
+
+}
@@ -0,0 +1,45 @@
+package org.cave.rabbit.rabbit.concorrencia;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Guarda as últimas N latências de processamento (em nanos) num buffer circular.
+ * <p>
+ * Registrar é só um incremento atômico e uma escrita no array, barato o suficiente para o caminho quente do consumidor.
+ * O percentil é calculado por quem lê (o controle de concorrência, a cada poucos segundos), copiando e ordenando.
+ */
+public class LatenciaRecente {
+
+    private final AtomicLongArray amostras;
+    private final AtomicLong proxima = new AtomicLong();
+
+    public LatenciaRecente(int capacidade) {
+        this.amostras = new AtomicLongArray(capacidade);
+    }
+
+    public void registra(long nanos) {
+        long posicao = proxima.getAndIncrement();
+        amostras.set((int) (posicao % amostras.length()), nanos);
+    }
+
+    /**
+     * @param percentil entre 0 e 1, ex: 0.99
+     * @return latência em milissegundos, ou -1 se ainda não houver amostras
+     */
+    public double percentilMs(double percentil) {
+        int tamanho = (int) Math.min(proxima.get(), amostras.length());
+        if (tamanho == 0) {
+            return -1;
+        }
+        long[] copia = new long[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            copia[i] = amostras.get(i);
+        }
+        Arrays.sort(copia);
+        int indice = (int) Math.ceil(percentil * tamanho) - 1;
+        return copia[Math.max(0, Math.min(indice, tamanho - 1))] / 1_000_000.0;
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.cave.rabbit.rabbit.concorrencia;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket simples.
+ * <p>
+ * O balde enche a "porSegundo" tokens por segundo, até no máximo um segundo de tokens (rajada de 1s).
+ * Pedir mais tokens do que o balde comporta é permitido: o saldo fica negativo e os próximos pedidos esperam.
+ */
+public class LimitadorDeTaxa {
+
+    private final double porSegundo;
+    private final double capacidade;
+    private double tokens;
+    private long ultimaReposicao;
+
+    public LimitadorDeTaxa(double porSegundo) {
+        if (porSegundo <= 0) {
+            throw new IllegalArgumentException("porSegundo deve ser positivo");
+        }
+        this.porSegundo = porSegundo;
+        this.capacidade = Math.max(1, porSegundo);
+        this.tokens = capacidade;
+        this.ultimaReposicao = System.nanoTime();
+    }
+
+    /**
+     * Bloqueia até ter tokens para "quantidade" mensagens.
+     */
+    public void adquire(int quantidade) throws InterruptedException {
+        while (true) {
+            long esperaNanos;
+            synchronized (this) {
+                repoe();
+                if (tokens >= Math.min(quantidade, capacidade)) {
+                    tokens -= quantidade;
+                    return;
+                }
+                esperaNanos = (long) ((Math.min(quantidade, capacidade) - tokens) / porSegundo * 1_000_000_000L);
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(1, esperaNanos));
+        }
+    }
+
+    private void repoe() {
+        long agora = System.nanoTime();
+        tokens = Math.min(capacidade, tokens + (agora - ultimaReposicao) / 1_000_000_000.0 * porSegundo);
+        ultimaReposicao = agora;
+    }
+
+}
@@ -0,0 +1,76 @@
+package org.cave.rabbit.rabbit.concorrencia;
+
+import com.rabbitmq.client.Channel;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+
+/**
+ * Modo PARALELO do nome-do-processo (ver {@link org.cave.rabbit.rabbit.config.RabbitContainerFactoryConfig#nomeDoProcessoContainerFactory}).
+ * <p>
+ * No modo normal, cada thread do container processa as mensagens do seu channel uma atrás da outra: uma mensagem
+ * lenta segura todas as que estão no prefetch atrás dela. Aqui a thread do container só anota o delivery tag e passa a
+ * mensagem pro pool; quem termina confirma na hora, em qualquer ordem, pela {@link JanelaDeAcks} do channel.
+ * <p>
+ * O container fica em ack MANUAL e o broker não entrega mais que o prefetch sem ack. Então o prefetch vira o limite de
+ * concorrência de verdade: mensagens em processamento por channel = prefetch. Sem conexão nem channel a mais.
+ * <p>
+ * O listener de verdade (o adapter do @RabbitListener) é chamado com um lote de uma mensagem, pra reaproveitar o mesmo
+ * método consumer do modo em lote.
+ */
+@Slf4j
+public class ProcessamentoParalelo implements ChannelAwareMessageListener {
+
+    private final ChannelAwareMessageListener listener;
+    private final ExecutorService executor;
+    private final int retencaoMaxima;
+    private final Map<Channel, JanelaDeAcks> janelas = Collections.synchronizedMap(new WeakHashMap<>()); // Channel fechado some sozinho
+    private final AtomicInteger emProcessamento = new AtomicInteger();
+
+    public ProcessamentoParalelo(ChannelAwareMessageListener listener, ExecutorService executor, int retencaoMaxima) {
+        this.listener = listener;
+        this.executor = executor;
+        this.retencaoMaxima = retencaoMaxima;
+    }
+
+    @Override
+    public void onMessage(Message message, Channel channel) {
+        long tag = message.getMessageProperties().getDeliveryTag();
+        JanelaDeAcks janela = janelas.computeIfAbsent(channel, c -> new JanelaDeAcks(c, retencaoMaxima));
+        janela.entregue(tag);
+        emProcessamento.incrementAndGet();
+        executor.execute(() -> processa(message, channel, janela, tag));
+    }
+
+    private void processa(Message message, Channel channel, JanelaDeAcks janela, long tag) {
+        boolean sucesso = false;
+        try {
+            listener.onMessageBatch(Collections.singletonList(message), channel);
+            sucesso = true;
+        } catch (Exception e) {
+            log.warn("Falha processando deliveryTag={}, vai pra DLQ", tag, e);
+        } finally {
+            emProcessamento.decrementAndGet();
+        }
+        try {
+            if (sucesso) {
+                janela.concluida(tag);
+            } else {
+                janela.rejeitada(tag);
+            }
+        } catch (Exception e) {
+            // Channel caiu: o broker devolve pra fila tudo que não tinha ack, não tem o que fazer aqui
+            log.debug("Não deu pra confirmar deliveryTag={}", tag, e);
+        }
+    }
+
+    public int emProcessamento() {
+        return emProcessamento.get();
+    }
+
+}
@@ -0,0 +1,42 @@
+package org.cave.rabbit.rabbit.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limites de entrada do POST do nome-do-processo, ver {@link org.cave.rabbit.rabbit.admissao.ControleDeAdmissao}.
+ * Vem do application.properties com o prefixo "rabbit.admissao.nome-do-processo".
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rabbit.admissao.nome-do-processo")
+public class AdmissaoProperties {
+
+    private boolean habilitado = true;
+
+    /**
+     * De quanto em quanto tempo olhamos a profundidade da fila.
+     */
+    private long intervaloMs = 1000;
+
+    /**
+     * Fila com mais que isso: paramos de aceitar (503). Voltamos a aceitar quando ela baixar de "profundidadeRetomada".
+     * A distância entre os dois evita ficar abrindo e fechando a cada leitura.
+     */
+    private long profundidadeMaxima = 100000;
+    private long profundidadeRetomada = 80000;
+
+    /**
+     * Publicações aguardando confirmação do broker. Acima disso, 429: o broker está lento pra confirmar e mais
+     * requisição só aumenta a fila de espera. Bom deixar abaixo da janela do {@link PublicacaoProperties}.
+     */
+    private int emVooMaximo = 800;
+
+    /**
+     * Valor do header Retry-After. 429 é coisa de segundos; fila cheia ou broker bloqueado demora mais pra passar.
+     */
+    private long retryAfterLimiteSegundos = 1;
+    private long retryAfterIndisponivelSegundos = 10;
+
+}
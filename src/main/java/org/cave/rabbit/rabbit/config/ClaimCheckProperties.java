@@ -0,0 +1,56 @@
+package org.cave.rabbit.rabbit.config;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Claim-check das mensagens grandes. Vem do application.properties com o prefixo "rabbit.claim-check".
+ * Ver {@link org.cave.rabbit.rabbit.claimcheck.ClaimCheck}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rabbit.claim-check")
+public class ClaimCheckProperties {
+
+    /**
+     * Liga só o lado de quem publica. O consumidor resolve referência sempre (pode ter vindo de outra instância).
+     */
+    private boolean habilitado = false;
+
+    /**
+     * Corpo (já no formato e comprimido) maior que isso vai pro armazém e só a referência vai pro broker.
+     */
+    private int limiteBytes = 256 * 1024;
+
+    /**
+     * Onde o {@link org.cave.rabbit.rabbit.claimcheck.ArmazemEmDisco} guarda os blobs. Com várias instâncias, tem
+     * de ser um diretório compartilhado (NFS/EFS), senão quem consome não acha o que outra publicou.
+     */
+    private String diretorio = "claim-check";
+
+    /**
+     * Depois do processamento com sucesso, quanto esperamos antes de apagar o blob. Dá tempo do ack chegar no broker
+     * (o ack do lote sai depois que o consumidor retorna).
+     */
+    private long apagarAposMs = 60000;
+
+    /**
+     * Blob mais velho que isso é apagado mesmo sem ninguém ter processado (publicação que falhou, reenvio do outbox,
+     * mensagem que morreu na DLQ). Tem de ser maior que o tempo que uma mensagem pode ficar na DLQ.
+     */
+    private Duration retencao = Duration.ofDays(7);
+
+    /**
+     * De quanto em quanto tempo apagamos os blobs já processados (depois do "apagarAposMs").
+     */
+    private long intervaloColetaMs = 10000;
+
+    /**
+     * De quanto em quanto tempo varremos o diretório atrás dos blobs mais velhos que a "retencao". A varredura lê o
+     * diretório inteiro (caro em NFS/EFS), e blob só vira órfão depois de dias: não precisa rodar junto da coleta.
+     */
+    private long intervaloRetencaoMs = 3600000;
+
+}
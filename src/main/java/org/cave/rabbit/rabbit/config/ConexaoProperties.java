@@ -0,0 +1,50 @@
+package org.cave.rabbit.rabbit.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dados de conexão e tamanho dos pools. Vem do application.properties com o prefixo "rabbit.conexao".
+ * <p>
+ * Publicação e consumo usam conexões separadas (ver {@link RabbitConfig}). Quando o broker bloqueia quem publica
+ * (alarme de memória/disco), ele bloqueia a CONEXÃO inteira; com tudo numa conexão só, os consumidores, que são
+ * justamente quem esvaziaria a fila, paravam junto.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rabbit.conexao")
+public class ConexaoProperties {
+
+    private String addresses = "localhost";
+    private String username = "use-exemplo";
+    private String password = "C0nnect123";
+    private String virtualHost = "para-exemplo";
+
+    private Lado publicacao = new Lado();
+    private Lado consumo = new Lado();
+
+    @Data
+    public static class Lado {
+
+        /**
+         * Conexões TCP desse lado. 1 = uma conexão com vários channels (modo CHANNEL). Mais que 1 = modo CONNECTION:
+         * cada uso pega uma conexão do cache, até "conexoes" ficam abertas (no consumo, cada consumidor fica com uma).
+         */
+        private int conexoes = 1;
+
+        /**
+         * Channels guardados em cache (por conexão, no modo CONNECTION). Se o pico de ociosos bate nesse número
+         * (rabbit.conexao.channels.ociosos.maximo), o cache está pequeno e channels estão sendo abertos e fechados à toa.
+         */
+        private int channels = 25;
+
+        /**
+         * Maior que 0 transforma "channels" em limite: quem passar espera até esse tempo por um channel livre e
+         * depois toma AmqpTimeoutException. 0 = sem limite, abre channel extra (e fecha ao devolver).
+         */
+        private long checkoutTimeoutMs = 0;
+
+    }
+
+}
@@ -0,0 +1,60 @@
+package org.cave.rabbit.rabbit.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Orçamento global de consumidores, dividido entre os containers por peso. Vem do application.properties com o
+ * prefixo "rabbit.escalonamento". Ver {@link org.cave.rabbit.rabbit.concorrencia.EscalonadorJusto}.
+ * <p>
+ * Ex: rabbit.escalonamento.fluxos.nomeDoProcessoListener.peso=1
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rabbit.escalonamento")
+public class EscalonamentoProperties {
+
+    /**
+     * Ligado, o escalonador manda no número de consumidores dos containers em "fluxos" e o
+     * {@link org.cave.rabbit.rabbit.concorrencia.ConcorrenciaAdaptativa} fica desligado.
+     */
+    private boolean habilitado = false;
+
+    /**
+     * Total de threads consumidoras da instância, somando todos os fluxos. Deve ser pelo menos a soma dos mínimos.
+     */
+    private int orcamento = 16;
+
+    private long intervaloMs = 2000;
+
+    /**
+     * Backlog que justifica um consumidor. Fila com 1000 prontas e 100 aqui pede 10 consumidores.
+     */
+    private long mensagensPorConsumidor = 100;
+
+    /**
+     * Chave = id do @RabbitListener (o mesmo do RabbitListenerEndpointRegistry). Container fora daqui não entra na
+     * divisão (partições e streams, que precisam de um consumidor só, ficam de fora).
+     */
+    private Map<String, Fluxo> fluxos = new LinkedHashMap<>();
+
+    @Data
+    public static class Fluxo {
+
+        /**
+         * Fatia do orçamento quando todo mundo tem backlog. Peso 3 contra peso 1 = 3 consumidores pra cada 1.
+         */
+        private int peso = 1;
+
+        /**
+         * Garantido mesmo sem backlog, pra mensagem nova não esperar o próximo ajuste.
+         */
+        private int minimo = 1;
+        private int maximo = 10;
+
+    }
+
+}
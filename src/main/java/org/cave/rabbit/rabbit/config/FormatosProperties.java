@@ -0,0 +1,38 @@
+package org.cave.rabbit.rabbit.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Data;
+import org.cave.rabbit.rabbit.mensagem.Compressao;
+import org.cave.rabbit.rabbit.mensagem.FormatoCarga;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Formato e compressão do que publicamos. Vem do application.properties com o prefixo "rabbit.formatos".
+ * <p>
+ * Ex: rabbit.formatos.por-exchange[servico_ex_nome_do_processo]=SMILE
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rabbit.formatos")
+public class FormatosProperties {
+
+    /**
+     * Formato por exchange. Exchange que não estiver aqui usa o {@link #padrao}.
+     */
+    private Map<String, FormatoCarga> porExchange = new HashMap<>();
+
+    private FormatoCarga padrao = FormatoCarga.JSON;
+
+    /**
+     * Compressão aplicada a corpos maiores que {@link #limiteCompressaoBytes}. Vazio desliga.
+     */
+    private Compressao compressao = Compressao.LZ4;
+
+    /**
+     * Abaixo disso não compensa comprimir: o ganho é pequeno e o cabeçalho da compressão come parte dele.
+     */
+    private int limiteCompressaoBytes = 4096;
+
+}
@@ -0,0 +1,37 @@
+package org.cave.rabbit.rabbit.config;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import lombok.Data;
+import org.cave.rabbit.rabbit.idempotencia.ChaveIdempotencia;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Filtro de duplicatas do nome-do-processo, ver {@link org.cave.rabbit.rabbit.idempotencia.Idempotencia}.
+ * Vem do application.properties com o prefixo "rabbit.idempotencia.nome-do-processo".
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rabbit.idempotencia.nome-do-processo")
+public class IdempotenciaProperties {
+
+    private boolean habilitado = true;
+
+    private ChaveIdempotencia chave = ChaveIdempotencia.MESSAGE_ID;
+
+    /**
+     * Janela de deduplicação. Deve cobrir o pior caso de redelivery (o maior degrau de retentativa não conta: mensagem
+     * que falhou não é registrada).
+     */
+    private Duration ttl = Duration.ofHours(1);
+
+    /**
+     * Máximo de mensagens lembradas. Cada uma ocupa 16 bytes em memória e 16 no arquivo.
+     */
+    private int capacidade = 262144;
+
+    private Path arquivo = Paths.get("idempotencia", "nome-do-processo.dat");
+
+}
@@ -1,14 +1,24 @@
 package org.cave.rabbit.rabbit.config;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.cave.rabbit.rabbit.config.constants.RabbitQueueConstants;
+import org.cave.rabbit.rabbit.idempotencia.Idempotencia;
+import org.cave.rabbit.rabbit.retentativa.PoliticaDeRetentativa;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -19,7 +29,7 @@ import org.springframework.context.annotation.Configuration;
  * - Exchange
  * - Fila Normal
  * - Bindings
- * - Fila Delayed
+ * - Filas Delayed (uma por degrau de retentativa)
  * - Fila Morta
  */
 @Configuration
@@ -27,10 +37,18 @@ public class NomeDoProcessoConfig {
 
     public static final String X_DEAD_LETTER_EXCHANGE = "x-dead-letter-exchange"; // Nome do parametro da DLQ Exchange
     public static final String X_DEAD_LETTER_ROUTING_KEY = "x-dead-letter-routing-key"; // Nome do parâmetro da DLQ Routing Key
+    public static final String X_MESSAGE_TTL = "x-message-ttl"; // Nome do parâmetro do TTL das mensagens na fila
+    public static final String X_MAX_PRIORITY = "x-max-priority"; // Nome do parâmetro da prioridade máxima da fila
 
     @Autowired
     private RabbitAdmin rabbitAdmin; // Esse cara vai fazer a declaração das filas, no caso, cria-las automáticamente caso não existam.
 
+    @Autowired
+    private RetentativaProperties retentativaProperties;
+
+    @Autowired
+    private PrioridadeProperties prioridadeProperties;
+
     /**
      * Aqui fazemos a declaração da exchange responsável pelo processo.
      * <p>
@@ -56,6 +74,8 @@ public class NomeDoProcessoConfig {
      * <p>
      * x-dead-letter-exchange -  Não usaremos uma DLQ Exchange iremos direcionar as mensagens mortas diretamente a uma fila.
      * x-dead-letter-routing-key - Declaramos diretamente o nome da fila. O Rabbit irá direcionar as mensagens mortas diretamente pra lá.
+     * x-max-priority - Fila com prioridade, ver {@link PrioridadeProperties}. A retentativa republica a mensagem com a
+     * mesma prioridade, então ela volta das delayeds no mesmo nível.
      *
      * @return Fila
      */
@@ -64,29 +84,73 @@ public class NomeDoProcessoConfig {
         Map<String, Object> args = new HashMap<>();
         args.put(X_DEAD_LETTER_EXCHANGE, "");
         args.put(X_DEAD_LETTER_ROUTING_KEY, RabbitQueueConstants.PROCESSO_DLQ); // Fila morta mesmo
+        if (prioridadeProperties.getMaxima() > 0) {
+            args.put(X_MAX_PRIORITY, prioridadeProperties.getMaxima());
+        }
         Queue queue = new Queue(RabbitQueueConstants.PROCESSO_QUEUE, true, false, false, args);
         queue.setAdminsThatShouldDeclare(rabbitAdmin);
         return queue;
     }
 
     /**
-     * Aqui fazemos a configuração da Fila Delayed.
+     * Aqui fazemos a configuração das Filas Delayed.
      * <p>
-     * Perceba que agora, a "X_DEAD_LETTER_ROUTING_KEY" configurada para essa fila nada mais é do que a fila NORMAL.
+     * Perceba que agora, a "X_DEAD_LETTER_ROUTING_KEY" configurada para essas filas nada mais é do que a fila NORMAL.
      * Ou seja, depois que a mensagem passar um tempo X aqui (TTL), ela irá expirar e cair na fila normal, para ser consumida novamente.
      * <p>
      * Dessa forma conseguimos fazer uma espécie de retentativa para processar uma mensagem.
+     * <p>
+     * Uma fila por degrau de atraso (1s, 10s, 60s, 10m...), cada uma com seu x-message-ttl. Quem escolhe o degrau é a
+     * {@link PoliticaDeRetentativa}. Os degraus vêm de {@link RetentativaProperties}.
+     * <p>
+     * Atenção: trocar o TTL de um degrau que já existe no broker dá PRECONDITION_FAILED. Como o nome da fila leva o
+     * atraso (ex: servico_delayed_nome_do_processo_1000ms), mudar o atraso cria uma fila nova; a antiga pode ser apagada
+     * depois de vazia.
      *
-     * @return Delayed
+     * @return Delayeds
      */
     @Bean
-    Queue delayedNomeDoProcesso() {
-        Map<String, Object> args = new HashMap<>();
-        args.put(X_DEAD_LETTER_EXCHANGE, "");
-        args.put(X_DEAD_LETTER_ROUTING_KEY, RabbitQueueConstants.PROCESSO_QUEUE); // IMPORTANTEEEEEEEEEEEEEEEEEEEEE
-        Queue queue = new Queue(RabbitQueueConstants.PROCESSO_DELAYED, true, false, false, args);
-        queue.setAdminsThatShouldDeclare(rabbitAdmin);
-        return queue;
+    Declarables delayedNomeDoProcesso() {
+        List<Declarable> filas = new ArrayList<>();
+        for (Duration atraso : retentativaProperties.getAtrasos()) {
+            Map<String, Object> args = new HashMap<>();
+            args.put(X_DEAD_LETTER_EXCHANGE, "");
+            args.put(X_DEAD_LETTER_ROUTING_KEY, RabbitQueueConstants.PROCESSO_QUEUE); // IMPORTANTEEEEEEEEEEEEEEEEEEEEE
+            args.put(X_MESSAGE_TTL, atraso.toMillis()); // Tempo que a mensagem fica de castigo aqui
+            Queue queue = new Queue(PoliticaDeRetentativa.nomeDaFila(RabbitQueueConstants.PROCESSO_DELAYED, atraso), true, false, false, args);
+            queue.setAdminsThatShouldDeclare(rabbitAdmin);
+            filas.add(queue);
+        }
+        return new Declarables(filas);
+    }
+
+    /**
+     * Quem decide para qual degrau (ou DLQ) vai a mensagem que falhou no
+     * {@link org.cave.rabbit.rabbit.NomeDoProcessoRabbitService#consumer}.
+     *
+     * @param rabbitTemplate usado para republicar
+     * @return PoliticaDeRetentativa
+     */
+    @Bean
+    PoliticaDeRetentativa retentativaNomeDoProcesso(RabbitTemplate rabbitTemplate) {
+        return new PoliticaDeRetentativa(rabbitTemplate,
+                PoliticaDeRetentativa.nomesDasFilas(RabbitQueueConstants.PROCESSO_DELAYED, retentativaProperties.getAtrasos()),
+                RabbitQueueConstants.PROCESSO_DLQ,
+                retentativaProperties.getTimeoutConfirmacaoMs());
+    }
+
+    /**
+     * Filtro de duplicatas do {@link org.cave.rabbit.rabbit.NomeDoProcessoRabbitService#consumer}.
+     * O Spring chama o close no fim do contexto (descarrega o log em disco).
+     *
+     * @param properties chave, ttl, capacidade e arquivo
+     * @return Idempotencia
+     * @throws IOException se não conseguir abrir o log
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "rabbit.idempotencia.nome-do-processo", name = "habilitado", matchIfMissing = true)
+    Idempotencia idempotenciaNomeDoProcesso(IdempotenciaProperties properties) throws IOException {
+        return new Idempotencia(properties.getChave(), properties.getTtl(), properties.getCapacidade(), properties.getArquivo());
     }
 
     /**
@@ -94,6 +158,7 @@ public class NomeDoProcessoConfig {
      * <p>
      * A partir daqui tratamos manualmente. Retentou várias vezes e ainda ta com problema.
      * Análisamos e reprocessamos as mensagens quando o problema for solucionado.
+     * Para reprocessar: POST /admin/dlq/reprocessamento, ver {@link org.cave.rabbit.rabbit.dlq.ReprocessamentoDlqService}.
      *
      * @return Dlq
      */
@@ -106,10 +171,15 @@ public class NomeDoProcessoConfig {
 
     /**
      * Fazemos o bindin da fila com a exchange. Simples não?
+     * <p>
+     * Com particionamento ligado, quem fica ligado na fanout é a exchange consistent-hash (ver {@link ParticionamentoConfig})
+     * e essa fila só recebe as retentativas. Atenção: binding que já existe no broker não some sozinho ao ligar o
+     * particionamento, tem de remover na mão.
      *
      * @return Binding
      */
     @Bean
+    @ConditionalOnProperty(prefix = "rabbit.particionamento.nome-do-processo", name = "habilitado", havingValue = "false", matchIfMissing = true)
     Binding bindingNomeDoProcesso() {
         Binding binding = BindingBuilder
                 .bind(queueNomeDoProcesso())
@@ -0,0 +1,121 @@
+package org.cave.rabbit.rabbit.config;
+
+import lombok.Data;
+import org.cave.rabbit.rabbit.concorrencia.Executores;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configurações do container do {@link RabbitContainerFactoryConfig#nomeDoProcessoContainerFactory}.
+ * Vem do application.properties com o prefixo "rabbit.container.nome-do-processo".
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rabbit.container.nome-do-processo")
+public class NomeDoProcessoContainerProperties {
+
+    /**
+     * LOTE: cada thread do container processa um lote por vez, um ack por lote.
+     * PARALELO: as threads do container só repassam pro pool e cada mensagem é confirmada quando termina, ver
+     * {@link org.cave.rabbit.rabbit.concorrencia.ProcessamentoParalelo}. "tamanhoLote" e "receiveTimeoutMs" não valem.
+     */
+    private Modo modo = Modo.LOTE;
+
+    /**
+     * Quantas mensagens o listener recebe de uma vez (List&lt;Message&gt;). O ack também sai de uma vez só, no fim do lote.
+     */
+    private int tamanhoLote = 10;
+
+    /**
+     * Quanto tempo o container espera o lote encher. Estourou, entrega o que tiver (lote parcial).
+     */
+    private long receiveTimeoutMs = 1000;
+
+    /**
+     * Limites de threads consumidoras. O container começa com o mínimo.
+     */
+    private int consumidoresMin = 3;
+    private int consumidoresMax = 10;
+
+    /**
+     * Prefetch inicial de cada consumidor. Nunca fica abaixo do tamanho do lote. Com o adaptativo ligado, ele recalcula
+     * (só no modo LOTE: no PARALELO é o limite de concorrência e fica fixo).
+     */
+    private int prefetch = 250;
+
+    /**
+     * Loga uma mensagem a cada N processadas (1 loga todas, 0 desliga). Logar tudo no caminho quente custa mais que o handler.
+     */
+    private long logAmostragem = 1000;
+
+    private Adaptativo adaptativo = new Adaptativo();
+
+    private Paralelo paralelo = new Paralelo();
+
+    public enum Modo {
+        LOTE,
+        PARALELO
+    }
+
+    /**
+     * Só no modo PARALELO.
+     */
+    @Data
+    public static class Paralelo {
+
+        /**
+         * PLATAFORMA ou VIRTUAL. Com VIRTUAL (JDK 21+, opt-in), uma thread por mensagem: a concorrência é consumidores x prefetch.
+         */
+        private Executores.Tipo executor = Executores.Tipo.PLATAFORMA;
+
+        /**
+         * Tamanho do pool quando o executor for de plataforma. Menor que consumidores x prefetch, o resto espera na fila do pool.
+         */
+        private int threadsPlataforma = 64;
+
+        /**
+         * Mensagens prontas esperando a mais antiga terminar (pra sair num ack múltiplo só). Passou disso, são
+         * confirmadas uma a uma. Tem de ser bem menor que o prefetch, senão uma mensagem lenta trava a janela.
+         */
+        private int acksRetidos = 32;
+
+    }
+
+    /**
+     * Ver {@link org.cave.rabbit.rabbit.concorrencia.ConcorrenciaAdaptativa}.
+     */
+    @Data
+    public static class Adaptativo {
+
+        private boolean habilitado = true;
+
+        /**
+         * De quanto em quanto tempo olhamos a fila.
+         */
+        private long intervaloMs = 5000;
+
+        /**
+         * Backlog aceitável por consumidor. Acima disso sobe, abaixo de 1/4 disso desce.
+         */
+        private long mensagensPorConsumidor = 100;
+
+        /**
+         * Leituras seguidas acima/abaixo da marca antes de mudar alguma coisa.
+         */
+        private int ticksParaSubir = 2;
+        private int ticksParaDescer = 6;
+
+        /**
+         * Depois de uma mudança, não mexe de novo por esse tempo.
+         */
+        private long carenciaMs = 15000;
+
+        /**
+         * Latência de referência do handler (p99). Pesa o backlog na hora de decidir os consumidores e calcula o prefetch.
+         */
+        private long latenciaAlvoMs = 200;
+        private int prefetchMaximo = 250;
+
+    }
+
+}
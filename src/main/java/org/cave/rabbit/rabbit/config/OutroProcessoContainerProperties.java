@@ -0,0 +1,35 @@
+package org.cave.rabbit.rabbit.config;
+
+import lombok.Data;
+import org.cave.rabbit.rabbit.concorrencia.Executores;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configurações do {@link RabbitContainerFactoryConfig#outroProcessoContainerFactory} (DirectMessageListenerContainer).
+ * Vem do application.properties com o prefixo "rabbit.container.outro-processo".
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rabbit.container.outro-processo")
+public class OutroProcessoContainerProperties {
+
+    /**
+     * PLATAFORMA ou VIRTUAL. VIRTUAL só tem efeito rodando em JDK 21+, senão cai em PLATAFORMA (com aviso no log).
+     * O build é Java 11, então o padrão é PLATAFORMA; VIRTUAL é opt-in de quem roda numa JVM nova.
+     */
+    private Executores.Tipo executor = Executores.Tipo.PLATAFORMA;
+
+    /**
+     * Tamanho do pool quando o executor for de plataforma.
+     */
+    private int threadsPlataforma = 16;
+
+    /**
+     * Consumidores (channels) por fila.
+     */
+    private int consumidoresPorFila = 50;
+
+    private int prefetch = 20;
+
+}
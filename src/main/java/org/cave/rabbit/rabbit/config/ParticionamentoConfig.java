@@ -0,0 +1,146 @@
+package org.cave.rabbit.rabbit.config;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.cave.rabbit.rabbit.NomeDoProcessoRabbitService;
+import org.cave.rabbit.rabbit.config.constants.RabbitQueueConstants;
+import org.cave.rabbit.rabbit.particionamento.RoteadorDeParticao;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.CustomExchange;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.MethodRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Topologia particionada do nome-do-processo. Só existe com rabbit.particionamento.nome-do-processo.habilitado=true.
+ * <p>
+ * Uma fila clássica é atendida por um core do broker, e isso vira o teto de throughput. Aqui a mensagem sai da fanout
+ * de sempre, passa por uma exchange consistent-hash e cai em UMA de N filas-partição. A partição é escolhida pelo
+ * hash do header {@link RoteadorDeParticao#X_CHAVE_PARTICAO} (um campo do JSON), então a mesma chave cai sempre na
+ * mesma partição. As partições se espalham pelos cores e pelos nós do cluster.
+ * <p>
+ * Cada partição é single-active-consumer e tem um container só dela com um consumidor
+ * ({@link RabbitContainerFactoryConfig#particaoContainerFactory}): as mensagens de uma chave são processadas na ordem
+ * em que chegaram. O listener é o mesmo {@link NomeDoProcessoRabbitService#consumer}.
+ * <p>
+ * Mensagem que falha sai da ordem de qualquer jeito: a retentativa devolve ela na fila principal
+ * ({@link RabbitQueueConstants#PROCESSO_QUEUE}), não na partição.
+ * <p>
+ * Exchange -> Exchange consistent-hash -> Filas-partição (-> DLQ)
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "rabbit.particionamento.nome-do-processo", name = "habilitado", havingValue = "true")
+public class ParticionamentoConfig implements RabbitListenerConfigurer {
+
+    public static final String X_CONSISTENT_HASH = "x-consistent-hash"; // Tipo da exchange (plugin rabbitmq_consistent_hash_exchange)
+    public static final String HASH_HEADER = "hash-header"; // Argumento da exchange: faz o hash desse header em vez da routing key
+    public static final String X_SINGLE_ACTIVE_CONSUMER = "x-single-active-consumer";
+    public static final String PARTICAO_LISTENER_ID = "nomeDoProcessoParticao"; // Prefixo, cada partição ganha o número
+    private static final String PESO = "1"; // Na consistent-hash, a routing key do binding é o peso da fila. Todas iguais.
+
+    @Autowired
+    private RabbitAdmin rabbitAdmin;
+
+    @Autowired
+    private ParticionamentoProperties properties;
+
+    @Autowired
+    private PrioridadeProperties prioridadeProperties;
+
+    @Autowired
+    private NomeDoProcessoRabbitService nomeDoProcessoRabbitService;
+
+    @Autowired
+    private DefaultMessageHandlerMethodFactory handlerMethodFactory;
+
+    @Autowired
+    @Qualifier(RabbitContainerFactoryConfig.PARTICAO_FACTORY_NAME)
+    private RabbitListenerContainerFactory<?> particaoContainerFactory;
+
+    public static String nomeDaParticao(int particao) {
+        return RabbitQueueConstants.PROCESSO_PARTICAO + "_" + particao;
+    }
+
+    @Bean
+    CustomExchange exchangeHashNomeDoProcesso() {
+        Map<String, Object> args = new HashMap<>();
+        args.put(HASH_HEADER, RoteadorDeParticao.X_CHAVE_PARTICAO);
+        CustomExchange exchange = new CustomExchange(RabbitQueueConstants.PROCESSO_HASH_EX, X_CONSISTENT_HASH, true, false, args);
+        exchange.setAdminsThatShouldDeclare(rabbitAdmin);
+        return exchange;
+    }
+
+    /**
+     * Binding exchange -> exchange: tudo que chega na fanout segue pra consistent-hash.
+     */
+    @Bean
+    Binding bindingHashNomeDoProcesso(FanoutExchange exchangeNomeDoProcesso) {
+        Binding binding = BindingBuilder
+                .bind(exchangeHashNomeDoProcesso())
+                .to(exchangeNomeDoProcesso);
+        binding.setAdminsThatShouldDeclare(rabbitAdmin);
+        return binding;
+    }
+
+    /**
+     * As filas-partição e seus bindings na consistent-hash. Mesma DLQ e mesma prioridade da fila principal.
+     */
+    @Bean
+    Declarables particoesNomeDoProcesso() {
+        List<Declarable> declaraveis = new ArrayList<>();
+        for (int i = 0; i < properties.getParticoes(); i++) {
+            Map<String, Object> args = new HashMap<>();
+            args.put(NomeDoProcessoConfig.X_DEAD_LETTER_EXCHANGE, "");
+            args.put(NomeDoProcessoConfig.X_DEAD_LETTER_ROUTING_KEY, RabbitQueueConstants.PROCESSO_DLQ);
+            args.put(X_SINGLE_ACTIVE_CONSUMER, true);
+            if (prioridadeProperties.getMaxima() > 0) {
+                args.put(NomeDoProcessoConfig.X_MAX_PRIORITY, prioridadeProperties.getMaxima());
+            }
+            Queue queue = new Queue(nomeDaParticao(i), true, false, false, args);
+            queue.setAdminsThatShouldDeclare(rabbitAdmin);
+
+            Binding binding = BindingBuilder.bind(queue).to(exchangeHashNomeDoProcesso()).with(PESO).noargs();
+            binding.setAdminsThatShouldDeclare(rabbitAdmin);
+
+            declaraveis.add(queue);
+            declaraveis.add(binding);
+        }
+        return new Declarables(declaraveis);
+    }
+
+    /**
+     * Um endpoint (e portanto um container) por partição, todos apontando pro mesmo método do
+     * {@link NomeDoProcessoRabbitService}. É o equivalente programático de N @RabbitListener.
+     */
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        Method consumer = ReflectionUtils.findMethod(NomeDoProcessoRabbitService.class, "consumer", List.class);
+        for (int i = 0; i < properties.getParticoes(); i++) {
+            MethodRabbitListenerEndpoint endpoint = new MethodRabbitListenerEndpoint();
+            endpoint.setId(PARTICAO_LISTENER_ID + i);
+            endpoint.setQueueNames(nomeDaParticao(i));
+            endpoint.setBean(nomeDoProcessoRabbitService);
+            endpoint.setMethod(consumer);
+            endpoint.setMessageHandlerMethodFactory(handlerMethodFactory);
+            registrar.registerEndpoint(endpoint, particaoContainerFactory);
+        }
+    }
+
+}
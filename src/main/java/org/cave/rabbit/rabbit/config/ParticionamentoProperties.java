@@ -0,0 +1,50 @@
+package org.cave.rabbit.rabbit.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import org.cave.rabbit.rabbit.config.constants.RabbitQueueConstants;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Topologia particionada do nome-do-processo, ver {@link ParticionamentoConfig}.
+ * Vem do application.properties com o prefixo "rabbit.particionamento.nome-do-processo".
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rabbit.particionamento.nome-do-processo")
+public class ParticionamentoProperties {
+
+    /**
+     * Precisa do plugin rabbitmq_consistent_hash_exchange no broker.
+     */
+    private boolean habilitado = false;
+
+    /**
+     * Quantas filas-partição. Mudar depois redistribui parte das chaves (é consistent hash, não módulo: só ~1/N muda
+     * de partição), e durante a troca a ordem dessas chaves não é garantida.
+     */
+    private int particoes = 4;
+
+    /**
+     * Campo do primeiro nível do JSON que define a partição. Mesma chave, mesma partição, mesma ordem.
+     */
+    private String campoChave = "id";
+
+    /**
+     * @return todas as filas onde o backlog do nome-do-processo fica: a principal (com partição ela só recebe as
+     * retentativas) e, se habilitado, as partições
+     */
+    public List<String> filas() {
+        List<String> filas = new ArrayList<>();
+        filas.add(RabbitQueueConstants.PROCESSO_QUEUE);
+        if (habilitado) {
+            for (int i = 0; i < particoes; i++) {
+                filas.add(ParticionamentoConfig.nomeDaParticao(i));
+            }
+        }
+        return filas;
+    }
+
+}
@@ -0,0 +1,49 @@
+package org.cave.rabbit.rabbit.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Prioridade das mensagens do nome-do-processo. Vem do application.properties com o prefixo "rabbit.prioridade.nome-do-processo".
+ * <p>
+ * A fila (e as partições) é declarada com x-max-priority e o POST escolhe a prioridade pelo header
+ * {@link org.cave.rabbit.rabbit.NomeDoProcessoController#X_PRIORIDADE}. Mensagem de prioridade maior passa na frente
+ * das que estão ESPERANDO na fila; as que já foram entregues no prefetch de um consumidor não voltam. Prefetch grande
+ * dilui a prioridade.
+ * <p>
+ * Atenção: x-max-priority não muda numa fila que já existe. A declaração só confere o nome (ver
+ * {@link org.cave.rabbit.rabbit.topologia.AdminParalelo}), então fila antiga continua sem prioridade até ser apagada e
+ * recriada vazia.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rabbit.prioridade.nome-do-processo")
+public class PrioridadeProperties {
+
+    /**
+     * Maior prioridade aceita (x-max-priority). 0 desliga: a fila é declarada sem o argumento e o header é ignorado.
+     * O broker mantém uma sub-fila por nível, então poucos níveis (até 5) bastam.
+     */
+    private int maxima = 5;
+
+    /**
+     * Prioridade de quem não manda o header.
+     */
+    private int padrao = 0;
+
+    /**
+     * Header valendo mais que "maxima" vira "maxima", negativo vira 0.
+     *
+     * @param pedida valor do header, null se não veio
+     * @return prioridade pra mensagem, null com a prioridade desligada
+     */
+    public Integer prioridade(Integer pedida) {
+        if (maxima <= 0) {
+            return null;
+        }
+        int valor = pedida != null ? pedida : padrao;
+        return Math.max(0, Math.min(valor, maxima));
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.cave.rabbit.rabbit.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configurações do lado de quem POSTA mensagens. Vem do application.properties com o prefixo "rabbit.publicacao".
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rabbit.publicacao")
+public class PublicacaoProperties {
+
+    /**
+     * Quantas publicações podem estar aguardando ack/nack do broker ao mesmo tempo.
+     * Passou disso, quem publica de forma assíncrona recebe recusa e quem publica em lote espera.
+     */
+    private int janela = 1000;
+
+    /**
+     * Quanto tempo uma publicação em lote espera por uma vaga na janela antes de desistir do item.
+     */
+    private long esperaPorJanelaMs = 30000;
+
+    /**
+     * Se o broker não confirmar nesse tempo, consideramos a publicação perdida.
+     */
+    private long timeoutConfirmacaoMs = 30000;
+
+    private Acumulador acumulador = new Acumulador();
+
+    private Outbox outbox = new Outbox();
+
+    /**
+     * Ver {@link org.cave.rabbit.rabbit.publicacao.AcumuladorDePublicacao}.
+     */
+    @Data
+    public static class Acumulador {
+
+        /**
+         * Desligado, cada publicação do controller sai na hora, direto no {@link org.cave.rabbit.rabbit.publicacao.PublicadorConfirmado}.
+         */
+        private boolean habilitado = true;
+
+        /**
+         * Juntou isso, envia sem esperar o linger.
+         */
+        private int tamanhoLote = 100;
+
+        /**
+         * Quanto a primeira mensagem de um lote espera por companhia antes do lote sair incompleto.
+         * É a latência extra que aceitamos pagar, no pior caso, por throughput.
+         */
+        private long lingerMs = 5;
+
+        /**
+         * Threads de envio. Cada uma usa um channel por lote, então são no máximo esses channels publicando ao mesmo tempo.
+         */
+        private int canais = 2;
+
+        /**
+         * Máximo de mensagens esperando envio. Passou disso, a publicação é recusada na hora.
+         */
+        private int limite = 10000;
+
+    }
+
+    /**
+     * Ver {@link org.cave.rabbit.rabbit.outbox.Outbox}.
+     */
+    @Data
+    public static class Outbox {
+
+        /**
+         * Ligado, o POST do nome-do-processo responde 202 assim que a mensagem estiver no disco, e o relay entrega pro
+         * broker depois. A admissão deixa de olhar o broker: quem segura a rajada é o disco.
+         */
+        private boolean habilitado = false;
+
+        private String diretorio = "outbox/nome-do-processo";
+
+        /**
+         * Tamanho de cada arquivo de segmento. O disco ocupado vai até segmentoBytes x maximoSegmentos.
+         */
+        private int segmentoBytes = 64 * 1024 * 1024;
+        private int maximoSegmentos = 64;
+
+        /**
+         * De quanto em quanto tempo sai o fsync, e portanto a latência extra do POST. 0 = não espera o fsync.
+         */
+        private long fsyncIntervaloMs = 5;
+
+        /**
+         * Mensagens por lote do relay (um channel, confirmações esperadas juntas).
+         */
+        private int tamanhoLote = 500;
+
+        /**
+         * Quanto o relay dorme com o outbox vazio (gravação nova acorda antes).
+         */
+        private long ociosoMs = 50;
+
+        /**
+         * Espera antes de reenviar um lote que falhou.
+         */
+        private long reenvioMs = 1000;
+
+        /**
+         * Reenvios de UMA mensagem que falha por culpa dela (devolvida, nack com o resto do lote passando, registro
+         * ilegível) antes de ir pro log de estacionadas. Falha do broker inteiro não conta. 0 = nunca estaciona.
+         */
+        private int maximoTentativas = 10;
+
+    }
+
+}
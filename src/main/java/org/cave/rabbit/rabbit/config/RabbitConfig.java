@@ -1,7 +1,12 @@
 package org.cave.rabbit.rabbit.config;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.Data;
+import java.nio.file.Paths;
+import lombok.extern.slf4j.Slf4j;
+import org.cave.rabbit.rabbit.claimcheck.ArmazemDeBlobs;
+import org.cave.rabbit.rabbit.claimcheck.ArmazemEmDisco;
+import org.cave.rabbit.rabbit.mensagem.ConversorPorContentType;
+import org.cave.rabbit.rabbit.topologia.AdminParalelo;
+import org.cave.rabbit.rabbit.topologia.RegistroDeProcessos;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
 import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
@@ -9,11 +14,12 @@ import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Primary;
-import org.springframework.messaging.converter.MappingJackson2MessageConverter;
 import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
 
 
@@ -21,33 +27,88 @@ import org.springframework.messaging.handler.annotation.support.DefaultMessageHa
  * Essa é a primeira classe que devemos criar e dar atenção quando pensamos em um serviço que usa RabbitMQ.
  * <p>
  * Essa configuração não precisa estar centralizada aqui. Algumas pessoas gostam quebrar ela em diversas configs.
+ * <p>
+ * Três conexões: consumo (containers), publicação (RabbitTemplate) e administração (RabbitAdmin). Os números de cada
+ * uma vêm de {@link ConexaoProperties}.
  */
-@Data
+@Slf4j
 @EnableRabbit // Habilita a detecção das anotações @RabbitListener
 @Configuration
+@Import(RegistroDeProcessos.class) // Processos declarados só no .properties, ver TopologiaProperties
 public class RabbitConfig implements RabbitListenerConfigurer {
 
-    /**
-     * Esses valores do .properties/.yml, por favor
-     */
-    private String addresses = "localhost";
-    private String username = "use-exemplo";
-    private String password = "C0nnect123";
-    private String virtualHost = "para-exemplo";
+    public static final String PUBLICACAO_CONNECTION_FACTORY = "publicacaoConnectionFactory";
+    public static final String ADMINISTRACAO_CONNECTION_FACTORY = "administracaoConnectionFactory";
+
+    private final FormatosProperties formatosProperties;
+
+    public RabbitConfig(FormatosProperties formatosProperties) {
+        this.formatosProperties = formatosProperties;
+    }
 
     /**
-     * Dados da conexão etc...
+     * Conexão do CONSUMO. É a @Primary, então é ela que os container factories recebem.
      *
+     * @param properties dados de conexão e pool do consumo
      * @return ConnectionFactory
      */
     @Bean
     @Primary
-    public ConnectionFactory connectionFactory() {
+    public ConnectionFactory connectionFactory(ConexaoProperties properties) {
+        return criaConnectionFactory(properties, properties.getConsumo(), "consumo");
+    }
+
+    /**
+     * Conexão da PUBLICAÇÃO, só do {@link #rabbitTemplate}.
+     *
+     * @param properties dados de conexão e pool da publicação
+     * @return ConnectionFactory
+     */
+    @Bean(name = PUBLICACAO_CONNECTION_FACTORY)
+    public ConnectionFactory publicacaoConnectionFactory(ConexaoProperties properties) {
+        CachingConnectionFactory connectionFactory = criaConnectionFactory(properties, properties.getPublicacao(), "publicacao");
+        connectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED); // O broker avisa (ack/nack) cada publicação, casando pelo CorrelationData
+        connectionFactory.setPublisherReturns(true); // E devolve o que não teve pra onde ir (exchange sem fila ligada)
+        return connectionFactory;
+    }
+
+    /**
+     * Conexão do {@link #rabbitAdmin}. O RabbitAdmin só declara sozinho (no connect) em modo CHANNEL, e consumo ou
+     * publicação podem estar em modo CONNECTION. Conexão pequena, só declaração e leitura de profundidade de fila.
+     *
+     * @param properties          dados de conexão
+     * @param topologiaProperties o cache de channels acompanha o paralelismo da declaração
+     * @return ConnectionFactory
+     */
+    @Bean(name = ADMINISTRACAO_CONNECTION_FACTORY)
+    public ConnectionFactory administracaoConnectionFactory(ConexaoProperties properties, TopologiaProperties topologiaProperties) {
+        ConexaoProperties.Lado lado = new ConexaoProperties.Lado();
+        lado.setChannels(Math.max(1, topologiaProperties.getParalelismo()));
+        return criaConnectionFactory(properties, lado, "administracao");
+    }
+
+    /**
+     * Uma CachingConnectionFactory "crua", só com os dados de conexão e o pool de um lado. Usada também por quem
+     * precisa de uma conexão própria (ex: container com executor dedicado em {@link RabbitContainerFactoryConfig}).
+     *
+     * @param properties dados de conexão
+     * @param lado       conexões, channels e checkout timeout
+     * @param nome       aparece no nome da conexão no management do RabbitMQ
+     * @return CachingConnectionFactory nova, não gerenciada pelo Spring
+     */
+    public static CachingConnectionFactory criaConnectionFactory(ConexaoProperties properties, ConexaoProperties.Lado lado, String nome) {
         CachingConnectionFactory connectionFactory = new CachingConnectionFactory();
-        connectionFactory.setAddresses(addresses);
-        connectionFactory.setUsername(username);
-        connectionFactory.setPassword(password);
-        connectionFactory.setVirtualHost(virtualHost);
+        connectionFactory.setAddresses(properties.getAddresses());
+        connectionFactory.setUsername(properties.getUsername());
+        connectionFactory.setPassword(properties.getPassword());
+        connectionFactory.setVirtualHost(properties.getVirtualHost());
+        connectionFactory.setConnectionNameStrategy(cf -> "exemplo-rabbit-api-" + nome);
+        if (lado.getConexoes() > 1) {
+            connectionFactory.setCacheMode(CachingConnectionFactory.CacheMode.CONNECTION);
+            connectionFactory.setConnectionCacheSize(lado.getConexoes());
+        }
+        connectionFactory.setChannelCacheSize(lado.getChannels());
+        connectionFactory.setChannelCheckoutTimeout(lado.getCheckoutTimeoutMs());
         return connectionFactory;
     }
 
@@ -62,15 +123,24 @@ public class RabbitConfig implements RabbitListenerConfigurer {
      * Uma forma de fazer isso é invocando manualmente o initialize dentro da classe Main do micro serviço.
      * Outra forma é declarando o bean para que receba o Application Context, assim ele participa do contexto de startup da aplicação
      * e invoca o #initialize automáticamente.
+     * <p>
+     * O nosso é um {@link AdminParalelo}: confere o que já existe no broker e declara o resto em paralelo, pra o startup
+     * não crescer junto com o número de processos de {@link TopologiaProperties}.
      *
-     * @param applicationContext ApplicationContext do Spring
-     * @param connectionFactory  #{@link #connectionFactory()}
+     * @param applicationContext  ApplicationContext do Spring
+     * @param connectionFactory   {@link #administracaoConnectionFactory}
+     * @param consumo             {@link #connectionFactory}
+     * @param publicacao          {@link #publicacaoConnectionFactory}
+     * @param topologiaProperties paralelismo da declaração
      * @return RabbitAdmin
      */
     @Bean
     @Primary
-    public RabbitAdmin rabbitAdmin(ApplicationContext applicationContext, ConnectionFactory connectionFactory) {
-        RabbitAdmin rabbitAdmin = new RabbitAdmin(connectionFactory);
+    public RabbitAdmin rabbitAdmin(ApplicationContext applicationContext, @Qualifier(ADMINISTRACAO_CONNECTION_FACTORY) ConnectionFactory connectionFactory,
+                                   ConnectionFactory consumo, @Qualifier(PUBLICACAO_CONNECTION_FACTORY) ConnectionFactory publicacao,
+                                   TopologiaProperties topologiaProperties) {
+        AdminParalelo rabbitAdmin = new AdminParalelo(connectionFactory, topologiaProperties.getParalelismo());
+        rabbitAdmin.declaraAoConectar(consumo, publicacao); // Consumidor conectando antes do admin não pode achar a fila faltando
         rabbitAdmin.setApplicationContext(applicationContext);
         rabbitAdmin.afterPropertiesSet();
         return rabbitAdmin;
@@ -81,27 +151,55 @@ public class RabbitConfig implements RabbitListenerConfigurer {
      * <p>
      * Usado para POSTAR mensagens na fila.
      * Aqui usamos para fins de retentativas.
+     * <p>
+     * Mandatory faz o broker devolver a mensagem caso ela não seja roteada para nenhuma fila. Sem isso ele simplesmente
+     * descarta e ainda manda ack. A devolução chega antes do ack e fica guardada no CorrelationData,
+     * ver {@link org.cave.rabbit.rabbit.publicacao.PublicadorConfirmado}.
+     * <p>
+     * O converter escolhe o formato pelo content_type ao ler, e escreve objetos no formato padrão de {@link FormatosProperties}.
      *
-     * @param connectionFactory {@link #connectionFactory()}
+     * @param connectionFactory  {@link #publicacaoConnectionFactory}, mesmo quando quem publica é um consumidor (retentativa)
+     * @param formatosProperties formato padrão
      * @return RabbitTemplate
      */
     @Bean
     @Primary
-    RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
-        return new RabbitTemplate(connectionFactory);
+    RabbitTemplate rabbitTemplate(@Qualifier(PUBLICACAO_CONNECTION_FACTORY) ConnectionFactory connectionFactory, FormatosProperties formatosProperties) {
+        RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
+        rabbitTemplate.setMessageConverter(new ConversorPorContentType(formatosProperties.getPadrao()));
+        rabbitTemplate.setMandatory(true);
+        rabbitTemplate.setReturnCallback((message, replyCode, replyText, exchange, routingKey) ->
+                log.warn("Mensagem devolvida pelo broker. exchange={} routingKey={} motivo={} {}", exchange, routingKey, replyCode, replyText));
+        return rabbitTemplate;
     }
 
+    /**
+     * Armazém do {@link org.cave.rabbit.rabbit.claimcheck.ClaimCheck}. Pra usar outro (S3, banco...), declare um bean
+     * {@link ArmazemDeBlobs} com @Primary.
+     *
+     * @param properties diretório dos blobs
+     * @return ArmazemEmDisco
+     */
+    @Bean
+    ArmazemDeBlobs armazemEmDisco(ClaimCheckProperties properties) {
+        return new ArmazemEmDisco(Paths.get(properties.getDiretorio()));
+    }
 
     /**
-     * {@link ObjectMapper}, para converter mensagens para objetos
+     * Converter dos métodos @RabbitListener.
+     * <p>
+     * Só entra em ação quando o método do @RabbitListener pede um POJO/Map. Quem recebe Message (como o
+     * NomeDoProcessoRabbitService) pega os bytes crus e não paga essa conversão.
+     * <p>
+     * O mesmo {@link ConversorPorContentType} do RabbitTemplate: lê JSON, Smile ou CBOR pelo content_type e descomprime
+     * pelo content_encoding. Um MappingJackson2MessageConverter puro só entenderia JSON sem compressão, e o que a gente
+     * mesmo publica pode sair em Smile/CBOR ou comprimido (ver {@link FormatosProperties}).
      *
-     * @return MappingJackson2MessageConverter usando {@link ObjectMapper}
+     * @return ConversorPorContentType, com o formato padrão nas respostas de @SendTo
      */
     @Bean
-    public MappingJackson2MessageConverter jackson2Converter() {
-        MappingJackson2MessageConverter conveter = new MappingJackson2MessageConverter();
-        conveter.setObjectMapper(new ObjectMapper());
-        return conveter;
+    public ConversorPorContentType conversorDeListener() {
+        return new ConversorPorContentType(formatosProperties.getPadrao());
     }
 
     /**
@@ -116,7 +214,7 @@ public class RabbitConfig implements RabbitListenerConfigurer {
     @Bean
     DefaultMessageHandlerMethodFactory handlerMethodFactory() {
         DefaultMessageHandlerMethodFactory factory = new DefaultMessageHandlerMethodFactory();
-        factory.setMessageConverter(jackson2Converter());
+        factory.setMessageConverter(conversorDeListener());
         return factory;
     }
 
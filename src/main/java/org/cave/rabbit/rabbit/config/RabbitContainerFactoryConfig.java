@@ -1,9 +1,18 @@
 package org.cave.rabbit.rabbit.config;
 
+import java.util.concurrent.ExecutorService;
+import org.cave.rabbit.rabbit.concorrencia.Executores;
+import org.cave.rabbit.rabbit.concorrencia.LatenciaRecente;
+import org.cave.rabbit.rabbit.concorrencia.ProcessamentoParalelo;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.DirectMessageListenerContainer;
 import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.listener.RabbitListenerEndpoint;
 import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -32,13 +41,10 @@ import org.springframework.context.annotation.Configuration;
 public class RabbitContainerFactoryConfig {
 
     public static final String NOME_DO_PROCESSO_FACTORY_NAME = "nomeDoProcessoContainerFactory";
-    public static final String OUTRO_FACTORY_NAME = "...";
+    public static final String NOME_DO_PROCESSO_LISTENER_ID = "nomeDoProcessoListener"; // Id do @RabbitListener, pra achar o container no RabbitListenerEndpointRegistry
+    public static final String OUTRO_FACTORY_NAME = "outroProcessoContainerFactory";
+    public static final String PARTICAO_FACTORY_NAME = "particaoContainerFactory";
 
-    /**
-     * Esses valores do .properties/.yml, por favor
-     */
-    private static final Integer CONCURRENT_CONSUMER = 3;
-    private static final Integer CONCURRENT_MAX_CONSUMER = 3;
     private static final boolean DEFAULT_REQUEUE_REJECTED = false;
 
     public static final int RECOVERY_INTERVAL = 30000;
@@ -52,33 +58,183 @@ public class RabbitContainerFactoryConfig {
      * Hoje a noite eu fiz dessa maneira e validei, e tudo parece funcionar sem problemas. Meu deus eu amo lamdas.
      *
      * OK.
+     * <p>
+     * Esse container entrega as mensagens em LOTE (consumerBatchEnabled). O método consumidor recebe um List&lt;Message&gt;
+     * de até "tamanhoLote" mensagens e, quando ele retorna, o container manda UM ack com multiple=true para o lote inteiro.
+     * Ou seja, o consumidor pode amortizar trabalho (insert em lote no banco, uma chamada HTTP pra N itens) e o broker
+     * recebe um ack por lote em vez de um por mensagem.
+     * <p>
+     * Atenção: se o método estourar exception, o lote INTEIRO é rejeitado. Tratar mensagem venenosa individualmente
+     * é responsabilidade do consumidor, ver {@link org.cave.rabbit.rabbit.NomeDoProcessoRabbitService#consumer}.
+     * <p>
+     * Com modo=PARALELO não tem lote: ack manual, mensagem a mensagem, processadas num pool (ver {@link ProcessamentoParalelo}).
      *
      * @param connectionFactory
+     * @param properties        tamanho do lote e receive timeout
+     * @param executor          {@link #nomeDoProcessoExecutor}, só no modo PARALELO
      * @return
      */
     @Bean(name = RabbitContainerFactoryConfig.NOME_DO_PROCESSO_FACTORY_NAME)
-    public RabbitListenerContainerFactory<SimpleMessageListenerContainer> nomeDoProcessoContainerFactory(ConnectionFactory connectionFactory) {
+    public RabbitListenerContainerFactory<SimpleMessageListenerContainer> nomeDoProcessoContainerFactory(ConnectionFactory connectionFactory,
+                                                                                                        NomeDoProcessoContainerProperties properties,
+                                                                                                        @Qualifier("nomeDoProcessoExecutor") ExecutorService executor) {
         return (RabbitListenerEndpoint endpoint) -> {
 
             // Existem diversos tipos de containers. O SimpleMessageListenerContainer é o indicado na grande maioria dos casos.
             SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
             container.setConnectionFactory(connectionFactory); // Obiviamente, para fazer o papel de aviãozinho, buscando e recebendo mensagens, ele deve ter conhecimento dos dados de conexão
-            container.setConcurrentConsumers(CONCURRENT_CONSUMER); // Define quantas threads farão o papel de aviãozinho
-            container.setMaxConcurrentConsumers(CONCURRENT_MAX_CONSUMER); // Limita um numero X de consumers. Caso deseje SEMPRE um numero X de threads constantes. Considere preencher o valor no .setConcurrentConsumers e deixar o .setMaxConcurrentConsumers vazio
+            container.setConcurrentConsumers(properties.getConsumidoresMin()); // Define quantas threads farão o papel de aviãozinho
+            container.setMaxConcurrentConsumers(properties.getConsumidoresMax()); // Limita um numero X de consumers. Caso deseje SEMPRE um numero X de threads constantes. Considere preencher o valor no .setConcurrentConsumers e deixar o .setMaxConcurrentConsumers vazio
             container.setRecoveryInterval(RECOVERY_INTERVAL); // Caso ocorra um erro ao consumir mensagens da fila, o container entra em Recovery Mode (se o erro não for absurdo). Espera X tempo antes de tentar reiniciar o consumo.
             container.setDefaultRequeueRejected(false); // As mensagens não vão ser reenfileiradas se estourarmos uma exception. (deve ter algum caso de uso, ainda não usei como true).
 
+            boolean paralelo = properties.getModo() == NomeDoProcessoContainerProperties.Modo.PARALELO;
+            if (paralelo) {
+                container.setAcknowledgeMode(AcknowledgeMode.MANUAL); // Quem confirma é o ProcessamentoParalelo, mensagem a mensagem
+                container.setPrefetchCount(properties.getPrefetch()); // Aqui o prefetch é o limite de mensagens processando ao mesmo tempo por consumidor
+            } else {
+                container.setConsumerBatchEnabled(true); // Junta as mensagens recebidas em um List<Message> antes de chamar o listener
+                container.setBatchSize(properties.getTamanhoLote()); // Tamanho máximo do lote (e do ack multiple)
+                container.setReceiveTimeout(properties.getReceiveTimeoutMs()); // Fila parada? Depois desse tempo entrega o lote parcial
+                container.setPrefetchCount(Math.max(properties.getPrefetch(), properties.getTamanhoLote())); // Prefetch menor que o lote faria o lote nunca encher
+            }
+
             if (endpoint != null) {
+                endpoint.setBatchListener(true); // Avisa o endpoint que o método recebe List<Message>
                 endpoint.setupListenerContainer(container); // Essa linha é um resquicio da forma antiga, programática, sem @Anotações de fazer configuração de filas no Spring. Não me recordo se ela ainda é necessária. Só usamos lambda pra receber o endpoint por causa dessa linha. Vale testar sem.
+                if (paralelo) {
+                    // Embrulha o listener do @RabbitListener: a thread do container só entrega pro pool
+                    container.setMessageListener(new ProcessamentoParalelo((ChannelAwareMessageListener) container.getMessageListener(),
+                            executor, Math.min(properties.getParalelo().getAcksRetidos(), properties.getPrefetch() / 2)));
+                }
+            }
+
+            return container;
+        };
+    }
+
+    /**
+     * Container de UMA partição do nome-do-processo (ver {@link ParticionamentoConfig}).
+     * <p>
+     * Igual ao {@link #nomeDoProcessoContainerFactory}, mas com um consumidor só e sem auto-scale. A fila é
+     * single-active-consumer: mesmo com várias instâncias da aplicação, só um consumidor recebe de cada partição por vez,
+     * então a ordem por chave se mantém. Mais consumidores aqui só ficariam parados esperando a vez.
+     *
+     * @param connectionFactory
+     * @param properties        tamanho do lote, receive timeout e prefetch (os mesmos do nome-do-processo)
+     * @return
+     */
+    @Bean(name = RabbitContainerFactoryConfig.PARTICAO_FACTORY_NAME)
+    public RabbitListenerContainerFactory<SimpleMessageListenerContainer> particaoContainerFactory(ConnectionFactory connectionFactory,
+                                                                                                 NomeDoProcessoContainerProperties properties) {
+        return (RabbitListenerEndpoint endpoint) -> {
+
+            SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
+            container.setConnectionFactory(connectionFactory);
+            container.setConcurrentConsumers(1); // Ordem por chave: um consumidor, um lote por vez
+            container.setRecoveryInterval(RECOVERY_INTERVAL);
+            container.setDefaultRequeueRejected(false);
+            container.setConsumerBatchEnabled(true);
+            container.setBatchSize(properties.getTamanhoLote());
+            container.setReceiveTimeout(properties.getReceiveTimeoutMs());
+            container.setPrefetchCount(Math.max(properties.getPrefetch(), properties.getTamanhoLote()));
+
+            if (endpoint != null) {
+                endpoint.setBatchListener(true);
+                endpoint.setupListenerContainer(container);
             }
 
             return container;
         };
     }
 
+    /**
+     * Latências recentes do consumidor do nome-do-processo. O consumidor registra, a
+     * {@link org.cave.rabbit.rabbit.concorrencia.ConcorrenciaAdaptativa} lê o p99.
+     *
+     * @return buffer com as últimas 1024 amostras
+     */
     @Bean
-    public RabbitListenerContainerFactory<SimpleMessageListenerContainer> outroProcessoContainerFactory (ConnectionFactory connectionFactory) {
-        return null;
+    public LatenciaRecente latenciaNomeDoProcesso() {
+        return new LatenciaRecente(1024);
+    }
+
+    /**
+     * Pool do modo PARALELO do nome-do-processo (ver {@link ProcessamentoParalelo}). No modo LOTE fica parado (o pool de
+     * plataforma só cria thread quando recebe tarefa).
+     *
+     * @param properties configurações do nome-do-processo
+     * @return ExecutorService
+     */
+    @Bean
+    public ExecutorService nomeDoProcessoExecutor(NomeDoProcessoContainerProperties properties) {
+        return Executores.cria(properties.getParalelo().getExecutor(), properties.getParalelo().getThreadsPlataforma(), "nome-do-processo-");
+    }
+
+    /**
+     * Executor das threads que rodam os listeners do {@link #outroProcessoContainerFactory}.
+     * <p>
+     * VIRTUAL: uma virtual thread por tarefa (JDK 21+). Handler bloqueado em I/O não segura thread de plataforma.
+     * Se a JVM não tiver virtual threads, caímos num pool de plataforma com aviso no log.
+     * PLATAFORMA: pool fixo de "threadsPlataforma".
+     * <p>
+     * O Spring chama o shutdown desse ExecutorService no fim do contexto.
+     *
+     * @param properties configurações do outro-processo
+     * @return ExecutorService
+     */
+    @Bean
+    public ExecutorService outroProcessoExecutor(OutroProcessoContainerProperties properties) {
+        return Executores.cria(properties.getExecutor(), properties.getThreadsPlataforma(), "outro-processo-");
+    }
+
+    /**
+     * O DirectMessageListenerContainer NÃO tem threads próprias: o listener roda nas threads de despacho do client
+     * do RabbitMQ, que são as do executor da ConnectionFactory. Por isso esse container tem uma conexão só dele,
+     * com o {@link #outroProcessoExecutor} plugado. Assim a escolha de executor não afeta os outros listeners.
+     *
+     * @param properties dados de conexão, com o pool do lado do consumo
+     * @param executor   {@link #outroProcessoExecutor}
+     * @return ConnectionFactory exclusiva do outro-processo
+     */
+    @Bean
+    public ConnectionFactory outroProcessoConnectionFactory(ConexaoProperties properties, @Qualifier("outroProcessoExecutor") ExecutorService executor) {
+        CachingConnectionFactory connectionFactory = RabbitConfig.criaConnectionFactory(properties, properties.getConsumo(), "outro-processo");
+        connectionFactory.setExecutor(executor);
+        return connectionFactory;
+    }
+
+    /**
+     * Segundo tipo de container: DirectMessageListenerContainer.
+     * <p>
+     * No SimpleMessageListenerContainer cada consumidor é uma thread bloqueada esperando mensagem. No Direct, cada
+     * consumidor é só um channel; as entregas chegam pelo client e são despachadas no executor da conexão.
+     * Com virtual threads, dá pra ter centenas de consumidores (e milhares de mensagens em voo, somando o prefetch
+     * de cada um) sem centenas de threads de plataforma.
+     * <p>
+     * Para usar num listener: @RabbitListener(queues = ..., containerFactory = RabbitContainerFactoryConfig.OUTRO_FACTORY_NAME)
+     *
+     * @param connectionFactory {@link #outroProcessoConnectionFactory}
+     * @param properties        configurações do outro-processo
+     * @return
+     */
+    @Bean(name = RabbitContainerFactoryConfig.OUTRO_FACTORY_NAME)
+    public RabbitListenerContainerFactory<DirectMessageListenerContainer> outroProcessoContainerFactory(@Qualifier("outroProcessoConnectionFactory") ConnectionFactory connectionFactory,
+                                                                                                       OutroProcessoContainerProperties properties) {
+        return (RabbitListenerEndpoint endpoint) -> {
+
+            DirectMessageListenerContainer container = new DirectMessageListenerContainer();
+            container.setConnectionFactory(connectionFactory);
+            container.setConsumersPerQueue(properties.getConsumidoresPorFila()); // Aqui consumidor = channel, não thread
+            container.setPrefetchCount(properties.getPrefetch()); // Em voo = consumidoresPorFila x prefetch
+            container.setDefaultRequeueRejected(false);
+
+            if (endpoint != null) {
+                endpoint.setupListenerContainer(container);
+            }
+
+            return container;
+        };
     }
 
 }
@@ -0,0 +1,33 @@
+package org.cave.rabbit.rabbit.config;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configurações do reprocessamento da DLQ. Vem do application.properties com o prefixo "rabbit.dlq.reprocessamento".
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rabbit.dlq.reprocessamento")
+public class ReprocessamentoDlqProperties {
+
+    /**
+     * Onde ficam os checkpoints. Um arquivo por nome de reprocessamento.
+     */
+    private Path diretorioCheckpoint = Paths.get("dlq-checkpoints");
+
+    /**
+     * Quanto esperamos o broker confirmar cada lote republicado.
+     */
+    private long timeoutConfirmacaoMs = 10000;
+
+    /**
+     * Só dry-run: quantas mensagens lidas ficam sem ack ao mesmo tempo. Nada é removido no dry-run, então a contagem
+     * para aqui (e sai como parcial) em vez de pendurar a DLQ inteira no channel.
+     */
+    private long maximoSemAck = 10_000;
+
+}
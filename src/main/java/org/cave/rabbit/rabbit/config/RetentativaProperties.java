@@ -0,0 +1,29 @@
+package org.cave.rabbit.rabbit.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Degraus de retentativa do nome-do-processo. Vem do application.properties com o prefixo "rabbit.retentativa.nome-do-processo".
+ * <p>
+ * Cada atraso vira uma fila delayed com x-message-ttl próprio. Ex: atrasos=1s,10s,60s,10m
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rabbit.retentativa.nome-do-processo")
+public class RetentativaProperties {
+
+    private List<Duration> atrasos = new ArrayList<>(Arrays.asList(
+            Duration.ofSeconds(1), Duration.ofSeconds(10), Duration.ofSeconds(60), Duration.ofMinutes(10)));
+
+    /**
+     * Quanto esperamos o broker confirmar a republicação antes de desistir (e deixar o lote ser rejeitado).
+     */
+    private long timeoutConfirmacaoMs = 5000;
+
+}
@@ -0,0 +1,87 @@
+package org.cave.rabbit.rabbit.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
+import org.cave.rabbit.rabbit.topologia.TipoDeFila;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Registro de processos. Vem do application.properties com o prefixo "rabbit.topologia".
+ * <p>
+ * Cada entrada em "processos" vira exchange, fila, delayeds, dlq, binding, política de retentativa e container factory,
+ * sem precisar escrever uma NomeDoProcessoConfig nova. Ver {@link org.cave.rabbit.rabbit.topologia.RegistroDeProcessos}.
+ * <p>
+ * Ex: rabbit.topologia.processos.cobranca.consumidores-max=5
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rabbit.topologia")
+public class TopologiaProperties {
+
+    /**
+     * Quantos channels declaram ao mesmo tempo, ver {@link org.cave.rabbit.rabbit.topologia.AdminParalelo}.
+     */
+    private int paralelismo = 8;
+
+    /**
+     * Chave = nome do processo, em kebab-case. Os nomes no broker saem dele (cobranca-boleto -> servico_queue_cobranca_boleto).
+     */
+    private Map<String, Processo> processos = new LinkedHashMap<>();
+
+    @Data
+    public static class Processo {
+
+        /**
+         * CLASSICA, QUORUM ou STREAM, ver {@link TipoDeFila}. Trocar o tipo de uma fila que já existe não funciona,
+         * tem de apagar (ou renomear o processo).
+         */
+        private TipoDeFila tipo = TipoDeFila.CLASSICA;
+
+        /**
+         * Só QUORUM: entregas antes do broker mandar a mensagem pra DLQ.
+         */
+        private int limiteEntregas = 5;
+
+        /**
+         * Só CLASSICA: x-max-priority da fila (0 = sem prioridade). Ver {@link PrioridadeProperties}.
+         */
+        private int prioridadeMaxima = 0;
+
+        /**
+         * Só STREAM: quanto tempo o log guarda as mensagens (x-max-age: 7D, 12h, 30m...).
+         */
+        private String retencao = "7D";
+
+        /**
+         * Só STREAM: de onde o consumidor começa a ler. first, last, next, offset numérico, timestamp ISO-8601 ou
+         * intervalo (1h = a última hora). Ver {@link TipoDeFila#offset(String)}.
+         */
+        private String offset = "next";
+
+        /**
+         * Degraus de retentativa, um por fila delayed. Igual a {@link RetentativaProperties}. Só CLASSICA.
+         */
+        private List<Duration> atrasos = new ArrayList<>(Arrays.asList(
+                Duration.ofSeconds(1), Duration.ofSeconds(10), Duration.ofSeconds(60), Duration.ofMinutes(10)));
+
+        private long timeoutConfirmacaoMs = 5000;
+
+        /**
+         * Container (SimpleMessageListenerContainer). Lote maior que 1 liga o consumo em lote (List&lt;Message&gt;).
+         * Em STREAM o prefetch é a janela de crédito: quanto maior, mais vazão (o ack só devolve crédito).
+         */
+        private int consumidoresMin = 1;
+        private int consumidoresMax = 1;
+        private int prefetch = 250;
+        private int tamanhoLote = 1;
+        private long receiveTimeoutMs = 1000;
+
+    }
+
+}
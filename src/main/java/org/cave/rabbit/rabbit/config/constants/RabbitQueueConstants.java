@@ -13,14 +13,14 @@ public class RabbitQueueConstants {
 
     public static final String PROCESSO_EX = "servico_ex_nome_do_processo";
     public static final String PROCESSO_QUEUE = "servico_queue_nome_do_processo";
-    public static final String PROCESSO_DELAYED = "servico_delayed_nome_do_processo";
+    public static final String PROCESSO_DELAYED = "servico_delayed_nome_do_processo"; // Prefixo, cada degrau de retentativa ganha o atraso no nome
     public static final String PROCESSO_DLQ = "servico_dlq_nome_do_processo";
+    public static final String PROCESSO_HASH_EX = "servico_ex_hash_nome_do_processo"; // Só com particionamento
+    public static final String PROCESSO_PARTICAO = "servico_queue_nome_do_processo_particao"; // Prefixo, cada partição ganha o número no nome
 
     // Separe com espaços os nomes dos processos / fluxos. Confia em mim, parece bobo, mas depois ajuda bastante.
 
-    public static final String OUTRA_EXCHANGE = "...";
-    public static final String OUTRA_QUEUE = "...";
-    public static final String OUTRA_DELAYED = "...";
-    public static final String OUTRA_DLQ = "...";
+    // Processo novo sem nada de especial? Não precisa de constante nem de Config: registra em rabbit.topologia.processos
+    // e os nomes saem de RegistroDeProcessos#exchange, #fila, #delayed e #dlq.
 
 }
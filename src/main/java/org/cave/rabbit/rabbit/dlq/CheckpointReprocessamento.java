@@ -0,0 +1,120 @@
+package org.cave.rabbit.rabbit.dlq;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Checkpoint de um reprocessamento: arquivo com as chaves das mensagens já republicadas (e confirmadas) que ainda
+ * podem estar na DLQ.
+ * <p>
+ * A primeira linha é o id da execução. Ele só muda quando o checkpoint é apagado (reprocessamento concluído), então
+ * retomar um reprocessamento interrompido reaproveita o mesmo id.
+ * <p>
+ * A ordem no reprocessamento é: republica o lote, espera confirmação, grava as chaves (com fsync) e só então faz ack na
+ * DLQ. Se cair entre a gravação e o ack, as mensagens voltam para a DLQ, mas as chaves já estão aqui e na retomada elas
+ * são só removidas, sem republicar de novo.
+ * <p>
+ * Depois do ack, as chaves do lote não servem pra mais nada (a mensagem saiu da DLQ), então o arquivo é reescrito só com
+ * o que falta: as chaves da retomada que ainda não apareceram. Memória e arquivo ficam limitados a um lote, mesmo num
+ * reprocessamento de milhões de mensagens.
+ */
+class CheckpointReprocessamento implements Closeable {
+
+    private final Path arquivo;
+    private final FileChannel canal;
+    private final String idExecucao;
+    private final long tamanhoCabecalho;
+    private final Set<String> chaves = new HashSet<>(); // Republicadas e talvez ainda sem ack
+
+    private CheckpointReprocessamento(Path arquivo) throws IOException {
+        this.arquivo = arquivo;
+        if (Files.exists(arquivo)) {
+            List<String> linhas = Files.readAllLines(arquivo, StandardCharsets.UTF_8);
+            this.idExecucao = linhas.get(0);
+            chaves.addAll(linhas.subList(1, linhas.size()));
+            this.canal = FileChannel.open(arquivo, StandardOpenOption.WRITE);
+        } else {
+            this.idExecucao = UUID.randomUUID().toString();
+            this.canal = FileChannel.open(arquivo, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            escreve(idExecucao + "\n", 0);
+        }
+        this.tamanhoCabecalho = (idExecucao + "\n").getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    static CheckpointReprocessamento abre(Path diretorio, String nome) throws IOException {
+        Files.createDirectories(diretorio);
+        return new CheckpointReprocessamento(diretorio.resolve(nome.replaceAll("[^A-Za-z0-9_-]", "_") + ".checkpoint"));
+    }
+
+    String idExecucao() {
+        return idExecucao;
+    }
+
+    boolean contem(String chave) {
+        return chaves.contains(chave);
+    }
+
+    /**
+     * Lote republicado e confirmado, ack ainda não saiu.
+     */
+    void registra(List<String> novas) throws IOException {
+        escreve(linhas(novas), canal.size());
+        chaves.addAll(novas);
+    }
+
+    /**
+     * Ack feito: essas chaves (as do lote e as da retomada que apareceram nele) saíram da DLQ. Fica só o resto.
+     */
+    void confirma(Collection<String> removidas) throws IOException {
+        if (removidas.isEmpty()) {
+            return;
+        }
+        chaves.removeAll(removidas);
+        // Cair aqui no meio só perde chaves da retomada: no pior caso, republica de novo (pelo menos uma vez)
+        canal.truncate(tamanhoCabecalho);
+        escreve(linhas(chaves), tamanhoCabecalho);
+    }
+
+    /**
+     * Reprocessamento concluído: a próxima execução com esse nome começa do zero.
+     */
+    void apaga() throws IOException {
+        close();
+        Files.deleteIfExists(arquivo);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (canal.isOpen()) {
+            canal.close();
+        }
+    }
+
+    private static String linhas(Collection<String> chaves) {
+        StringBuilder linhas = new StringBuilder();
+        for (String chave : chaves) {
+            linhas.append(chave).append('\n');
+        }
+        return linhas.toString();
+    }
+
+    private void escreve(String conteudo, long posicao) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(conteudo.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            posicao += canal.write(buffer, posicao);
+        }
+        canal.force(false);
+    }
+
+}
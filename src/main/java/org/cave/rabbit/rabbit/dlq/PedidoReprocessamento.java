@@ -0,0 +1,64 @@
+package org.cave.rabbit.rabbit.dlq;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Data;
+
+/**
+ * O que o operador pede ao disparar um reprocessamento da DLQ.
+ */
+@Data
+public class PedidoReprocessamento {
+
+    /**
+     * Identifica o reprocessamento e o arquivo de checkpoint. Repetir o nome de um reprocessamento interrompido retoma
+     * de onde ele parou.
+     */
+    private String nome = "padrao";
+
+    /**
+     * Máximo de mensagens lidas da DLQ nesta execução.
+     */
+    private long limite = 100_000;
+
+    private double mensagensPorSegundo = 500;
+
+    private int tamanhoLote = 100;
+
+    /**
+     * Só reprocessa mensagens com TODOS esses headers com esses valores.
+     */
+    private Map<String, String> headers = new HashMap<>();
+
+    /**
+     * Só reprocessa mensagens cujo corpo (UTF-8) contenha esse texto.
+     */
+    private String corpoContem;
+
+    /**
+     * Só conta quantas mensagens casam com o filtro. Nada é republicado nem removido da DLQ.
+     */
+    private boolean dryRun;
+
+    /**
+     * @throws IllegalArgumentException com o motivo, se algum campo não faz sentido
+     */
+    public void valida() {
+        if (nome == null || nome.trim().isEmpty()) {
+            throw new IllegalArgumentException("nome é obrigatório");
+        }
+        if (limite <= 0) {
+            throw new IllegalArgumentException("limite deve ser positivo");
+        }
+        if (!(mensagensPorSegundo > 0) || Double.isInfinite(mensagensPorSegundo)) {
+            throw new IllegalArgumentException("mensagensPorSegundo deve ser positivo");
+        }
+        if (tamanhoLote <= 0) {
+            throw new IllegalArgumentException("tamanhoLote deve ser positivo"); // 0 faria o reprocessamento girar sem ler nada
+        }
+        if (headers == null) {
+            throw new IllegalArgumentException("headers não pode ser null");
+        }
+    }
+
+}
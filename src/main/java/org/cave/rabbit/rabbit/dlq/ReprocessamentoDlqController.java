@@ -0,0 +1,49 @@
+package org.cave.rabbit.rabbit.dlq;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Endpoints administrativos do reprocessamento da DLQ. Ver {@link ReprocessamentoDlqService}.
+ */
+@RestController
+@RequestMapping("/admin/dlq/reprocessamento")
+public class ReprocessamentoDlqController {
+
+    @Autowired
+    private ReprocessamentoDlqService service;
+
+    /**
+     * Dispara (ou retoma, se o nome já tiver checkpoint) um reprocessamento. Responde na hora, o trabalho segue em background.
+     * Pedido inválido (ver {@link PedidoReprocessamento#valida()}): 400.
+     */
+    @PostMapping
+    public ResponseEntity<StatusReprocessamento> inicia(@RequestBody PedidoReprocessamento pedido) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(service.inicia(pedido));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(service.status());
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<StatusReprocessamento> status() {
+        StatusReprocessamento status = service.status();
+        return status == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(status);
+    }
+
+    @DeleteMapping
+    public ResponseEntity<Void> cancela() {
+        return service.cancela() ? ResponseEntity.accepted().build() : ResponseEntity.notFound().build();
+    }
+
+}
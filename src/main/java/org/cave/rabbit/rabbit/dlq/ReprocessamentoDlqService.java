@@ -0,0 +1,338 @@
+package org.cave.rabbit.rabbit.dlq;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.ReturnListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.cave.rabbit.rabbit.concorrencia.LimitadorDeTaxa;
+import org.cave.rabbit.rabbit.config.ReprocessamentoDlqProperties;
+import org.cave.rabbit.rabbit.config.constants.RabbitQueueConstants;
+import org.cave.rabbit.rabbit.mensagem.CargaJson;
+import org.cave.rabbit.rabbit.retentativa.PoliticaDeRetentativa;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Reprocessamento da DLQ: devolve as mensagens mortas para a {@link RabbitQueueConstants#PROCESSO_EX}.
+ * <p>
+ * - Lê a DLQ em lotes (basicGet sem autoAck), então só "tamanhoLote" mensagens ficam na memória por vez.
+ * - Respeita um limite de mensagens por segundo ({@link LimitadorDeTaxa}) pra não atropelar os consumidores.
+ * - Filtra por headers e/ou trecho do corpo. O que não casa vai pro fim da DLQ (republicado lá, com confirmação, e ack
+ * no original), lote a lote. A republicação vai com mandatory: se a exchange não rotear, a mensagem fica na DLQ. Segurar sem ack até o fim não dá: o basicGet não respeita prefetch, e um filtro estreito
+ * numa DLQ grande deixaria milhares de entregas penduradas no channel. Nack com requeue também não: a mensagem volta
+ * pra mesma posição e o próximo basicGet pega ela de novo. Por isso uma execução lê no máximo o que havia na DLQ quando
+ * começou (uma volta), e o que não casou fica no fim, na mesma ordem relativa.
+ * - Dry-run: só conta o que casaria, tudo volta pra DLQ. Aqui não dá pra mover nada, então as lidas ficam sem ack até o
+ * fim, no máximo "maximoSemAck" ({@link ReprocessamentoDlqProperties}). Passou disso, a contagem é parcial.
+ * - Checkpoint em disco ({@link CheckpointReprocessamento}) pra retomar um reprocessamento interrompido sem republicar
+ * o que já foi. O checkpoint só guarda o lote que ainda não teve ack.
+ * <p>
+ * Cada mensagem republicada leva o header {@link #X_REPROCESSAMENTO} com o id da execução e volta com as tentativas
+ * zeradas. Se ela falhar de novo e cair na DLQ enquanto o reprocessamento ainda roda, o header mostra que ela já passou
+ * por aqui, e ela fica na DLQ em vez de entrar num loop.
+ * <p>
+ * Um reprocessamento por vez.
+ */
+@Slf4j
+@Service
+public class ReprocessamentoDlqService {
+
+    public static final String X_REPROCESSAMENTO = "x-reprocessamento";
+    private static final String X_DEATH = "x-death";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final ReprocessamentoDlqProperties properties;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "reprocessamento-dlq");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile StatusReprocessamento atual;
+    private volatile boolean cancelado;
+
+    public ReprocessamentoDlqService(RabbitTemplate rabbitTemplate, ReprocessamentoDlqProperties properties) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.properties = properties;
+    }
+
+    /**
+     * @throws IllegalArgumentException se o pedido for inválido (ver {@link PedidoReprocessamento#valida()})
+     * @throws IllegalStateException    se já houver um reprocessamento rodando
+     */
+    public synchronized StatusReprocessamento inicia(PedidoReprocessamento pedido) {
+        pedido.valida();
+        if (atual != null && atual.getEstado() == StatusReprocessamento.Estado.EXECUTANDO) {
+            throw new IllegalStateException("Reprocessamento '" + atual.getNome() + "' ainda em execução");
+        }
+        StatusReprocessamento status = new StatusReprocessamento(pedido.getNome(), pedido.isDryRun());
+        atual = status;
+        cancelado = false;
+        executor.execute(() -> executa(pedido, status));
+        return status;
+    }
+
+    public StatusReprocessamento status() {
+        return atual;
+    }
+
+    /**
+     * Pede para parar depois do lote atual. O checkpoint fica, dá pra retomar com o mesmo nome.
+     *
+     * @return false se não havia nada rodando
+     */
+    public boolean cancela() {
+        StatusReprocessamento status = atual;
+        if (status == null || status.getEstado() != StatusReprocessamento.Estado.EXECUTANDO) {
+            return false;
+        }
+        cancelado = true;
+        return true;
+    }
+
+    private void executa(PedidoReprocessamento pedido, StatusReprocessamento status) {
+        try {
+            if (pedido.isDryRun()) {
+                rabbitTemplate.execute(channel -> {
+                    conta(channel, pedido, status);
+                    return null;
+                });
+            } else {
+                try (CheckpointReprocessamento checkpoint = CheckpointReprocessamento.abre(properties.getDiretorioCheckpoint(), pedido.getNome())) {
+                    boolean completo = rabbitTemplate.execute(channel -> reprocessa(channel, pedido, status, checkpoint));
+                    if (completo) {
+                        checkpoint.apaga();
+                    }
+                }
+            }
+            status.setEstado(cancelado ? StatusReprocessamento.Estado.CANCELADO : StatusReprocessamento.Estado.CONCLUIDO);
+        } catch (Exception e) {
+            log.error("Reprocessamento '{}' falhou", pedido.getNome(), e);
+            status.setErro(e.getMessage());
+            status.setEstado(StatusReprocessamento.Estado.FALHOU);
+        } finally {
+            status.setFim(Instant.now());
+            log.info("Reprocessamento '{}' terminou: {}", pedido.getNome(), status);
+        }
+    }
+
+    private void conta(Channel channel, PedidoReprocessamento pedido, StatusReprocessamento status) throws IOException {
+        long maximo = Math.min(pedido.getLimite(), properties.getMaximoSemAck());
+        long ultimaTag = -1;
+        while (!cancelado && status.getLidas() < pedido.getLimite()) {
+            if (status.getLidas() >= maximo) {
+                status.setParcial(true); // Ainda tem DLQ, mas não seguramos mais entregas sem ack
+                break;
+            }
+            GetResponse resposta = channel.basicGet(RabbitQueueConstants.PROCESSO_DLQ, false);
+            if (resposta == null) {
+                break;
+            }
+            ultimaTag = resposta.getEnvelope().getDeliveryTag();
+            status.setLidas(status.getLidas() + 1);
+            if (casa(resposta, pedido)) {
+                status.setReprocessadas(status.getReprocessadas() + 1);
+            } else {
+                status.setFiltradas(status.getFiltradas() + 1);
+            }
+        }
+        if (ultimaTag >= 0) {
+            channel.basicNack(ultimaTag, true, true); // Devolve tudo que foi lido, de uma vez
+        }
+    }
+
+    /**
+     * @return true se a DLQ foi percorrida até o fim (nada de limite nem cancelamento no caminho)
+     */
+    private boolean reprocessa(Channel channel, PedidoReprocessamento pedido, StatusReprocessamento status,
+                               CheckpointReprocessamento checkpoint) throws IOException, InterruptedException, TimeoutException {
+        LimitadorDeTaxa limitador = new LimitadorDeTaxa(pedido.getMensagensPorSegundo());
+        String marca = pedido.getNome() + ":" + checkpoint.idExecucao();
+        long volta = channel.queueDeclarePassive(RabbitQueueConstants.PROCESSO_DLQ).getMessageCount(); // O que chegar depois (inclusive o que a gente mover pro fim) fica pra próxima
+        long maximo = Math.min(pedido.getLimite(), volta);
+        boolean fimDaFila = volta == 0;
+        Set<String> naoRoteadas = ConcurrentHashMap.newKeySet(); // messageId das devolvidas (mandatory). Chegam na thread da conexão, antes do ack
+        ReturnListener devolucoes = (codigo, motivo, exchange, routingKey, props, corpo) -> naoRoteadas.add(props.getMessageId());
+        channel.addReturnListener(devolucoes);
+        try {
+            while (!fimDaFila && !cancelado && status.getLidas() < maximo) {
+                List<GetResponse> lote = new ArrayList<>(pedido.getTamanhoLote());
+                List<String> chaves = new ArrayList<>(pedido.getTamanhoLote());
+                List<GetResponse> devolvidas = new ArrayList<>();
+                List<String> removidas = new ArrayList<>(); // Saem do checkpoint depois dos acks
+
+                for (int lidasNoLote = 0; lidasNoLote < pedido.getTamanhoLote() && status.getLidas() < maximo; lidasNoLote++) {
+                    GetResponse resposta = channel.basicGet(RabbitQueueConstants.PROCESSO_DLQ, false);
+                    if (resposta == null) {
+                        fimDaFila = true;
+                        break;
+                    }
+                    status.setLidas(status.getLidas() + 1);
+                    String chave = chave(resposta);
+
+                    if (marca.equals(header(resposta, X_REPROCESSAMENTO))) {
+                        devolvidas.add(resposta); // Já reprocessada por esta execução e morreu de novo. Fica na DLQ.
+                        status.setRetidas(status.getRetidas() + 1);
+                    } else if (checkpoint.contem(chave)) {
+                        channel.basicAck(resposta.getEnvelope().getDeliveryTag(), false); // Republicada antes da interrupção, só faltou o ack
+                        status.setDuplicadas(status.getDuplicadas() + 1);
+                        removidas.add(chave);
+                    } else if (!casa(resposta, pedido)) {
+                        devolvidas.add(resposta);
+                        status.setFiltradas(status.getFiltradas() + 1);
+                    } else {
+                        lote.add(resposta);
+                        chaves.add(chave);
+                    }
+                }
+                if (status.getLidas() >= volta) {
+                    fimDaFila = true;
+                }
+
+                if (!lote.isEmpty()) {
+                    limitador.adquire(lote.size());
+                }
+                for (GetResponse resposta : lote) {
+                    channel.basicPublish(RabbitQueueConstants.PROCESSO_EX, "", true, propriedadesReprocessadas(resposta, marca), resposta.getBody());
+                }
+                for (GetResponse resposta : devolvidas) {
+                    channel.basicPublish("", RabbitQueueConstants.PROCESSO_DLQ, resposta.getProps(), resposta.getBody()); // Fim da DLQ, como estava
+                }
+                if (lote.isEmpty() && devolvidas.isEmpty()) {
+                    checkpoint.confirma(removidas);
+                    continue;
+                }
+                channel.waitForConfirmsOrDie(properties.getTimeoutConfirmacaoMs());
+                if (!naoRoteadas.isEmpty()) {
+                    devolveNaoRoteadas(channel, lote, chaves, naoRoteadas, status);
+                }
+                checkpoint.registra(chaves);
+                for (GetResponse resposta : lote) {
+                    channel.basicAck(resposta.getEnvelope().getDeliveryTag(), false);
+                }
+                for (GetResponse resposta : devolvidas) {
+                    channel.basicAck(resposta.getEnvelope().getDeliveryTag(), false);
+                }
+                removidas.addAll(chaves);
+                checkpoint.confirma(removidas);
+                status.setReprocessadas(status.getReprocessadas() + lote.size());
+            }
+        } finally {
+            channel.removeReturnListener(devolucoes); // Channel volta pro cache
+        }
+
+        return fimDaFila && !cancelado;
+    }
+
+    /**
+     * Ack do broker não quer dizer que chegou em alguma fila: sem binding na exchange, a mensagem volta (mandatory) e
+     * o ack vem do mesmo jeito. Essas vão pro fim da DLQ em vez de levar ack e sumir.
+     */
+    private void devolveNaoRoteadas(Channel channel, List<GetResponse> lote, List<String> chaves, Set<String> naoRoteadas,
+                                    StatusReprocessamento status) throws IOException, InterruptedException, TimeoutException {
+        List<GetResponse> voltam = new ArrayList<>();
+        for (int i = lote.size() - 1; i >= 0; i--) {
+            if (naoRoteadas.contains(chaves.get(i))) {
+                voltam.add(0, lote.remove(i));
+                chaves.remove(i);
+            }
+        }
+        naoRoteadas.clear();
+        log.warn("{} mensagens devolvidas pela {}: nenhuma fila ligada. Ficam na DLQ", voltam.size(), RabbitQueueConstants.PROCESSO_EX);
+        for (GetResponse resposta : voltam) {
+            channel.basicPublish("", RabbitQueueConstants.PROCESSO_DLQ, resposta.getProps(), resposta.getBody());
+        }
+        channel.waitForConfirmsOrDie(properties.getTimeoutConfirmacaoMs());
+        for (GetResponse resposta : voltam) {
+            channel.basicAck(resposta.getEnvelope().getDeliveryTag(), false);
+        }
+        status.setNaoRoteadas(status.getNaoRoteadas() + voltam.size());
+    }
+
+    private static boolean casa(GetResponse resposta, PedidoReprocessamento pedido) {
+        for (Map.Entry<String, String> filtro : pedido.getHeaders().entrySet()) {
+            if (!filtro.getValue().equals(header(resposta, filtro.getKey()))) {
+                return false;
+            }
+        }
+        if (pedido.getCorpoContem() == null) {
+            return true;
+        }
+        // Corpo comprimido ou em Smile/CBOR: o filtro é sobre o JSON equivalente
+        try {
+            CargaJson carga = CargaJson.de(resposta.getBody(), resposta.getProps().getContentType(), resposta.getProps().getContentEncoding());
+            return new String(carga.json(), StandardCharsets.UTF_8).contains(pedido.getCorpoContem());
+        } catch (UncheckedIOException e) {
+            return false; // Corpo ilegível não casa com filtro de corpo
+        }
+    }
+
+    private static String header(GetResponse resposta, String nome) {
+        Map<String, Object> headers = resposta.getProps().getHeaders();
+        Object valor = headers == null ? null : headers.get(nome);
+        return valor == null ? null : valor.toString(); // Strings chegam como LongString, o toString resolve
+    }
+
+    /**
+     * Volta com as tentativas zeradas, sem o histórico de mortes, e com a marca desta execução. Sem messageId, ganha a
+     * {@link #chave}: é por ele que a devolução (mandatory) é ligada à mensagem do lote.
+     */
+    private static AMQP.BasicProperties propriedadesReprocessadas(GetResponse resposta, String marca) {
+        Map<String, Object> headers = resposta.getProps().getHeaders() == null
+                ? new HashMap<>()
+                : new HashMap<>(resposta.getProps().getHeaders());
+        headers.remove(PoliticaDeRetentativa.X_TENTATIVAS);
+        headers.remove(PoliticaDeRetentativa.X_EXCEPTION_MESSAGE);
+        headers.remove(X_DEATH);
+        headers.put(X_REPROCESSAMENTO, marca);
+        return resposta.getProps().builder().headers(headers).messageId(chave(resposta)).build();
+    }
+
+    /**
+     * messageId quando tiver. Senão, SHA-256 do corpo + headers (ordenados, pra dar sempre o mesmo resultado).
+     */
+    static String chave(GetResponse resposta) {
+        if (resposta.getProps().getMessageId() != null) {
+            return resposta.getProps().getMessageId();
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(resposta.getBody());
+            if (resposta.getProps().getHeaders() != null) {
+                digest.update(new TreeMap<>(resposta.getProps().getHeaders()).toString().getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder hex = new StringBuilder("sha256:");
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @PreDestroy
+    void encerra() {
+        cancelado = true;
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.cave.rabbit.rabbit.dlq;
+
+import java.time.Instant;
+import lombok.Data;
+
+/**
+ * Progresso de um reprocessamento. Escrito pela thread do reprocessamento, lido pelo endpoint de status.
+ */
+@Data
+public class StatusReprocessamento {
+
+    public enum Estado {
+        EXECUTANDO,
+        CONCLUIDO,
+        CANCELADO,
+        FALHOU
+    }
+
+    private final String nome;
+    private final boolean dryRun;
+    private final Instant inicio = Instant.now();
+
+    private volatile Estado estado = Estado.EXECUTANDO;
+    private volatile Instant fim;
+    private volatile String erro;
+
+    /**
+     * Lidas da DLQ.
+     */
+    private volatile long lidas;
+
+    /**
+     * Casaram com o filtro. No dryRun é o resultado da contagem; fora dele, foram republicadas na exchange.
+     */
+    private volatile long reprocessadas;
+
+    /**
+     * Não casaram com o filtro e foram para o fim da DLQ (no dry-run, voltaram para a DLQ).
+     */
+    private volatile long filtradas;
+
+    /**
+     * Já tinham sido republicadas antes de uma interrupção (estavam no checkpoint). Só foram removidas da DLQ.
+     */
+    private volatile long duplicadas;
+
+    /**
+     * Foram reprocessadas por esta mesma execução, falharam de novo e voltaram para a DLQ. Ficam lá.
+     */
+    private volatile long retidas;
+
+    /**
+     * Casaram, mas a exchange não tinha fila ligada e o broker devolveu (mandatory). Voltaram para o fim da DLQ.
+     */
+    private volatile long naoRoteadas;
+
+    /**
+     * Só dry-run: a contagem parou no "maximoSemAck" antes do fim da DLQ (ou do limite).
+     */
+    private volatile boolean parcial;
+
+}
@@ -0,0 +1,87 @@
+package org.cave.rabbit.rabbit.idempotencia;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Conjunto de chaves (long) com validade, de tamanho fixo e sem lock.
+ * <p>
+ * Endereçamento aberto: cada chave só pode morar em {@link #SONDAGEM} posições seguidas a partir do seu hash. Na
+ * inserção, ocupa a primeira posição vazia ou vencida; se as {@link #SONDAGEM} estiverem com chaves válidas, despeja a
+ * que vence primeiro. Ou seja, nunca cresce e nunca precisa de varredura pra limpar vencidas.
+ * <p>
+ * Sem lock, a chave e a validade de uma posição são escritas separadamente. Quem lê no meio disso pode não achar uma
+ * chave que acabou de entrar (processa de novo, o que já aconteceria sem cache), nunca acha uma chave que não entrou.
+ */
+class CacheDeIdempotencia {
+
+    static final int SONDAGEM = 8;
+    private static final long VAZIO = 0;
+
+    private final AtomicLongArray chaves;
+    private final AtomicLongArray validades;
+    private final int mascara;
+
+    /**
+     * @param capacidade quantas chaves guardar. Arredondado pra cima numa potência de 2.
+     */
+    CacheDeIdempotencia(int capacidade) {
+        int tamanho = Integer.highestOneBit(Math.max(capacidade, SONDAGEM) - 1) << 1;
+        this.chaves = new AtomicLongArray(tamanho);
+        this.validades = new AtomicLongArray(tamanho);
+        this.mascara = tamanho - 1;
+    }
+
+    int capacidade() {
+        return mascara + 1;
+    }
+
+    boolean contem(long chave, long agora) {
+        chave = normaliza(chave);
+        int inicio = indice(chave);
+        for (int i = 0; i < SONDAGEM; i++) {
+            int posicao = (inicio + i) & mascara;
+            if (chaves.get(posicao) == chave) {
+                return validades.get(posicao) > agora;
+            }
+        }
+        return false;
+    }
+
+    void adiciona(long chave, long validaAte, long agora) {
+        chave = normaliza(chave);
+        int inicio = indice(chave);
+        int despejo = inicio;
+        long menorValidade = Long.MAX_VALUE;
+        for (int i = 0; i < SONDAGEM; i++) {
+            int posicao = (inicio + i) & mascara;
+            long atual = chaves.get(posicao);
+            if (atual == chave) {
+                validades.set(posicao, validaAte);
+                return;
+            }
+            long validade = validades.get(posicao);
+            if (atual == VAZIO || validade <= agora) {
+                if (chaves.compareAndSet(posicao, atual, chave)) {
+                    validades.set(posicao, validaAte);
+                    return;
+                }
+                continue; // Outra thread pegou essa posição, tenta a próxima
+            }
+            if (validade < menorValidade) {
+                menorValidade = validade;
+                despejo = posicao;
+            }
+        }
+        chaves.set(despejo, chave);
+        validades.set(despejo, validaAte);
+    }
+
+    private int indice(long chave) {
+        return (int) (chave ^ (chave >>> 32)) & mascara;
+    }
+
+    private static long normaliza(long chave) {
+        return chave == VAZIO ? 1 : chave; // Zero marca posição vazia
+    }
+
+}
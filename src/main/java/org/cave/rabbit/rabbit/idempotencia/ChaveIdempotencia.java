@@ -0,0 +1,50 @@
+package org.cave.rabbit.rabbit.idempotencia;
+
+import java.nio.charset.StandardCharsets;
+import net.jpountz.xxhash.XXHash64;
+import net.jpountz.xxhash.XXHashFactory;
+import org.cave.rabbit.rabbit.claimcheck.ClaimCheck;
+import org.springframework.amqp.core.Message;
+
+/**
+ * O que identifica "a mesma mensagem".
+ * <p>
+ * - MESSAGE_ID: o message_id AMQP. O {@link org.cave.rabbit.rabbit.publicacao.PublicadorConfirmado} sempre preenche, e
+ *   retentativa/reprocessamento preservam. Mensagem sem message_id cai no hash do corpo.
+ * - HASH_CORPO: hash dos bytes do corpo. Para publicadores que não mandam message_id, ou quando dois ids diferentes com
+ *   o mesmo conteúdo também devem ser tratados como duplicata. Em mensagem com claim-check, o hash é do id do blob
+ *   (cada publicação guarda um blob novo, então o mesmo conteúdo publicado duas vezes não é duplicata).
+ * <p>
+ * A chave é um hash de 64 bits (xxHash64), pra caber num long e o cache não guardar String nenhuma.
+ */
+public enum ChaveIdempotencia {
+
+    MESSAGE_ID {
+        @Override
+        public long de(Message message) {
+            String messageId = message.getMessageProperties().getMessageId();
+            if (messageId == null) {
+                return HASH_CORPO.de(message);
+            }
+            byte[] bytes = messageId.getBytes(StandardCharsets.UTF_8);
+            return XXHASH.hash(bytes, 0, bytes.length, SEMENTE_ID);
+        }
+    },
+    HASH_CORPO {
+        @Override
+        public long de(Message message) {
+            byte[] corpo = ClaimCheck.ehReferencia(message)
+                    ? message.getMessageProperties().getHeaders().get(ClaimCheck.X_CLAIM_CHECK).toString().getBytes(StandardCharsets.UTF_8)
+                    : message.getBody(); // Referência tem corpo vazio: o id do blob faz o papel do corpo
+            return XXHASH.hash(corpo, 0, corpo.length, SEMENTE_CORPO);
+        }
+    };
+
+    // Sementes diferentes: um message_id nunca colide com um corpo que tenha os mesmos bytes
+    private static final long SEMENTE_ID = 0x1d;
+    private static final long SEMENTE_CORPO = 0xc0;
+    private static final XXHash64 XXHASH = XXHashFactory.fastestJavaInstance().hash64();
+
+    public abstract long de(Message message);
+
+}
@@ -0,0 +1,61 @@
+package org.cave.rabbit.rabbit.idempotencia;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import org.springframework.amqp.core.Message;
+
+/**
+ * Filtro de duplicatas na frente de um listener.
+ * <p>
+ * A mesma mensagem pode chegar mais de uma vez: redelivery depois de queda de channel/conexão (o ack não chegou no
+ * broker), ou publicador que reenviou depois de um timeout de confirmação. Quem já foi processada com sucesso fica
+ * registrada por "ttl"; se aparecer de novo nesse tempo, o listener só pula (e o container faz ack normalmente).
+ * <p>
+ * Só registramos DEPOIS de processar com sucesso. Mensagem que falhou e voltou pela retentativa (mesmo message_id)
+ * não está registrada, então é processada de novo, como deve.
+ * <p>
+ * Consulta e registro são em memória ({@link CacheDeIdempotencia}, sem lock). O registro também vai pro
+ * {@link LogDeIdempotencia}, que é recarregado no próximo start.
+ */
+public class Idempotencia implements Closeable {
+
+    private final ChaveIdempotencia chave;
+    private final long ttlMs;
+    private final CacheDeIdempotencia cache;
+    private final LogDeIdempotencia log;
+
+    /**
+     * @param chave      message_id ou hash do corpo
+     * @param ttl        por quanto tempo uma mensagem processada conta como duplicata
+     * @param capacidade máximo de chaves lembradas (acima disso, as que vencem primeiro saem antes do ttl)
+     * @param arquivo    log em disco
+     */
+    public Idempotencia(ChaveIdempotencia chave, Duration ttl, int capacidade, Path arquivo) throws IOException {
+        this.chave = chave;
+        this.ttlMs = ttl.toMillis();
+        this.cache = new CacheDeIdempotencia(capacidade);
+        this.log = new LogDeIdempotencia(arquivo, cache.capacidade());
+
+        long agora = System.currentTimeMillis();
+        log.carrega(agora, (recuperada, validaAte) -> cache.adiciona(recuperada, validaAte, agora));
+    }
+
+    public boolean duplicada(Message message) {
+        return cache.contem(chave.de(message), System.currentTimeMillis());
+    }
+
+    public void registra(Message message) {
+        long agora = System.currentTimeMillis();
+        long processada = chave.de(message);
+        cache.adiciona(processada, agora + ttlMs, agora);
+        log.registra(processada, agora + ttlMs);
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+}
@@ -0,0 +1,115 @@
+package org.cave.rabbit.rabbit.idempotencia;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cópia em disco do {@link CacheDeIdempotencia}: arquivo mapeado em memória, usado como anel de registros
+ * (chave, validade) de 16 bytes. Quando dá a volta, sobrescreve os mais antigos, então o arquivo tem tamanho fixo.
+ * <p>
+ * Gravar é escrever na memória mapeada (sem syscall). O sistema operacional leva as páginas pro disco sozinho, então
+ * o conteúdo sobrevive a restart e a queda do processo. Queda da máquina pode perder as últimas gravações, que só
+ * vão pro disco com certeza no {@link #close()}.
+ * <p>
+ * Cabeçalho: capacidade (long) e próxima posição do anel (long). Arquivo com outra capacidade é descartado.
+ */
+@Slf4j
+class LogDeIdempotencia implements Closeable {
+
+    private static final int CABECALHO = 16;
+    private static final int REGISTRO = 16;
+
+    private final FileChannel canal;
+    private final MappedByteBuffer mapa;
+    private final int capacidade;
+    private final AtomicLong proxima;
+    private final AtomicLong gravada; // Maior posição já publicada no cabeçalho
+
+    LogDeIdempotencia(Path arquivo, int capacidade) throws IOException {
+        if (arquivo.getParent() != null) {
+            Files.createDirectories(arquivo.getParent());
+        }
+        this.capacidade = capacidade;
+        this.canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long tamanho = CABECALHO + (long) capacidade * REGISTRO;
+        if (canal.size() != 0 && canal.size() != tamanho) {
+            log.warn("Log de idempotência {} tem outra capacidade, começando vazio", arquivo);
+            canal.truncate(0);
+        }
+        this.mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanho);
+        mapa.putLong(0, capacidade);
+        this.proxima = new AtomicLong(mapa.getLong(8));
+        this.gravada = new AtomicLong(proxima.get());
+    }
+
+    /**
+     * Validade primeiro, chave depois: registro pela metade fica com a chave antiga (ou vazia), nunca com uma chave
+     * nova e validade de outra.
+     */
+    void registra(long chave, long validaAte) {
+        long posicao = proxima.getAndIncrement();
+        int deslocamento = CABECALHO + (int) (posicao % capacidade) * REGISTRO;
+        mapa.putLong(deslocamento + 8, validaAte);
+        mapa.putLong(deslocamento, chave);
+        avancaCabecalho(posicao + 1);
+    }
+
+    /**
+     * Várias threads de consumidor gravam ao mesmo tempo. Escrever "posicao + 1" direto deixaria a última a escrever
+     * ganhar, e o cabeçalho podia voltar: depois do restart o anel sobrescreveria os registros mais novos primeiro.
+     * Aqui só escreve quem avançou o máximo (CAS) e, depois de escrever, confere se alguém passou na frente enquanto
+     * isso. Se passou, escreve o valor dele de novo: a última escrita é sempre a do maior.
+     */
+    private void avancaCabecalho(long nova) {
+        long atual = gravada.get();
+        while (atual < nova) {
+            if (gravada.compareAndSet(atual, nova)) {
+                long escrita = nova;
+                mapa.putLong(8, escrita);
+                for (long maior = gravada.get(); maior > escrita; maior = gravada.get()) {
+                    escrita = maior;
+                    mapa.putLong(8, escrita);
+                }
+                return;
+            }
+            atual = gravada.get();
+        }
+    }
+
+    /**
+     * @param destino recebe cada registro ainda válido
+     */
+    void carrega(long agora, Destino destino) {
+        for (int i = 0; i < capacidade; i++) {
+            int deslocamento = CABECALHO + i * REGISTRO;
+            long chave = mapa.getLong(deslocamento);
+            long validaAte = mapa.getLong(deslocamento + 8);
+            if (chave != 0 && validaAte > agora) {
+                destino.recebe(chave, validaAte);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (canal.isOpen()) {
+            mapa.force();
+            canal.close();
+        }
+    }
+
+    interface Destino {
+
+        void recebe(long chave, long validaAte);
+
+    }
+
+}
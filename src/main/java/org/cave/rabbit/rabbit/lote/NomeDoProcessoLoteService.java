@@ -0,0 +1,138 @@
+package org.cave.rabbit.rabbit.lote;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import org.cave.rabbit.rabbit.config.constants.RabbitQueueConstants;
+import org.cave.rabbit.rabbit.mensagem.CargaJson;
+import org.cave.rabbit.rabbit.particionamento.RoteadorDeParticao;
+import org.cave.rabbit.rabbit.publicacao.PublicadorConfirmado;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Ingestão em lote.
+ * <p>
+ * Em vez de um POST (e um convertAndSend) por mensagem, o cliente manda tudo num corpo só. Aceitamos dois formatos:
+ * <p>
+ * - Um array JSON: [{...}, {...}, ...]
+ * - NDJSON: um objeto por linha.
+ * <p>
+ * O corpo é lido em streaming com o JsonParser do Jackson. Só um elemento por vez fica em memória, então um lote de
+ * 100 mil mensagens não vira uma lista gigante no heap. Cada elemento é copiado token a token (copyCurrentStructure)
+ * para os bytes da mensagem, sem virar Map no meio do caminho.
+ * <p>
+ * Todos os elementos são postados dentro de um único {@link RabbitTemplate#invoke}, ou seja, no MESMO channel.
+ * Sem isso, cada convertAndSend faria checkout/checkin de um channel no cache do CachingConnectionFactory.
+ * <p>
+ * Cada elemento só conta como aceito quando o broker confirmar (ack). A leitura segue enquanto as confirmações
+ * chegam; se a janela do {@link PublicadorConfirmado} encher, a leitura espera. O resultado só é completado quando
+ * o último elemento for confirmado ou recusado.
+ */
+@Service
+public class NomeDoProcessoLoteService {
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PublicadorConfirmado publicador;
+
+    @Autowired
+    private RoteadorDeParticao roteador;
+
+    public CompletableFuture<ResultadoLote> postaLote(InputStream corpo) {
+        ResultadoLote resultado = new ResultadoLote();
+        AtomicLong emVoo = new AtomicLong(1); // Esse 1 representa a própria leitura, só sai quando o corpo terminar
+        CompletableFuture<ResultadoLote> fim = new CompletableFuture<>();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(corpo)) {
+            rabbitTemplate.invoke(operations -> {
+                postaElementos(parser, operations, resultado, emVoo, fim);
+                return null; // O callback do invoke não deixa lançar checked exception, por isso o UncheckedIOException
+            });
+        } catch (JsonProcessingException e) {
+            resultado.setErro("JSON inválido: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            resultado.setErro("Falha ao ler o corpo: " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            resultado.setErro(e.getCause() instanceof JsonProcessingException
+                    ? "JSON inválido: " + ((JsonProcessingException) e.getCause()).getOriginalMessage()
+                    : "Falha ao ler o corpo: " + e.getCause().getMessage());
+        }
+
+        concluiUm(emVoo, fim, resultado);
+        return fim;
+    }
+
+    /**
+     * Se o primeiro token for '[' andamos pelos elementos do array. Caso contrário tratamos como NDJSON, que para o
+     * parser do Jackson nada mais é do que vários valores raiz separados por espaço/quebra de linha.
+     */
+    private void postaElementos(JsonParser parser, RabbitOperations operations, ResultadoLote resultado,
+                                AtomicLong emVoo, CompletableFuture<ResultadoLote> fim) {
+        try {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return;
+            }
+
+            JsonToken fimDoArray = null;
+            if (token == JsonToken.START_ARRAY) {
+                fimDoArray = JsonToken.END_ARRAY;
+                token = parser.nextToken();
+            }
+
+            while (token != null && token != fimDoArray) {
+                postaElemento(parser, token, operations, resultado, emVoo, fim);
+                token = parser.nextToken();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void postaElemento(JsonParser parser, JsonToken token, RabbitOperations operations, ResultadoLote resultado,
+                               AtomicLong emVoo, CompletableFuture<ResultadoLote> fim) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren(); // Não é um objeto, pula inteiro (se for array/objeto aninhado) e segue o baile
+            resultado.rejeita();
+            return;
+        }
+
+        ByteArrayBuilder bytes = new ByteArrayBuilder();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(bytes)) {
+            generator.copyCurrentStructure(parser);
+        }
+        emVoo.incrementAndGet();
+        publicador.publicaAguardandoJanela(operations, RabbitQueueConstants.PROCESSO_EX, null, roteador.mensagem(new CargaJson(bytes.toByteArray())))
+                .whenComplete((ok, erro) -> {
+                    if (erro == null) {
+                        resultado.aceita();
+                    } else {
+                        resultado.rejeita();
+                    }
+                    concluiUm(emVoo, fim, resultado);
+                });
+    }
+
+    private static void concluiUm(AtomicLong emVoo, CompletableFuture<ResultadoLote> fim, ResultadoLote resultado) {
+        if (emVoo.decrementAndGet() == 0) {
+            fim.complete(resultado);
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+package org.cave.rabbit.rabbit.lote;
+
+import lombok.Data;
+
+/**
+ * Resumo devolvido pelo endpoint de ingestão em lote.
+ * <p>
+ * Cada elemento do corpo conta como aceito (o broker confirmou) ou rejeitado (não era um objeto JSON, levou nack,
+ * foi devolvido ou não foi confirmado a tempo).
+ * <p>
+ * Os contadores são atualizados pelas threads de confirmação do broker, por isso os métodos sincronizados.
+ * <p>
+ * Se o corpo estiver quebrado no meio do caminho, paramos a leitura ali e preenchemos o erro. O que já foi
+ * postado até esse ponto continua postado, por isso os contadores vão junto na resposta.
+ */
+@Data
+public class ResultadoLote {
+
+    private long aceitos;
+    private long rejeitados;
+    private String erro;
+
+    synchronized void aceita() {
+        aceitos++;
+    }
+
+    synchronized void rejeita() {
+        rejeitados++;
+    }
+
+}
@@ -0,0 +1,118 @@
+package org.cave.rabbit.rabbit.mensagem;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * Visão preguiçosa do corpo de uma mensagem no modelo de dados do JSON (JSON, Smile ou CBOR, ver {@link FormatoCarga}).
+ * <p>
+ * Nada é convertido na criação além de descomprimir, se o content_encoding pedir ({@link Compressao}). Quem só precisa
+ * repassar os bytes usa {@link #bytes()}/{@link #buffer()} sem custo. Quem precisa de um campo usa {@link #campo(String)},
+ * que percorre o documento em streaming até achar o campo no primeiro nível e monta só o valor dele. O resto do
+ * documento nunca vira objeto.
+ */
+public class CargaJson {
+
+    private final byte[] corpo;
+    private final FormatoCarga formato;
+
+    public CargaJson(byte[] corpo) {
+        this(corpo, FormatoCarga.JSON);
+    }
+
+    public CargaJson(byte[] corpo, FormatoCarga formato) {
+        this.corpo = corpo;
+        this.formato = formato;
+    }
+
+    public static CargaJson de(Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        return de(message.getBody(), properties.getContentType(), properties.getContentEncoding());
+    }
+
+    /**
+     * Content-type desconhecido é tratado como JSON (mensagens antigas, publicadas antes dos formatos binários).
+     */
+    public static CargaJson de(byte[] corpo, String contentType, String contentEncoding) {
+        Compressao compressao = Compressao.porContentEncoding(contentEncoding);
+        FormatoCarga formato = FormatoCarga.porContentType(contentType);
+        return new CargaJson(compressao == null ? corpo : compressao.descomprime(corpo), formato == null ? FormatoCarga.JSON : formato);
+    }
+
+    public FormatoCarga formato() {
+        return formato;
+    }
+
+    /**
+     * @return os bytes (já descomprimidos) no formato original, sem cópia. Não altere.
+     */
+    public byte[] bytes() {
+        return corpo;
+    }
+
+    /**
+     * @return ByteBuffer somente leitura por cima de {@link #bytes()} (sem cópia)
+     */
+    public ByteBuffer buffer() {
+        return ByteBuffer.wrap(corpo).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return o documento como JSON texto. Sem custo se já for JSON; transcodifica se for Smile/CBOR.
+     */
+    public byte[] json() {
+        return FormatoCarga.JSON.transcodifica(corpo, formato);
+    }
+
+    /**
+     * @return mensagem AMQP com esses bytes como corpo e o content-type do formato
+     */
+    public Message mensagem() {
+        return MessageBuilder.withBody(corpo)
+                .setContentType(formato.contentType())
+                .build();
+    }
+
+    public int tamanho() {
+        return corpo.length;
+    }
+
+    /**
+     * @param nome campo no primeiro nível do objeto
+     * @return valor do campo, ou null se não existir
+     */
+    public JsonNode campo(String nome) {
+        try (JsonParser parser = formato.factory().createParser(corpo)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String atual = parser.getCurrentName();
+                parser.nextToken();
+                if (nome.equals(atual)) {
+                    return formato.objectMapper().readTree(parser);
+                }
+                parser.skipChildren(); // Campo que não interessa: pula sem montar nada
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return valor textual do campo (números/booleanos viram texto), ou null se não existir ou não for valor simples
+     */
+    public String texto(String nome) {
+        JsonNode valor = campo(nome);
+        return valor == null || valor.isContainerNode() || valor.isNull() ? null : valor.asText();
+    }
+
+}
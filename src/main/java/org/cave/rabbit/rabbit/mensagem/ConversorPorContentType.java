@@ -0,0 +1,121 @@
+package org.cave.rabbit.rabbit.mensagem;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.core.MethodParameter;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.SmartMessageConverter;
+import org.springframework.messaging.support.MessageBuilder;
+
+/**
+ * MessageConverter que escolhe o decoder pelo content_type (e descomprime pelo content_encoding).
+ * <p>
+ * - Objetos (Map, POJO) são escritos no formato padrão ({@link FormatoCarga}).
+ * - byte[], String e o resto caem no SimpleMessageConverter, como antes.
+ * - Na leitura, JSON/Smile/CBOR viram Map/List/valor; qualquer outro content_type vai pro SimpleMessageConverter.
+ * <p>
+ * Serve dos dois lados: no RabbitTemplate (MessageConverter do AMQP) e nos métodos @RabbitListener que pedem POJO/Map
+ * (SmartMessageConverter do spring-messaging, plugado no handler method factory do {@link org.cave.rabbit.rabbit.config.RabbitConfig}).
+ * Do lado do listener o corpo chega como byte[] e os headers content_type/content_encoding vêm junto; o POJO é lido
+ * direto no formato de origem, sem passar por JSON. Sem content_type é JSON, como no MappingJackson2MessageConverter.
+ */
+public class ConversorPorContentType implements MessageConverter, SmartMessageConverter {
+
+    private final FormatoCarga padrao;
+    private final SimpleMessageConverter simples = new SimpleMessageConverter();
+
+    public ConversorPorContentType(FormatoCarga padrao) {
+        this.padrao = padrao;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        if (object instanceof byte[] || object instanceof String) {
+            return simples.toMessage(object, messageProperties);
+        }
+        try {
+            messageProperties.setContentType(padrao.contentType());
+            return new Message(padrao.objectMapper().writeValueAsBytes(object), messageProperties);
+        } catch (IOException e) {
+            throw new MessageConversionException("Falha serializando " + object.getClass().getName() + " como " + padrao, e);
+        }
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        if (FormatoCarga.porContentType(message.getMessageProperties().getContentType()) == null) {
+            return simples.fromMessage(message);
+        }
+        try {
+            CargaJson carga = CargaJson.de(message);
+            return carga.formato().objectMapper().readValue(carga.bytes(), Object.class);
+        } catch (IOException | UncheckedIOException e) {
+            throw new MessageConversionException("Falha lendo corpo " + message.getMessageProperties().getContentType(), e);
+        }
+    }
+
+    @Override
+    public Object fromMessage(org.springframework.messaging.Message<?> message, Class<?> targetClass) {
+        return fromMessage(message, targetClass, null);
+    }
+
+    /**
+     * Lado do listener. Genéricos (List&lt;Pedido&gt;) vêm do parâmetro do método, no conversionHint.
+     *
+     * @return o objeto, ou null se o payload não for bytes/texto (aí o Spring tenta outro caminho ou falha)
+     */
+    @Override
+    public Object fromMessage(org.springframework.messaging.Message<?> message, Class<?> targetClass, Object conversionHint) {
+        Object payload = message.getPayload();
+        byte[] corpo;
+        if (payload instanceof byte[]) {
+            corpo = (byte[]) payload;
+        } else if (payload instanceof String) {
+            corpo = ((String) payload).getBytes(StandardCharsets.UTF_8);
+        } else {
+            return null;
+        }
+        Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        Object contentEncoding = message.getHeaders().get(AmqpHeaders.CONTENT_ENCODING);
+        try {
+            CargaJson carga = CargaJson.de(corpo, contentType == null ? null : contentType.toString(),
+                    contentEncoding == null ? null : contentEncoding.toString());
+            ObjectMapper objectMapper = carga.formato().objectMapper();
+            Type tipo = conversionHint instanceof MethodParameter ? ((MethodParameter) conversionHint).getNestedGenericParameterType() : targetClass;
+            return objectMapper.readValue(carga.bytes(), objectMapper.constructType(tipo));
+        } catch (IOException | UncheckedIOException e) {
+            throw new org.springframework.messaging.converter.MessageConversionException(message, "Falha lendo corpo " + contentType + " como " + targetClass.getName(), e);
+        }
+    }
+
+    @Override
+    public org.springframework.messaging.Message<?> toMessage(Object payload, MessageHeaders headers) {
+        return toMessage(payload, headers, null);
+    }
+
+    /**
+     * Lado do listener, resposta de @SendTo: no formato padrão, como no RabbitTemplate.
+     */
+    @Override
+    public org.springframework.messaging.Message<?> toMessage(Object payload, MessageHeaders headers, Object conversionHint) {
+        try {
+            MessageBuilder<byte[]> builder = MessageBuilder.withPayload(padrao.objectMapper().writeValueAsBytes(payload));
+            if (headers != null) {
+                builder.copyHeaders(headers);
+            }
+            return builder.setHeader(MessageHeaders.CONTENT_TYPE, padrao.contentType()).build();
+        } catch (IOException e) {
+            throw new MessageConversionException("Falha serializando " + payload.getClass().getName() + " como " + padrao, e);
+        }
+    }
+
+}
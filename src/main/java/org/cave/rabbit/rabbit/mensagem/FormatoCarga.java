@@ -0,0 +1,94 @@
+package org.cave.rabbit.rabbit.mensagem;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * Formatos de corpo suportados. Todos têm o mesmo modelo de dados do JSON, então dá pra transcodificar de um para o
+ * outro token a token (sem montar objeto) e quem consome continua lendo campos do mesmo jeito.
+ * <p>
+ * - JSON: texto, legível, o padrão.
+ * - SMILE: JSON binário do Jackson. Nomes de campo repetidos viram referência, números ficam binários.
+ * - CBOR: JSON binário padronizado (RFC 7049), bom quando o outro lado não é Java.
+ * <p>
+ * Formato com schema (Protobuf, Avro) ficou de fora: o corpo que recebemos no POST é JSON livre, sem tipo fixo, então
+ * não há schema pra gerar as classes nem dá pra transcodificar token a token como aqui. Quem tiver um contrato fixo
+ * pode entrar como outro formato, com content-type próprio e o schema no lugar da factory.
+ */
+public enum FormatoCarga {
+
+    JSON(MessageProperties.CONTENT_TYPE_JSON, new JsonFactory()),
+    SMILE("application/x-jackson-smile", new SmileFactory()),
+    CBOR("application/cbor", new CBORFactory());
+
+    private final String contentType;
+    private final JsonFactory factory;
+    private final ObjectMapper objectMapper;
+
+    FormatoCarga(String contentType, JsonFactory factory) {
+        this.contentType = contentType;
+        this.factory = factory;
+        this.objectMapper = new ObjectMapper(factory);
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public JsonFactory factory() {
+        return factory;
+    }
+
+    public ObjectMapper objectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * Reescreve os bytes neste formato, token a token (o documento nunca vira árvore de objetos).
+     *
+     * @param corpo   bytes no formato "origem"
+     * @param origem  formato atual
+     * @return bytes neste formato (o próprio array, se origem == this)
+     */
+    public byte[] transcodifica(byte[] corpo, FormatoCarga origem) {
+        if (origem == this) {
+            return corpo;
+        }
+        ByteArrayBuilder saida = new ByteArrayBuilder(corpo.length);
+        try (JsonParser parser = origem.factory.createParser(corpo);
+             JsonGenerator generator = factory.createGenerator(saida)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentStructure(parser);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return saida.toByteArray();
+    }
+
+    /**
+     * @param contentType header content_type da mensagem (parâmetros como charset são ignorados)
+     * @return o formato, ou null se não for nenhum dos nossos
+     */
+    public static FormatoCarga porContentType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        String semParametros = contentType.split(";", 2)[0].trim();
+        for (FormatoCarga formato : values()) {
+            if (formato.contentType.equalsIgnoreCase(semParametros)) {
+                return formato;
+            }
+        }
+        return null;
+    }
+
+}
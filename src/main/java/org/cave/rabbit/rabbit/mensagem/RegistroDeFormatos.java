@@ -0,0 +1,62 @@
+package org.cave.rabbit.rabbit.mensagem;
+
+import org.cave.rabbit.rabbit.config.FormatosProperties;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.MessagePropertiesBuilder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decide como o corpo vai pro broker: formato por exchange ({@link FormatoCarga}) e compressão acima de um tamanho
+ * ({@link Compressao}). Quem consome não precisa dessa configuração: {@link CargaJson#de(Message)} descobre tudo pelos
+ * headers content_type/content_encoding.
+ */
+@Component
+public class RegistroDeFormatos {
+
+    private final FormatosProperties properties;
+
+    public RegistroDeFormatos(FormatosProperties properties) {
+        this.properties = properties;
+    }
+
+    public FormatoCarga formato(String exchange) {
+        return properties.getPorExchange().getOrDefault(exchange, properties.getPadrao());
+    }
+
+    /**
+     * Transcodifica e comprime conforme a exchange de destino.
+     * <p>
+     * Mensagem que não está num dos nossos formatos, ou que já vem com content_encoding (ex: republicação de uma
+     * mensagem que já passou por aqui), segue do jeito que está.
+     *
+     * @param exchange destino
+     * @param message  mensagem a publicar
+     * @return a própria mensagem ou uma nova, com corpo e headers ajustados (numa cópia: a de quem chamou não muda)
+     */
+    public Message codifica(String exchange, Message message) {
+        FormatoCarga origem = FormatoCarga.porContentType(message.getMessageProperties().getContentType());
+        if (origem == null || message.getMessageProperties().getContentEncoding() != null) {
+            return message;
+        }
+
+        FormatoCarga destino = formato(exchange);
+        byte[] corpo = destino.transcodifica(message.getBody(), origem);
+        String contentEncoding = null;
+
+        Compressao compressao = properties.getCompressao();
+        if (compressao != null && corpo.length > properties.getLimiteCompressaoBytes()) {
+            corpo = compressao.comprime(corpo);
+            contentEncoding = compressao.contentEncoding();
+        }
+        if (corpo == message.getBody() && destino == origem) {
+            return message;
+        }
+
+        MessageProperties messageProperties = MessagePropertiesBuilder.fromClonedProperties(message.getMessageProperties()).build();
+        messageProperties.setContentType(destino.contentType());
+        messageProperties.setContentEncoding(contentEncoding);
+        return new Message(corpo, messageProperties);
+    }
+
+}
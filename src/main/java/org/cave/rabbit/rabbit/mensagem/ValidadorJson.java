@@ -0,0 +1,36 @@
+package org.cave.rabbit.rabbit.mensagem;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Valida que um corpo é UM objeto JSON bem formado, só andando pelos tokens. Nenhum Map/JsonNode é montado.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class ValidadorJson {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * @param corpo bytes em UTF-8
+     * @throws IllegalArgumentException se não for exatamente um objeto JSON válido
+     */
+    public static void validaObjeto(byte[] corpo) {
+        try (JsonParser parser = JSON_FACTORY.createParser(corpo)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("O corpo deve ser um objeto JSON");
+            }
+            parser.skipChildren(); // Anda até o '}' correspondente, validando tudo no caminho
+            if (parser.nextToken() != null) {
+                throw new IllegalArgumentException("Conteúdo depois do fim do objeto JSON");
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("JSON inválido: " + e.getMessage(), e);
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package org.cave.rabbit.rabbit.metricas;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deixa passar 1 de cada N chamadas. Usado para logar o caminho quente sem escrever uma linha por mensagem.
+ */
+public class AmostradorDeLog {
+
+    private final long aCada;
+    private final AtomicLong contador = new AtomicLong();
+
+    /**
+     * @param aCada 1 loga tudo, 1000 loga uma a cada mil. Zero ou negativo não loga nada.
+     */
+    public AmostradorDeLog(long aCada) {
+        this.aCada = aCada;
+    }
+
+    public boolean deveLogar() {
+        return aCada > 0 && contador.incrementAndGet() % aCada == 0;
+    }
+
+}
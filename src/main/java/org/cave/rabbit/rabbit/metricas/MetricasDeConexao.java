@@ -0,0 +1,104 @@
+package org.cave.rabbit.rabbit.metricas;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Uso dos pools de cada CachingConnectionFactory (tag conexao = nome do bean). Serve pra dimensionar
+ * rabbit.conexao.*.channels e rabbit.conexao.*.conexoes.
+ * <p>
+ * - rabbit.conexao.channels.cache: tamanho do cache de channels (por conexão, no modo CONNECTION).
+ * - rabbit.conexao.channels.ociosos: channels parados no cache agora.
+ * - rabbit.conexao.channels.ociosos.maximo: o máximo de ociosos já visto. Chegou no tamanho do cache? Em algum momento
+ *   todos foram devolvidos juntos, ou seja, teve pico de uso do tamanho do cache; acima disso channel é aberto e fechado
+ *   a cada uso. Aumenta o cache.
+ * - rabbit.conexao.conexoes.abertas / rabbit.conexao.conexoes.ociosas: conexões TCP (no modo CHANNEL, 0 ou 1).
+ * <p>
+ * Tudo vem do {@link CachingConnectionFactory#getCacheProperties()}, lido na hora da coleta (se tiver conexão aberta).
+ */
+@Component
+public class MetricasDeConexao {
+
+    private final MetricasRabbit metricas;
+    private final Map<String, ConnectionFactory> connectionFactories;
+
+    public MetricasDeConexao(MetricasRabbit metricas, Map<String, ConnectionFactory> connectionFactories) {
+        this.metricas = metricas;
+        this.connectionFactories = connectionFactories;
+    }
+
+    @PostConstruct
+    void registra() {
+        connectionFactories.forEach((nome, connectionFactory) -> {
+            if (connectionFactory instanceof CachingConnectionFactory) {
+                registra(nome, (CachingConnectionFactory) connectionFactory);
+            }
+        });
+    }
+
+    private void registra(String nome, CachingConnectionFactory connectionFactory) {
+        AtomicInteger conectadas = new AtomicInteger();
+        connectionFactory.addConnectionListener(new ConnectionListener() {
+            @Override
+            public void onCreate(Connection connection) {
+                conectadas.incrementAndGet();
+            }
+
+            @Override
+            public void onClose(Connection connection) {
+                conectadas.decrementAndGet();
+            }
+        });
+
+        metricas.gauge("rabbit.conexao.channels.cache", connectionFactory::getChannelCacheSize, "conexao", nome);
+        metricas.gauge("rabbit.conexao.channels.ociosos",
+                () -> soma(cache(connectionFactory, conectadas), false), "conexao", nome);
+        metricas.gauge("rabbit.conexao.channels.ociosos.maximo",
+                () -> soma(cache(connectionFactory, conectadas), true), "conexao", nome);
+        metricas.gauge("rabbit.conexao.conexoes.abertas", () -> abertas(connectionFactory, conectadas), "conexao", nome);
+        metricas.gauge("rabbit.conexao.conexoes.ociosas",
+                () -> numero(cache(connectionFactory, conectadas), "idleConnections"), "conexao", nome);
+    }
+
+    /**
+     * Soma os channels ociosos (transacionais ou não; no modo CONNECTION vem uma chave por conexão, "idleChannelsNotTx:nome").
+     */
+    static long soma(Properties cache, boolean maximo) {
+        long total = 0;
+        for (String chave : cache.stringPropertyNames()) {
+            boolean ehMaximo = chave.contains("HighWater");
+            if (chave.startsWith("idleChannels") && ehMaximo == maximo) {
+                total += Long.parseLong(cache.getProperty(chave));
+            }
+        }
+        return total;
+    }
+
+    private static long abertas(CachingConnectionFactory connectionFactory, AtomicInteger conectadas) {
+        if (connectionFactory.getCacheMode() == CachingConnectionFactory.CacheMode.CONNECTION) {
+            return numero(cache(connectionFactory, conectadas), "openConnections");
+        }
+        return numero(cache(connectionFactory, conectadas), "localPort") > 0 ? 1 : 0; // Porta 0 = conexão fechada
+    }
+
+    /**
+     * No modo CHANNEL, antes da primeira conexão, o getCacheProperties não funciona (o máximo de ociosos de cada cache
+     * só existe depois que a conexão abre). Sem conexão, sem nada pra medir: o ConnectionListener diz quando tem.
+     */
+    private static Properties cache(CachingConnectionFactory connectionFactory, AtomicInteger conectadas) {
+        return conectadas.get() > 0 ? connectionFactory.getCacheProperties() : new Properties();
+    }
+
+    private static long numero(Properties cache, String chave) {
+        String valor = cache.getProperty(chave);
+        return valor == null ? 0 : Long.parseLong(valor);
+    }
+
+}
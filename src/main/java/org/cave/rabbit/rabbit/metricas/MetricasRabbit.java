@@ -0,0 +1,123 @@
+package org.cave.rabbit.rabbit.metricas;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Todas as métricas de publicação e consumo num lugar só. Expostas em /actuator/metrics.
+ * <p>
+ * Publicação (tag exchange):
+ * - rabbit.publicacao.envio: tempo da chamada de envio (só o lado do client).
+ * - rabbit.publicacao.confirmacao: do envio até o ack/nack, com tag resultado (ack, nack, devolvida, timeout, erro).
+ * - rabbit.publicacao.tamanho: bytes do corpo que foi pro broker (depois de formato/compressão).
+ * - rabbit.publicacao.claim.check: bytes dos corpos que foram pro armazém em vez do broker (ver ClaimCheck).
+ * <p>
+ * Consumo (tags fila e factory):
+ * - rabbit.consumo.processamento: tempo do handler por mensagem.
+ * - rabbit.consumo.mensagens: contagem por resultado (ack, retentativa, dlq, rejeitada, duplicada).
+ * - rabbit.consumo.redeliveries: mensagens que chegaram com redelivered=true.
+ * <p>
+ * Admissão (tag motivo):
+ * - rabbit.admissao.recusadas: requisições recusadas pelo ControleDeAdmissao (em_voo, fila_cheia, broker_bloqueado).
+ * <p>
+ * Pools de conexão e channel (tag conexao): ver {@link MetricasDeConexao}.
+ * <p>
+ * Os meters são guardados num mapa por combinação de tags, pra não montar Meter.Id a cada mensagem no caminho quente.
+ * Percentis e histogramas são ligados pelo application.properties (management.metrics.distribution.*).
+ */
+@Component
+public class MetricasRabbit {
+
+    public static final String ACK = "ack";
+    public static final String NACK = "nack";
+    public static final String DEVOLVIDA = "devolvida";
+    public static final String TIMEOUT = "timeout";
+    public static final String ERRO = "erro";
+    public static final String RETENTATIVA = "retentativa";
+    public static final String DLQ = "dlq";
+    public static final String REJEITADA = "rejeitada";
+    public static final String DUPLICADA = "duplicada";
+
+    private final MeterRegistry registry;
+    private final Map<List<String>, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<List<String>, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<List<String>, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public MetricasRabbit(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void envio(String exchange, long nanos, int bytes) {
+        timer("rabbit.publicacao.envio", "exchange", exchange).record(nanos, TimeUnit.NANOSECONDS);
+        summaries.computeIfAbsent(Arrays.asList("rabbit.publicacao.tamanho", exchange), chave -> DistributionSummary.builder("rabbit.publicacao.tamanho")
+                .baseUnit("bytes")
+                .tag("exchange", exchange)
+                .register(registry))
+                .record(bytes);
+    }
+
+    public void claimCheck(String exchange, int bytes) {
+        summaries.computeIfAbsent(Arrays.asList("rabbit.publicacao.claim.check", exchange), chave -> DistributionSummary.builder("rabbit.publicacao.claim.check")
+                .baseUnit("bytes")
+                .tag("exchange", exchange)
+                .register(registry))
+                .record(bytes);
+    }
+
+    public void confirmacao(String exchange, String resultado, long nanos) {
+        timer("rabbit.publicacao.confirmacao", "exchange", exchange, "resultado", resultado).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void processamento(String fila, String factory, long nanos) {
+        timer("rabbit.consumo.processamento", "fila", fila, "factory", factory).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void consumo(String fila, String factory, String resultado, int quantidade) {
+        counter("rabbit.consumo.mensagens", "fila", fila, "factory", factory, "resultado", resultado).increment(quantidade);
+    }
+
+    public void redelivery(String fila, String factory) {
+        counter("rabbit.consumo.redeliveries", "fila", fila, "factory", factory).increment();
+    }
+
+    public void admissaoRecusada(String motivo) {
+        counter("rabbit.admissao.recusadas", "motivo", motivo).increment();
+    }
+
+    /**
+     * Registra um gauge que lê o valor na hora da coleta.
+     */
+    public void gauge(String nome, Supplier<Number> valor, String... tags) {
+        Gauge.builder(nome, valor).tags(tags).register(registry);
+    }
+
+    private Timer timer(String nome, String... tags) {
+        return timers.computeIfAbsent(chave(nome, tags), chave -> Timer.builder(nome)
+                .tags(tags)
+                .register(registry));
+    }
+
+    private Counter counter(String nome, String... tags) {
+        return counters.computeIfAbsent(chave(nome, tags), chave -> Counter.builder(nome)
+                .tags(tags)
+                .register(registry));
+    }
+
+    private static List<String> chave(String nome, String... tags) {
+        String[] chave = new String[tags.length + 1];
+        chave[0] = nome;
+        System.arraycopy(tags, 0, chave, 1, tags.length);
+        return Arrays.asList(chave);
+    }
+
+}
@@ -0,0 +1,339 @@
+package org.cave.rabbit.rabbit.outbox;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Log append-only do {@link Outbox}, em segmentos de tamanho fixo mapeados em memória.
+ * <p>
+ * Cada segmento é um arquivo (00000000000000000007.seg) com registros [tamanho][crc32][bytes]. O tamanho é escrito por
+ * último: registro pela metade fica com tamanho 0 e não aparece. Depois de uma queda da máquina a ordem em que as
+ * páginas chegaram no disco não é garantida, então o crc pega o que ficou torto. O primeiro registro inválido é o fim.
+ * <p>
+ * Gravar é copiar pra memória mapeada; quem garante o disco é o {@link #sincroniza()} (force), chamado em grupo pelo
+ * Outbox. Não encheu o segmento, o próximo registro vai no seguinte; passou de "maximoSegmentos" arquivos, recusa.
+ * <p>
+ * A leitura (relay) tem posição própria, gravada no relay.pos só no {@link #confirma}. Segmento que ficou inteiro pra
+ * trás da posição confirmada é apagado. No Java 11 não dá pra desmapear na mão: o arquivo some do diretório na hora e
+ * a memória volta quando o GC recolher o buffer.
+ * <p>
+ * Thread-safe: gravação (requisições) e leitura (relay) sincronizam no log, o force roda fora do lock.
+ */
+@Slf4j
+class LogDeSegmentos implements Closeable {
+
+    private static final String EXTENSAO = ".seg";
+    private static final String CHECKPOINT = "relay.pos";
+    private static final int CABECALHO = 8; // tamanho (int) + crc32 (int)
+
+    private final Path diretorio;
+    private final int tamanhoSegmento;
+    private final int maximoSegmentos;
+    private final TreeMap<Long, Segmento> segmentos = new TreeMap<>();
+    private final Set<Segmento> sujos = new LinkedHashSet<>();
+    private final FileChannel canalCheckpoint;
+    private final MappedByteBuffer checkpoint;
+
+    private Segmento escrita;
+    private int fimEscrita;
+    private long segmentoLeitura;
+    private int posicaoLeitura;
+    private long pendentes;
+
+    LogDeSegmentos(Path diretorio, int tamanhoSegmento, int maximoSegmentos) throws IOException {
+        Files.createDirectories(diretorio);
+        this.diretorio = diretorio;
+        this.tamanhoSegmento = tamanhoSegmento;
+        this.maximoSegmentos = maximoSegmentos;
+
+        this.canalCheckpoint = FileChannel.open(diretorio.resolve(CHECKPOINT), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.checkpoint = canalCheckpoint.map(FileChannel.MapMode.READ_WRITE, 0, 8);
+        long posicao = checkpoint.getLong(0); // Segmento nos 32 bits de cima, posição nos de baixo: um putLong só, nunca fica pela metade
+        this.segmentoLeitura = posicao >>> 32;
+        this.posicaoLeitura = (int) posicao;
+
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(diretorio, "*" + EXTENSAO)) {
+            for (Path arquivo : arquivos) {
+                String nome = arquivo.getFileName().toString();
+                long numero = Long.parseLong(nome.substring(0, nome.length() - EXTENSAO.length()));
+                if (numero < segmentoLeitura) {
+                    Files.delete(arquivo); // Já confirmado, a aplicação caiu antes de apagar
+                } else {
+                    segmentos.put(numero, Segmento.abre(arquivo, numero, tamanhoSegmento));
+                }
+            }
+        }
+
+        if (segmentos.isEmpty() || segmentos.firstKey() > segmentoLeitura) {
+            posicaoLeitura = 0;
+        }
+        if (segmentos.isEmpty()) {
+            escrita = novoSegmento(segmentoLeitura);
+        } else {
+            segmentoLeitura = Math.max(segmentoLeitura, segmentos.firstKey());
+            escrita = segmentos.lastEntry().getValue();
+        }
+
+        int fim = 0;
+        for (int proxima = escrita.proximo(0); proxima > 0; proxima = escrita.proximo(fim)) {
+            fim = proxima;
+        }
+        fimEscrita = fim;
+        pendentes = contaPendentes();
+        if (pendentes > 0) {
+            log.info("Outbox {}: {} mensagens pendentes de antes do restart", diretorio, pendentes);
+        }
+    }
+
+    /**
+     * @param registro bytes do registro (ver {@link RegistroDeSaida})
+     * @throws IllegalStateException    se já tiver "maximoSegmentos" segmentos e o atual estiver cheio
+     * @throws IllegalArgumentException se o registro não couber num segmento
+     */
+    synchronized void grava(byte[] registro) throws IOException {
+        int total = CABECALHO + registro.length;
+        if (total > tamanhoSegmento) {
+            throw new IllegalArgumentException("Registro de " + registro.length + " bytes não cabe num segmento de " + tamanhoSegmento);
+        }
+        if (fimEscrita + total > escrita.capacidade) {
+            if (segmentos.size() >= maximoSegmentos) {
+                throw new IllegalStateException("Outbox cheio: " + maximoSegmentos + " segmentos aguardando o relay");
+            }
+            escrita = novoSegmento(escrita.numero + 1);
+            fimEscrita = 0;
+        }
+        escrita.escreve(fimEscrita, registro);
+        fimEscrita += total;
+        pendentes++;
+        sujos.add(escrita);
+    }
+
+    /**
+     * Leva pro disco tudo que foi gravado até aqui (fsync).
+     */
+    void sincroniza() {
+        List<Segmento> paraSincronizar;
+        synchronized (this) {
+            paraSincronizar = new ArrayList<>(sujos);
+            sujos.clear();
+        }
+        for (Segmento segmento : paraSincronizar) {
+            segmento.mapa.force();
+        }
+    }
+
+    /**
+     * Lê a partir da posição confirmada, sem andar com ela. Chamar de novo sem {@link #confirma} devolve os mesmos.
+     *
+     * @param maximo registros no máximo
+     * @return registros e a posição logo depois do último
+     */
+    synchronized Leitura le(int maximo) {
+        List<byte[]> registros = new ArrayList<>();
+        List<long[]> fins = new ArrayList<>();
+        long segmento = segmentoLeitura;
+        int posicao = posicaoLeitura;
+        while (registros.size() < maximo) {
+            Segmento atual = segmentos.get(segmento);
+            if (atual == null || (atual == escrita && posicao >= fimEscrita)) {
+                break;
+            }
+            byte[] registro = atual.le(posicao);
+            if (registro == null) {
+                Long seguinte = segmentos.higherKey(segmento);
+                if (atual == escrita || seguinte == null) {
+                    break;
+                }
+                segmento = seguinte; // Esse acabou, o resto está no próximo
+                posicao = 0;
+                continue;
+            }
+            registros.add(registro);
+            posicao += CABECALHO + registro.length;
+            fins.add(new long[] { segmento, posicao });
+        }
+        return new Leitura(registros, segmento, posicao, fins, segmentoLeitura, posicaoLeitura);
+    }
+
+    /**
+     * O relay publicou (e o broker confirmou) tudo da leitura: a posição anda, vai pro disco, e segmento que ficou
+     * inteiro pra trás é apagado.
+     */
+    synchronized void confirma(Leitura leitura) throws IOException {
+        if (leitura.segmento == segmentoLeitura && leitura.posicao == posicaoLeitura) {
+            return;
+        }
+        segmentoLeitura = leitura.segmento;
+        posicaoLeitura = leitura.posicao;
+        pendentes -= leitura.registros.size();
+        checkpoint.putLong(0, (segmentoLeitura << 32) | (posicaoLeitura & 0xFFFFFFFFL));
+        checkpoint.force();
+
+        while (segmentos.firstKey() < segmentoLeitura) {
+            Segmento apagado = segmentos.pollFirstEntry().getValue();
+            sujos.remove(apagado);
+            apagado.apaga();
+        }
+    }
+
+    synchronized long pendentes() {
+        return pendentes;
+    }
+
+    synchronized int quantidadeDeSegmentos() {
+        return segmentos.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segmento segmento : segmentos.values()) {
+            segmento.mapa.force();
+            segmento.canal.close();
+        }
+        if (canalCheckpoint.isOpen()) {
+            checkpoint.force();
+            canalCheckpoint.close();
+        }
+    }
+
+    private Segmento novoSegmento(long numero) throws IOException {
+        Segmento segmento = Segmento.abre(diretorio.resolve(String.format("%020d", numero) + EXTENSAO), numero, tamanhoSegmento);
+        segmentos.put(numero, segmento);
+        return segmento;
+    }
+
+    private long contaPendentes() {
+        long total = 0;
+        for (Segmento segmento : segmentos.tailMap(segmentoLeitura, true).values()) {
+            int posicao = segmento.numero == segmentoLeitura ? posicaoLeitura : 0;
+            for (int proxima = segmento.proximo(posicao); proxima > 0; proxima = segmento.proximo(posicao)) {
+                total++;
+                posicao = proxima;
+            }
+        }
+        return total;
+    }
+
+    static final class Leitura {
+
+        private final List<byte[]> registros;
+        private final long segmento;
+        private final int posicao;
+        private final List<long[]> fins; // Segmento e posição logo depois de cada registro
+        private final long segmentoInicio;
+        private final int posicaoInicio;
+
+        Leitura(List<byte[]> registros, long segmento, int posicao, List<long[]> fins, long segmentoInicio, int posicaoInicio) {
+            this.registros = registros;
+            this.segmento = segmento;
+            this.posicao = posicao;
+            this.fins = fins;
+            this.segmentoInicio = segmentoInicio;
+            this.posicaoInicio = posicaoInicio;
+        }
+
+        List<byte[]> registros() {
+            return registros;
+        }
+
+        /**
+         * @return só os "quantidade" primeiros registros, pra confirmar um pedaço da leitura
+         */
+        Leitura ate(int quantidade) {
+            if (quantidade >= registros.size()) {
+                return this;
+            }
+            if (quantidade <= 0) {
+                return new Leitura(new ArrayList<>(), segmentoInicio, posicaoInicio, new ArrayList<>(), segmentoInicio, posicaoInicio);
+            }
+            long[] fim = fins.get(quantidade - 1);
+            return new Leitura(registros.subList(0, quantidade), fim[0], (int) fim[1], fins.subList(0, quantidade), segmentoInicio, posicaoInicio);
+        }
+
+    }
+
+    private static final class Segmento {
+
+        private final long numero;
+        private final Path arquivo;
+        private final FileChannel canal;
+        private final MappedByteBuffer mapa;
+        private final int capacidade;
+
+        private Segmento(long numero, Path arquivo, FileChannel canal, MappedByteBuffer mapa) {
+            this.numero = numero;
+            this.arquivo = arquivo;
+            this.canal = canal;
+            this.mapa = mapa;
+            this.capacidade = mapa.capacity();
+        }
+
+        /**
+         * Arquivo que já existe fica com o tamanho que tem (o "tamanhoSegmento" pode ter mudado desde que foi criado).
+         */
+        static Segmento abre(Path arquivo, long numero, int tamanho) throws IOException {
+            FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long capacidade = canal.size() > 0 ? canal.size() : tamanho;
+            return new Segmento(numero, arquivo, canal, canal.map(FileChannel.MapMode.READ_WRITE, 0, capacidade));
+        }
+
+        void escreve(int posicao, byte[] registro) {
+            CRC32 crc = new CRC32();
+            crc.update(registro);
+            ByteBuffer escrita = mapa.duplicate();
+            escrita.position(posicao + 4);
+            escrita.putInt((int) crc.getValue());
+            escrita.put(registro);
+            mapa.putInt(posicao, registro.length); // Por último
+        }
+
+        /**
+         * @return bytes do registro nessa posição, ou null se não tem registro válido ali (fim do segmento)
+         */
+        byte[] le(int posicao) {
+            if (posicao + CABECALHO > capacidade) {
+                return null;
+            }
+            int tamanho = mapa.getInt(posicao);
+            if (tamanho <= 0 || tamanho > capacidade - posicao - CABECALHO) {
+                return null;
+            }
+            byte[] registro = new byte[tamanho];
+            ByteBuffer leitura = mapa.duplicate();
+            leitura.position(posicao + CABECALHO);
+            leitura.get(registro);
+            CRC32 crc = new CRC32();
+            crc.update(registro);
+            return (int) crc.getValue() == mapa.getInt(posicao + 4) ? registro : null;
+        }
+
+        /**
+         * @return posição depois do registro, ou -1 se não tem registro válido ali
+         */
+        int proximo(int posicao) {
+            byte[] registro = le(posicao);
+            return registro == null ? -1 : posicao + CABECALHO + registro.length;
+        }
+
+        void apaga() throws IOException {
+            canal.close();
+            Files.deleteIfExists(arquivo);
+        }
+
+    }
+
+}
@@ -0,0 +1,280 @@
+package org.cave.rabbit.rabbit.outbox;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.cave.rabbit.rabbit.config.PublicacaoProperties;
+import org.cave.rabbit.rabbit.metricas.MetricasRabbit;
+import org.cave.rabbit.rabbit.publicacao.PublicacaoRecusadaException;
+import org.cave.rabbit.rabbit.publicacao.PublicadorConfirmado;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Outbox do POST do nome-do-processo. Só existe com rabbit.publicacao.outbox.habilitado=true.
+ * <p>
+ * Publicando direto, a requisição depende do broker: broker fora, requisição falha; broker lento, requisição lenta.
+ * Aqui a mensagem aceita vai pro disco ({@link LogDeSegmentos}) e a requisição volta assim que ela estiver lá. A
+ * entrega pro broker é assunto de outra thread, o relay.
+ * <p>
+ * Disco: as requisições escrevem na memória mapeada e esperam o próximo fsync. Uma thread faz o fsync a cada
+ * "fsyncIntervaloMs" pra todo mundo que chegou nesse meio tempo (group commit). Com 0, a requisição não espera o
+ * fsync: sobrevive à queda do processo, mas não à da máquina.
+ * <p>
+ * Relay: lê até "tamanhoLote" registros, publica todos num channel só pelo {@link PublicadorConfirmado} e espera as
+ * confirmações. A posição anda até a primeira que falhou, e segmento lido inteiro é apagado. Da que falhou em diante
+ * (broker fora, nack, timeout), espera "reenvioMs" e manda de novo. As que já tinham ido saem duplicadas, com o mesmo
+ * messageId (gravado no registro), e o filtro de idempotência do consumidor (chave MESSAGE_ID) descarta.
+ * <p>
+ * Mensagem que nunca vai passar (devolvida por não ter fila, registro que não decodifica) travaria o outbox inteiro
+ * atrás dela. Então a falha conta como tentativa DAQUELA mensagem quando a culpa é dela: o erro não é do broker, ou
+ * alguma outra do mesmo lote passou. Broker fora ou bloqueado derruba todas e não conta. Passou de "maximoTentativas",
+ * ela vai pro log de estacionadas (subdiretório "estacionadas", mesmo formato, {@link RegistroDeSaida}) e a posição
+ * anda. Quem quiser reenviar lê de lá.
+ * <p>
+ * O limite deixa de ser o broker e passa a ser o disco: "maximoSegmentos" x "segmentoBytes". Encheu, recusa.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "rabbit.publicacao.outbox", name = "habilitado", havingValue = "true")
+public class Outbox {
+
+    private static final String ESTACIONADAS = "estacionadas";
+
+    private final PublicadorConfirmado publicador;
+    private final RabbitTemplate rabbitTemplate;
+    private final PublicacaoProperties.Outbox properties;
+    private final LogDeSegmentos segmentos;
+    private volatile LogDeSegmentos estacionadas; // Só o relay grava, aberto na primeira que precisar
+    private int tentativas; // Da primeira mensagem pendente
+    private final Queue<CompletableFuture<Void>> aguardandoFsync = new ConcurrentLinkedQueue<>();
+    private final Thread relay;
+    private final Thread sincronizador;
+    private volatile boolean ativo = true;
+
+    public Outbox(PublicadorConfirmado publicador, RabbitTemplate rabbitTemplate, MetricasRabbit metricas,
+                  PublicacaoProperties properties) throws IOException {
+        this.publicador = publicador;
+        this.rabbitTemplate = rabbitTemplate;
+        this.properties = properties.getOutbox();
+        this.segmentos = new LogDeSegmentos(Paths.get(this.properties.getDiretorio()), this.properties.getSegmentoBytes(),
+                this.properties.getMaximoSegmentos());
+
+        this.relay = new Thread(this::relay, "outbox-relay");
+        this.relay.setDaemon(true);
+        this.relay.start();
+        this.sincronizador = new Thread(this::sincroniza, "outbox-fsync");
+        this.sincronizador.setDaemon(true);
+        this.sincronizador.start();
+
+        metricas.gauge("rabbit.outbox.pendentes", segmentos::pendentes);
+        metricas.gauge("rabbit.outbox.segmentos", segmentos::quantidadeDeSegmentos);
+        metricas.gauge("rabbit.outbox.estacionadas", () -> {
+            LogDeSegmentos agora = estacionadas;
+            return agora == null ? 0 : agora.pendentes();
+        });
+    }
+
+    /**
+     * @return future que completa quando a mensagem estiver no disco (não no broker)
+     */
+    public CompletableFuture<Void> grava(String exchange, String routingKey, Message message) {
+        if (!ativo) {
+            return recusada(new PublicacaoRecusadaException("Outbox encerrando"));
+        }
+        if (message.getMessageProperties().getMessageId() == null) {
+            message.getMessageProperties().setMessageId(UUID.randomUUID().toString()); // O mesmo em todo reenvio do relay
+        }
+        try {
+            segmentos.grava(RegistroDeSaida.codifica(exchange, routingKey, message));
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            return recusada(new PublicacaoRecusadaException(e.getMessage()));
+        } catch (IOException e) {
+            return recusada(new PublicacaoRecusadaException("Falha gravando no outbox", e));
+        }
+        LockSupport.unpark(relay);
+
+        if (properties.getFsyncIntervaloMs() <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> noDisco = new CompletableFuture<>();
+        aguardandoFsync.offer(noDisco);
+        return noDisco;
+    }
+
+    /**
+     * Quem entrou na fila de espera já tinha gravado: tirando da fila ANTES do force, todos eles estão cobertos.
+     */
+    private void sincroniza() {
+        long intervalo = TimeUnit.MILLISECONDS.toNanos(Math.max(1, properties.getFsyncIntervaloMs()));
+        while (ativo || !aguardandoFsync.isEmpty()) {
+            LockSupport.parkNanos(this, intervalo);
+            if (aguardandoFsync.isEmpty()) {
+                continue;
+            }
+            List<CompletableFuture<Void>> grupo = new ArrayList<>();
+            for (CompletableFuture<Void> future = aguardandoFsync.poll(); future != null; future = aguardandoFsync.poll()) {
+                grupo.add(future);
+            }
+            try {
+                segmentos.sincroniza();
+                grupo.forEach(future -> future.complete(null));
+            } catch (RuntimeException e) {
+                log.error("Falha no fsync do outbox", e);
+                grupo.forEach(future -> future.completeExceptionally(new PublicacaoRecusadaException("Falha no fsync do outbox", e)));
+            }
+        }
+    }
+
+    private void relay() {
+        long ocioso = TimeUnit.MILLISECONDS.toNanos(properties.getOciosoMs());
+        while (ativo) {
+            try {
+                LogDeSegmentos.Leitura leitura = segmentos.le(properties.getTamanhoLote());
+                if (leitura.registros().isEmpty()) {
+                    segmentos.confirma(leitura); // Pode ter passado pro segmento seguinte, aí o anterior é apagado
+                    LockSupport.parkNanos(this, ocioso);
+                    continue;
+                }
+                Resultado resultado = publica(leitura.registros());
+                if (resultado.confirmadas > 0) {
+                    segmentos.confirma(leitura.ate(resultado.confirmadas));
+                    tentativas = 0; // A primeira pendente agora é outra
+                }
+                if (resultado.confirmadas == leitura.registros().size()) {
+                    continue;
+                }
+                if (properties.getMaximoTentativas() > 0 && resultado.culpaDaMensagem && ++tentativas >= properties.getMaximoTentativas()
+                        && estaciona(leitura.registros().get(resultado.confirmadas), resultado.erro)) {
+                    segmentos.confirma(leitura.ate(resultado.confirmadas + 1));
+                    tentativas = 0;
+                    continue;
+                }
+                Thread.sleep(properties.getReenvioMs()); // sleep, não park: gravação nova não pode encurtar a espera
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                log.error("Falha gravando a posição do relay do outbox", e);
+            }
+        }
+    }
+
+    /**
+     * @return quantas confirmadas em sequência desde o começo do lote, e por que a seguinte falhou
+     */
+    private Resultado publica(List<byte[]> registros) {
+        List<CompletableFuture<Void>> confirmacoes = new ArrayList<>(registros.size());
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (byte[] bytes : registros) {
+                    try {
+                        RegistroDeSaida registro = RegistroDeSaida.decodifica(bytes);
+                        confirmacoes.add(publicador.publicaAguardandoJanela(operations, registro.exchange(), registro.routingKey(), registro.message()));
+                    } catch (RuntimeException e) {
+                        confirmacoes.add(recusada(e)); // Só essa: corpo que não decodifica (ou não codifica) não melhora com reenvio
+                    }
+                }
+                return null;
+            });
+        } catch (RuntimeException e) { // AmqpException (broker fora)...
+            log.warn("Relay do outbox: lote de {} mensagens vai ser reenviado: {}", registros.size(), e.toString());
+            return new Resultado(0, false, e);
+        }
+
+        // O publicador completa todas, nem que seja por timeout
+        Throwable[] erros = new Throwable[registros.size()];
+        for (int i = 0; i < erros.length; i++) {
+            try {
+                confirmacoes.get(i).join();
+            } catch (CompletionException | CancellationException e) {
+                erros[i] = e.getCause() == null ? e : e.getCause();
+            }
+        }
+        int confirmadas = 0;
+        while (confirmadas < erros.length && erros[confirmadas] == null) {
+            confirmadas++;
+        }
+        if (confirmadas == erros.length) {
+            return new Resultado(confirmadas, false, null);
+        }
+
+        Throwable erro = erros[confirmadas];
+        boolean culpaDaMensagem = !(erro instanceof AmqpException);
+        for (int i = confirmadas + 1; i < erros.length && !culpaDaMensagem; i++) {
+            culpaDaMensagem = erros[i] == null; // O broker aceitou outra do mesmo lote, o problema é com essa
+        }
+        log.warn("Relay do outbox: {} de {} confirmadas, o resto vai ser reenviado: {}", confirmadas, registros.size(), erro.toString());
+        return new Resultado(confirmadas, culpaDaMensagem, erro);
+    }
+
+    /**
+     * @return false se não deu pra guardar (aí ela continua na fila, sendo reenviada)
+     */
+    private boolean estaciona(byte[] registro, Throwable erro) {
+        try {
+            if (estacionadas == null) {
+                estacionadas = new LogDeSegmentos(Paths.get(properties.getDiretorio(), ESTACIONADAS), properties.getSegmentoBytes(),
+                        properties.getMaximoSegmentos());
+            }
+            estacionadas.grava(registro);
+            estacionadas.sincroniza();
+            log.error("Outbox: mensagem estacionada depois de {} tentativas, o relay segue: {}", tentativas, erro.toString());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("Outbox: não deu pra estacionar a mensagem, ela continua bloqueando o relay", e);
+            return false;
+        }
+    }
+
+    private static CompletableFuture<Void> recusada(RuntimeException erro) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(erro);
+        return future;
+    }
+
+    /**
+     * O que não foi pro broker fica no disco e sai no próximo start.
+     */
+    @PreDestroy
+    void encerra() throws InterruptedException, IOException {
+        ativo = false;
+        relay.interrupt();
+        LockSupport.unpark(sincronizador);
+        relay.join(TimeUnit.SECONDS.toMillis(5));
+        sincronizador.join(TimeUnit.SECONDS.toMillis(5));
+        segmentos.close();
+        if (estacionadas != null) {
+            estacionadas.close();
+        }
+    }
+
+    private static final class Resultado {
+
+        private final int confirmadas;
+        private final boolean culpaDaMensagem;
+        private final Throwable erro;
+
+        Resultado(int confirmadas, boolean culpaDaMensagem, Throwable erro) {
+            this.confirmadas = confirmadas;
+            this.culpaDaMensagem = culpaDaMensagem;
+            this.erro = erro;
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.cave.rabbit.rabbit.outbox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * Uma mensagem do {@link Outbox} em bytes, do jeito que vai pro {@link LogDeSegmentos}.
+ * <p>
+ * Só o que o POST preenche: exchange, routing key, messageId, content-type/encoding, prioridade e headers. O valor dos
+ * headers vai como texto (os nossos já são texto, ex: a chave de partição).
+ */
+final class RegistroDeSaida {
+
+    private final String exchange;
+    private final String routingKey;
+    private final Message message;
+
+    private RegistroDeSaida(String exchange, String routingKey, Message message) {
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.message = message;
+    }
+
+    String exchange() {
+        return exchange;
+    }
+
+    String routingKey() {
+        return routingKey;
+    }
+
+    Message message() {
+        return message;
+    }
+
+    static byte[] codifica(String exchange, String routingKey, Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.getBody().length + 128);
+        try (DataOutputStream saida = new DataOutputStream(bytes)) {
+            saida.writeUTF(exchange);
+            saida.writeUTF(texto(routingKey));
+            saida.writeUTF(texto(properties.getMessageId()));
+            saida.writeUTF(texto(properties.getContentType()));
+            saida.writeUTF(texto(properties.getContentEncoding()));
+            saida.writeInt(properties.getPriority() != null ? properties.getPriority() : -1);
+            saida.writeShort(properties.getHeaders().size());
+            for (Map.Entry<String, Object> header : properties.getHeaders().entrySet()) {
+                saida.writeUTF(header.getKey());
+                saida.writeUTF(String.valueOf(header.getValue()));
+            }
+            saida.writeInt(message.getBody().length);
+            saida.write(message.getBody());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // ByteArrayOutputStream não dá IOException
+        }
+        return bytes.toByteArray();
+    }
+
+    static RegistroDeSaida decodifica(byte[] registro) {
+        try (DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(registro))) {
+            String exchange = entrada.readUTF();
+            String routingKey = entrada.readUTF();
+            MessageProperties properties = new MessageProperties();
+            properties.setMessageId(nulo(entrada.readUTF()));
+            properties.setContentType(nulo(entrada.readUTF()));
+            properties.setContentEncoding(nulo(entrada.readUTF()));
+            int prioridade = entrada.readInt();
+            if (prioridade >= 0) {
+                properties.setPriority(prioridade);
+            }
+            int headers = entrada.readShort();
+            for (int i = 0; i < headers; i++) {
+                properties.setHeader(entrada.readUTF(), entrada.readUTF());
+            }
+            byte[] corpo = new byte[entrada.readInt()];
+            entrada.readFully(corpo);
+            return new RegistroDeSaida(exchange, nulo(routingKey), new Message(corpo, properties));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Registro do outbox ilegível", e);
+        }
+    }
+
+    private static String texto(String valor) {
+        return valor != null ? valor : "";
+    }
+
+    private static String nulo(String valor) {
+        return valor.isEmpty() ? null : valor;
+    }
+
+}
@@ -0,0 +1,37 @@
+package org.cave.rabbit.rabbit.particionamento;
+
+import java.util.UUID;
+import org.cave.rabbit.rabbit.config.ParticionamentoProperties;
+import org.cave.rabbit.rabbit.mensagem.CargaJson;
+import org.springframework.amqp.core.Message;
+import org.springframework.stereotype.Component;
+
+/**
+ * Monta a mensagem de uma carga e, com o particionamento ligado, põe no header {@link #X_CHAVE_PARTICAO} o valor do
+ * campo configurado. A exchange consistent-hash faz o hash desse header (hash-header) pra escolher a partição.
+ * <p>
+ * Usamos header e não routing key pra a mensagem poder continuar passando pela fanout de sempre.
+ * <p>
+ * Carga sem o campo ganha uma chave aleatória: não tem ordem a preservar e sem header o broker não roteia.
+ */
+@Component
+public class RoteadorDeParticao {
+
+    public static final String X_CHAVE_PARTICAO = "x-chave-particao";
+
+    private final ParticionamentoProperties properties;
+
+    public RoteadorDeParticao(ParticionamentoProperties properties) {
+        this.properties = properties;
+    }
+
+    public Message mensagem(CargaJson carga) {
+        Message message = carga.mensagem();
+        if (properties.isHabilitado()) {
+            String chave = carga.texto(properties.getCampoChave());
+            message.getMessageProperties().setHeader(X_CHAVE_PARTICAO, chave != null ? chave : UUID.randomUUID().toString());
+        }
+        return message;
+    }
+
+}
@@ -0,0 +1,181 @@
+package org.cave.rabbit.rabbit.publicacao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.cave.rabbit.rabbit.config.PublicacaoProperties;
+import org.cave.rabbit.rabbit.metricas.MetricasRabbit;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Junta as publicações de várias requisições e envia em lote, no estilo do producer do Kafka.
+ * <p>
+ * Sem isso, cada requisição pega um channel do cache da CachingConnectionFactory, publica e devolve. Com muita
+ * requisição ao mesmo tempo, a disputa é pelo cache de channels e pelo lock de escrita de cada um. Aqui a requisição
+ * só entra numa fila sem lock e volta com um future. Poucas threads de envio ("canais") tiram da fila até
+ * "tamanhoLote" mensagens, ou o que tiver quando a primeira já esperou "lingerMs", e publicam todas num channel só
+ * (um invoke por lote).
+ * <p>
+ * O envio passa pelo {@link PublicadorConfirmado}, então o future de cada requisição completa quando o broker
+ * confirmar aquela mensagem (ou falha no nack/devolução/timeout), igual a publicar direto. A janela de confirmações
+ * do publicador vira o backpressure das threads de envio; a fila daqui é limitada por "limite".
+ */
+@Slf4j
+@Component
+public class AcumuladorDePublicacao {
+
+    private final PublicadorConfirmado publicador;
+    private final RabbitTemplate rabbitTemplate;
+    private final PublicacaoProperties.Acumulador properties;
+    private final long lingerNanos;
+    private final Queue<Item> fila = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger tamanho = new AtomicInteger();
+    private final List<Thread> canais = new ArrayList<>();
+    private volatile boolean ativo = true;
+
+    public AcumuladorDePublicacao(PublicadorConfirmado publicador, RabbitTemplate rabbitTemplate, MetricasRabbit metricas,
+                                  PublicacaoProperties properties) {
+        this.publicador = publicador;
+        this.rabbitTemplate = rabbitTemplate;
+        this.properties = properties.getAcumulador();
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(this.properties.getLingerMs());
+        if (this.properties.isHabilitado()) {
+            for (int i = 0; i < this.properties.getCanais(); i++) {
+                Thread canal = new Thread(this::envia, "publicacao-acumulador-" + i);
+                canal.setDaemon(true);
+                canal.start();
+                canais.add(canal);
+            }
+        }
+        metricas.gauge("rabbit.publicacao.acumulador.tamanho", tamanho::get);
+    }
+
+    /**
+     * @return future que completa quando o broker confirmar a mensagem
+     */
+    public CompletableFuture<Void> publica(String exchange, String routingKey, Message message) {
+        if (!properties.isHabilitado()) {
+            return publicador.publica(exchange, routingKey, message);
+        }
+        if (!ativo || tamanho.get() >= properties.getLimite()) {
+            CompletableFuture<Void> recusada = new CompletableFuture<>();
+            recusada.completeExceptionally(new PublicacaoRecusadaException("Acumulador de publicação cheio (" + properties.getLimite() + ")"));
+            return recusada;
+        }
+
+        Item item = new Item(exchange, routingKey, message);
+        fila.offer(item);
+        int atual = tamanho.incrementAndGet();
+        if (atual == 1 || atual % properties.getTamanhoLote() == 0) {
+            acordaCanais(); // Primeira da fila (o canal está parado sem prazo) ou lote cheio
+        }
+        return item.future;
+    }
+
+    private void envia() {
+        while (ativo) {
+            Item primeiro = fila.peek();
+            if (primeiro == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            long espera = primeiro.chegada + lingerNanos - System.nanoTime();
+            if (espera > 0 && tamanho.get() < properties.getTamanhoLote()) {
+                LockSupport.parkNanos(this, espera);
+                continue;
+            }
+            enviaLote(drena());
+        }
+
+        // Encerrando: o que ainda estiver na fila sai agora
+        for (List<Item> lote = drena(); !lote.isEmpty(); lote = drena()) {
+            enviaLote(lote);
+        }
+    }
+
+    private List<Item> drena() {
+        List<Item> lote = new ArrayList<>(properties.getTamanhoLote());
+        Item item;
+        while (lote.size() < properties.getTamanhoLote() && (item = fila.poll()) != null) {
+            tamanho.decrementAndGet();
+            lote.add(item);
+        }
+        return lote;
+    }
+
+    private void enviaLote(List<Item> lote) {
+        if (lote.isEmpty()) {
+            return;
+        }
+        int[] entregues = {0};
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (Item item : lote) {
+                    try {
+                        publicador.publicaAguardandoJanela(operations, item.exchange, item.routingKey, item.message)
+                                .whenComplete((ok, erro) -> {
+                                    if (erro == null) {
+                                        item.future.complete(null);
+                                    } else {
+                                        item.future.completeExceptionally(erro);
+                                    }
+                                });
+                    } catch (RuntimeException e) {
+                        item.future.completeExceptionally(e); // Só essa mensagem (ex: corpo que não codifica), o lote segue
+                    }
+                    entregues[0]++;
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // O invoke repassa a exception como veio, não só AmqpException. Se escapar, a thread de envio morre e o
+            // acumulador continua aceitando mensagens que ninguém vai mandar
+            log.warn("Falha enviando lote de {} mensagens: {}", lote.size(), e.toString());
+            // Quem já foi entregue ao publicador tem o future amarrado na confirmação; o resto falha aqui
+            for (Item item : lote.subList(entregues[0], lote.size())) {
+                item.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void acordaCanais() {
+        for (Thread canal : canais) {
+            LockSupport.unpark(canal);
+        }
+    }
+
+    @PreDestroy
+    void encerra() throws InterruptedException {
+        ativo = false;
+        acordaCanais();
+        for (Thread canal : canais) {
+            canal.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    private static class Item {
+
+        private final String exchange;
+        private final String routingKey;
+        private final Message message;
+        private final long chegada = System.nanoTime();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Item(String exchange, String routingKey, Message message) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.message = message;
+        }
+
+    }
+
+}
@@ -0,0 +1,18 @@
+package org.cave.rabbit.rabbit.publicacao;
+
+import org.springframework.amqp.AmqpException;
+
+/**
+ * A mensagem não chegou com garantia no broker: nack, devolvida por não ter fila, timeout ou janela cheia.
+ */
+public class PublicacaoRecusadaException extends AmqpException {
+
+    public PublicacaoRecusadaException(String message) {
+        super(message);
+    }
+
+    public PublicacaoRecusadaException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,184 @@
+package org.cave.rabbit.rabbit.publicacao;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.cave.rabbit.rabbit.claimcheck.ClaimCheck;
+import org.cave.rabbit.rabbit.config.PublicacaoProperties;
+import org.cave.rabbit.rabbit.mensagem.RegistroDeFormatos;
+import org.cave.rabbit.rabbit.metricas.MetricasRabbit;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publicação com Publisher Confirms, sem bloquear quem publica.
+ * <p>
+ * Cada publicação leva um {@link CorrelationData}. O broker responde com ack/nack de forma assíncrona e o
+ * RabbitTemplate completa o future do CorrelationData. Aqui só amarramos esse future num {@link CompletableFuture}
+ * que o controller devolve pro Spring MVC, então a thread do Tomcat é liberada enquanto o broker não responde.
+ * <p>
+ * A janela (quantas publicações aguardando confirmação ao mesmo tempo) é limitada por um {@link Semaphore}.
+ * Sem limite, um broker lento faria o mapa de pendentes crescer sem fim.
+ * <p>
+ * Diferente do waitForConfirms, aqui várias publicações ficam "no ar" ao mesmo tempo (pipeline), e não uma atrás
+ * da outra esperando o broker.
+ * <p>
+ * Antes de sair, a mensagem passa pelo {@link RegistroDeFormatos}: formato da exchange de destino e compressão. Se
+ * mesmo assim ficar grande, o corpo vai pro armazém e só a referência pro broker, ver {@link ClaimCheck}.
+ */
+@Component
+public class PublicadorConfirmado {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final RegistroDeFormatos registroDeFormatos;
+    private final ClaimCheck claimCheck;
+    private final MetricasRabbit metricas;
+    private final PublicacaoProperties properties;
+    private final Semaphore janela;
+    private final Map<String, Pendente> pendentes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService varredor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "publicador-confirmado-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PublicadorConfirmado(RabbitTemplate rabbitTemplate, RegistroDeFormatos registroDeFormatos, ClaimCheck claimCheck,
+                                MetricasRabbit metricas, PublicacaoProperties properties) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.registroDeFormatos = registroDeFormatos;
+        this.claimCheck = claimCheck;
+        this.metricas = metricas;
+        this.properties = properties;
+        this.janela = new Semaphore(properties.getJanela());
+        long intervalo = Math.max(100, properties.getTimeoutConfirmacaoMs() / 4);
+        varredor.scheduleWithFixedDelay(this::expiraPendentes, intervalo, intervalo, TimeUnit.MILLISECONDS);
+        metricas.gauge("rabbit.publicacao.em.voo", pendentes::size);
+    }
+
+    /**
+     * Publica sem esperar vaga na janela. Se ela estiver cheia, o future já volta recusado.
+     */
+    public CompletableFuture<Void> publica(String exchange, String routingKey, Message message) {
+        if (!janela.tryAcquire()) {
+            return recusada("Janela de confirmações cheia (" + properties.getJanela() + ")");
+        }
+        return envia(rabbitTemplate, exchange, routingKey, message);
+    }
+
+    /**
+     * Publica usando um {@link RabbitOperations} já amarrado a um channel (dentro de um invoke), esperando vaga na
+     * janela por até "esperaPorJanelaMs". É o caminho do lote: ali a espera é justamente o backpressure que queremos.
+     */
+    public CompletableFuture<Void> publicaAguardandoJanela(RabbitOperations operations, String exchange, String routingKey, Message message) {
+        try {
+            if (!janela.tryAcquire(properties.getEsperaPorJanelaMs(), TimeUnit.MILLISECONDS)) {
+                return recusada("Tempo esgotado esperando vaga na janela de confirmações");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return recusada("Interrompido esperando vaga na janela de confirmações");
+        }
+        return envia(operations, exchange, routingKey, message);
+    }
+
+    /**
+     * @return publicações aguardando ack/nack neste momento
+     */
+    public int emVoo() {
+        return pendentes.size();
+    }
+
+    private CompletableFuture<Void> envia(RabbitOperations operations, String exchange, String routingKey, Message message) {
+        CorrelationData correlationData = new CorrelationData(UUID.randomUUID().toString());
+        Pendente pendente = new Pendente(exchange, System.currentTimeMillis() + properties.getTimeoutConfirmacaoMs());
+        pendentes.put(correlationData.getId(), pendente);
+
+        correlationData.getFuture().addCallback(
+                confirm -> {
+                    if (!confirm.isAck()) {
+                        finaliza(correlationData.getId(), MetricasRabbit.NACK, new PublicacaoRecusadaException("Nack do broker: " + confirm.getReason()));
+                    } else if (correlationData.getReturnedMessage() != null) {
+                        finaliza(correlationData.getId(), MetricasRabbit.DEVOLVIDA, new PublicacaoRecusadaException("Mensagem devolvida: nenhuma fila ligada à exchange " + exchange));
+                    } else {
+                        finaliza(correlationData.getId(), MetricasRabbit.ACK, null);
+                    }
+                },
+                erro -> finaliza(correlationData.getId(), MetricasRabbit.ERRO, new PublicacaoRecusadaException("Falha aguardando confirmação", erro)));
+
+        try {
+            Message codificada = claimCheck.referencia(exchange, registroDeFormatos.codifica(exchange, message));
+            if (codificada.getMessageProperties().getMessageId() == null) {
+                codificada.getMessageProperties().setMessageId(correlationData.getId()); // Identidade estável da mensagem, usada no reprocessamento da DLQ
+            } // Quem já tem (ex: Outbox) mantém: reenvio sai com o mesmo id e o consumidor reconhece a duplicata
+            long inicio = System.nanoTime();
+            operations.send(exchange, routingKey, codificada, correlationData);
+            metricas.envio(exchange, System.nanoTime() - inicio, codificada.getBody().length);
+        } catch (RuntimeException e) {
+            // Não só AmqpException: falha codificando (formato, compressão, claim-check) também tem de liberar a vaga
+            finaliza(correlationData.getId(), MetricasRabbit.ERRO, e);
+        }
+        return pendente.future;
+    }
+
+    /**
+     * Só quem tirar o pendente do mapa libera a vaga na janela. Assim confirmação atrasada que chega depois do timeout
+     * (ou o contrário) não libera a vaga duas vezes.
+     */
+    private void finaliza(String id, String resultado, Throwable erro) {
+        Pendente pendente = pendentes.remove(id);
+        if (pendente == null) {
+            return;
+        }
+        janela.release();
+        metricas.confirmacao(pendente.exchange, resultado, System.nanoTime() - pendente.inicio);
+        if (erro == null) {
+            pendente.future.complete(null);
+        } else {
+            pendente.future.completeExceptionally(erro);
+        }
+    }
+
+    private void expiraPendentes() {
+        long agora = System.currentTimeMillis();
+        pendentes.forEach((id, pendente) -> {
+            if (pendente.prazo < agora) {
+                finaliza(id, MetricasRabbit.TIMEOUT, new PublicacaoRecusadaException("Broker não confirmou em " + properties.getTimeoutConfirmacaoMs() + "ms"));
+            }
+        });
+    }
+
+    private static CompletableFuture<Void> recusada(String motivo) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(new PublicacaoRecusadaException(motivo));
+        return future;
+    }
+
+    @PreDestroy
+    void encerra() {
+        varredor.shutdownNow();
+    }
+
+    private static class Pendente {
+
+        private final String exchange;
+        private final long prazo;
+        private final long inicio = System.nanoTime();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Pendente(String exchange, long prazo) {
+            this.exchange = exchange;
+            this.prazo = prazo;
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+package org.cave.rabbit.rabbit.retentativa;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.cave.rabbit.rabbit.publicacao.PublicacaoRecusadaException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+/**
+ * Retentativa fora da thread do consumidor.
+ * <p>
+ * Em vez de segurar a thread com um sleep (RetryTemplate), a mensagem que falhou é republicada numa fila delayed.
+ * Cada degrau é uma fila com x-message-ttl fixo e dead-letter para a fila normal: quando o TTL vence, a mensagem
+ * volta sozinha para ser consumida de novo. Enquanto isso a thread já está processando outras mensagens.
+ * <p>
+ * Um TTL por fila (e não por mensagem) é proposital: o RabbitMQ só expira mensagens na cabeça da fila, então misturar
+ * TTLs diferentes numa fila só faria uma mensagem de 10 minutos segurar as de 1 segundo atrás dela.
+ * <p>
+ * O número da tentativa vai no header {@link #X_TENTATIVAS}. Depois do último degrau, a mensagem vai para a DLQ.
+ */
+@Slf4j
+public class PoliticaDeRetentativa {
+
+    public static final String X_TENTATIVAS = "x-tentativas";
+    public static final String X_EXCEPTION_MESSAGE = "x-exception-message";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final List<String> filasDeAtraso;
+    private final String filaDlq;
+    private final long timeoutConfirmacaoMs;
+
+    public PoliticaDeRetentativa(RabbitTemplate rabbitTemplate, List<String> filasDeAtraso, String filaDlq, long timeoutConfirmacaoMs) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.filasDeAtraso = Collections.unmodifiableList(filasDeAtraso);
+        this.filaDlq = filaDlq;
+        this.timeoutConfirmacaoMs = timeoutConfirmacaoMs;
+    }
+
+    /**
+     * Nome da fila delayed de cada degrau. Ex: servico_delayed_nome_do_processo_1000ms
+     */
+    public static List<String> nomesDasFilas(String prefixo, List<Duration> atrasos) {
+        return atrasos.stream()
+                .map(atraso -> nomeDaFila(prefixo, atraso))
+                .collect(Collectors.toList());
+    }
+
+    public static String nomeDaFila(String prefixo, Duration atraso) {
+        return prefixo + "_" + atraso.toMillis() + "ms";
+    }
+
+    /**
+     * @return tentativas já feitas, segundo o header (0 na primeira entrega)
+     */
+    public static int tentativas(Message message) {
+        Object valor = message.getMessageProperties().getHeaders().get(X_TENTATIVAS);
+        return valor instanceof Number ? ((Number) valor).intValue() : 0;
+    }
+
+    /**
+     * @return fila para onde a mensagem vai depois de falhar mais uma vez: o próximo degrau ou a DLQ
+     */
+    public String destino(Message message) {
+        int tentativa = tentativas(message);
+        return tentativa < filasDeAtraso.size() ? filasDeAtraso.get(tentativa) : filaDlq;
+    }
+
+    /**
+     * Republica a mensagem no próximo degrau (ou DLQ) e espera o broker confirmar. Só depois disso é seguro o
+     * container mandar o ack da original. Se a confirmação não vier (ou a mensagem voltar devolvida), a exception sobe
+     * e o lote é rejeitado.
+     *
+     * @param message mensagem que falhou
+     * @param erro    motivo, vai num header
+     * @return fila de destino
+     */
+    public String reagenda(Message message, Exception erro) {
+        String destino = destino(message);
+        MessageProperties properties = message.getMessageProperties();
+        properties.setHeader(X_TENTATIVAS, tentativas(message) + 1);
+        properties.setHeader(X_EXCEPTION_MESSAGE, String.valueOf(erro.getMessage()));
+
+        if (destino.equals(filaDlq)) {
+            log.warn("Mensagem esgotou {} retentativas, enviando para {}", filasDeAtraso.size(), filaDlq, erro);
+        } else {
+            log.info("Falha processando mensagem (tentativa {}), reagendando em {}", tentativas(message), destino);
+        }
+
+        CorrelationData correlationData = new CorrelationData(UUID.randomUUID().toString());
+        rabbitTemplate.invoke(operations -> {
+            operations.send("", destino, message, correlationData); // Exchange default: routing key = nome da fila
+            operations.waitForConfirmsOrDie(timeoutConfirmacaoMs);
+            return null;
+        });
+        confirma(correlationData, destino);
+        return destino;
+    }
+
+    /**
+     * O waitForConfirms só diz que o broker mandou ack. Fila de atraso que não existe (apagada na mão, topologia
+     * pela metade) faz o broker devolver a mensagem (mandatory) e mandar ack do mesmo jeito. Sem essa checagem a
+     * original levaria ack e a retentativa sumiria.
+     */
+    private void confirma(CorrelationData correlationData, String destino) {
+        CorrelationData.Confirm confirm;
+        try {
+            confirm = correlationData.getFuture().get(timeoutConfirmacaoMs, TimeUnit.MILLISECONDS); // A devolução chega antes do ack
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PublicacaoRecusadaException("Interrompido esperando confirmação da retentativa em " + destino, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new PublicacaoRecusadaException("Sem confirmação da retentativa em " + destino, e);
+        }
+        if (!confirm.isAck()) {
+            throw new PublicacaoRecusadaException("Nack do broker na retentativa em " + destino + ": " + confirm.getReason());
+        }
+        if (correlationData.getReturnedMessage() != null) {
+            throw new PublicacaoRecusadaException("Retentativa devolvida: fila " + destino + " não existe");
+        }
+    }
+
+}
@@ -0,0 +1,254 @@
+package org.cave.rabbit.rabbit.topologia;
+
+import com.rabbitmq.client.Channel;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import lombok.extern.slf4j.Slf4j;
+import org.cave.rabbit.rabbit.concorrencia.Executores;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.support.RabbitExceptionTranslator;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * RabbitAdmin que declara a topologia em paralelo e pula o que já existe.
+ * <p>
+ * O RabbitAdmin padrão declara tudo num channel só, uma entidade por vez: cada fila é uma ida e volta ao broker, e com
+ * dezenas de processos (cada um com exchange, fila, delayeds, dlq e binding) o startup cresce junto.
+ * Aqui cada exchange/fila é conferida com um declare PASSIVO, em até "paralelismo" channels ao mesmo tempo.
+ * Só o que não existe é declarado de verdade. Bindings não têm passivo no AMQP, então são sempre declarados
+ * (também em paralelo), depois das exchanges e filas.
+ * <p>
+ * O que já foi conferido fica num cache até a conexão cair; reconectou, confere tudo de novo.
+ * <p>
+ * Atenção: entidade que já existe com argumentos diferentes NÃO dá PRECONDITION_FAILED aqui, o passivo só olha o nome.
+ * Mudou x-message-ttl, x-dead-letter-*, etc? Continua valendo trocar o nome (como as delayeds fazem).
+ * <p>
+ * Quem chama o {@link #initialize()} é o listener de conexão do próprio RabbitAdmin, segurando o monitor da conexão.
+ * Por isso os channels saem direto da {@link Connection} já aberta, e não do RabbitTemplate (que pediria a conexão de
+ * novo em outra thread e travaria).
+ */
+@Slf4j
+public class AdminParalelo extends RabbitAdmin {
+
+    private final ConnectionFactory connectionFactory;
+    private final int paralelismo;
+    private final Set<String> conferidos = ConcurrentHashMap.newKeySet();
+
+    private ApplicationContext applicationContext;
+    private String beanName;
+
+    public AdminParalelo(ConnectionFactory connectionFactory, int paralelismo) {
+        super(connectionFactory);
+        this.connectionFactory = connectionFactory;
+        this.paralelismo = Math.max(1, paralelismo);
+        connectionFactory.addConnectionListener(new ConnectionListener() {
+
+            @Override
+            public void onCreate(Connection connection) {
+                // Quem declara é o listener do RabbitAdmin
+            }
+
+            @Override
+            public void onClose(Connection connection) {
+                conferidos.clear();
+            }
+
+        });
+    }
+
+    /**
+     * Declara também quando uma conexão de OUTRA ConnectionFactory abre (consumo, publicação). O RabbitAdmin só escuta a
+     * própria conexão, e os containers dos nossos factories (lambdas) não acham o admin sozinhos pra redeclarar. Sem
+     * isso, consumidor subindo antes da conexão de administração daria 404 na fila.
+     * <p>
+     * A declaração usa a conexão de administração, então não trava a conexão que acabou de abrir.
+     *
+     * @param connectionFactories conexões que, ao abrir, garantem a topologia
+     */
+    public void declaraAoConectar(ConnectionFactory... connectionFactories) {
+        for (ConnectionFactory outra : connectionFactories) {
+            outra.addConnectionListener(connection -> {
+                try {
+                    initialize();
+                } catch (Exception e) {
+                    log.error("Falha declarando a topologia ao conectar", e);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) {
+        super.setApplicationContext(applicationContext);
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void setBeanName(String name) {
+        super.setBeanName(name);
+        this.beanName = name;
+    }
+
+    @Override
+    public void initialize() {
+        if (applicationContext == null) {
+            return;
+        }
+        List<Exchange> exchanges = declaraveis(Exchange.class);
+        List<Queue> filas = declaraveis(Queue.class);
+        List<Binding> bindings = declaraveis(Binding.class);
+        if (exchanges.isEmpty() && filas.isEmpty() && bindings.isEmpty()) {
+            return;
+        }
+
+        long inicio = System.nanoTime();
+        Connection conexao = connectionFactory.createConnection(); // Mesma thread do listener: não trava, devolve a conexão aberta
+
+        List<Runnable> entidades = new ArrayList<>();
+        exchanges.forEach(exchange -> entidades.add(() -> confere(conexao, "exchange:" + exchange.getName(),
+                channel -> channel.exchangeDeclarePassive(exchange.getName()),
+                channel -> declara(channel, exchange))));
+        filas.stream()
+                .filter(fila -> !fila.getName().startsWith("amq."))
+                .forEach(fila -> entidades.add(() -> confere(conexao, "fila:" + fila.getName(),
+                        channel -> channel.queueDeclarePassive(fila.getName()),
+                        channel -> channel.queueDeclare(fila.getName(), fila.isDurable(), fila.isExclusive(), fila.isAutoDelete(), fila.getArguments()))));
+        List<Runnable> ligacoes = new ArrayList<>();
+        bindings.forEach(binding -> ligacoes.add(() -> confere(conexao, chave(binding), null, channel -> declara(channel, binding))));
+
+        ExecutorService executor = Executores.cria(Executores.Tipo.PLATAFORMA, paralelismo, "topologia-");
+        try {
+            emParalelo(entidades, executor); // Binding precisa das duas pontas, então vai numa segunda fase
+            emParalelo(ligacoes, executor);
+        } finally {
+            executor.shutdown();
+        }
+        log.info("Topologia conferida. exchanges={} filas={} bindings={} em {}ms",
+                exchanges.size(), filas.size(), bindings.size(), (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    /**
+     * Roda uma fase inteira e só volta quando todas terminarem. Se alguma falhar, a primeira falha sobe.
+     */
+    private static void emParalelo(List<Runnable> tarefas, ExecutorService executor) {
+        CompletableFuture<?>[] futuros = tarefas.stream()
+                .map(tarefa -> CompletableFuture.runAsync(tarefa, executor))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(futuros).join();
+        } catch (CompletionException e) {
+            Throwable causa = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            throw RabbitExceptionTranslator.convertRabbitAccessException(causa);
+        }
+    }
+
+    /**
+     * Passivo primeiro (se tiver), declara só se não existir. O 404 do passivo fecha o channel, então a declaração
+     * vai num channel novo.
+     */
+    private void confere(Connection conexao, String chave, Operacao passivo, Operacao declaracao) {
+        if (conferidos.contains(chave)) {
+            return;
+        }
+        try {
+            if (passivo == null || !existe(conexao, passivo)) {
+                noChannel(conexao, declaracao);
+                log.debug("Declarado {}", chave);
+            }
+            conferidos.add(chave);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha declarando " + chave, e);
+        }
+    }
+
+    private static boolean existe(Connection conexao, Operacao passivo) {
+        try {
+            noChannel(conexao, passivo);
+            return true;
+        } catch (IOException e) {
+            return false; // 404 NOT_FOUND
+        }
+    }
+
+    private static void noChannel(Connection conexao, Operacao operacao) throws IOException {
+        Channel channel = conexao.createChannel(false);
+        try {
+            operacao.executa(channel);
+        } finally {
+            try {
+                channel.close(); // Volta pro cache da CachingConnectionFactory (ou é descartado, se o broker fechou)
+            } catch (Exception e) {
+                log.trace("Channel já fechado", e);
+            }
+        }
+    }
+
+    private static void declara(Channel channel, Exchange exchange) throws IOException {
+        String tipo = exchange.getType();
+        Map<String, Object> args = exchange.getArguments();
+        if (exchange.isDelayed()) {
+            args = new HashMap<>(args);
+            args.put("x-delayed-type", tipo);
+            tipo = "x-delayed-message";
+        }
+        channel.exchangeDeclare(exchange.getName(), tipo, exchange.isDurable(), exchange.isAutoDelete(), exchange.isInternal(), args);
+    }
+
+    private static void declara(Channel channel, Binding binding) throws IOException {
+        if (binding.isDestinationQueue()) {
+            channel.queueBind(binding.getDestination(), binding.getExchange(), binding.getRoutingKey(), binding.getArguments());
+        } else {
+            channel.exchangeBind(binding.getDestination(), binding.getExchange(), binding.getRoutingKey(), binding.getArguments());
+        }
+    }
+
+    private static String chave(Binding binding) {
+        return "binding:" + binding.getExchange() + ">" + binding.getDestinationType() + ":" + binding.getDestination()
+                + ":" + binding.getRoutingKey() + ":" + binding.getArguments();
+    }
+
+    /**
+     * Mesmo filtro do RabbitAdmin: beans soltos e de dentro de {@link Declarables}, que devem ser declarados por esse admin.
+     */
+    private <T extends Declarable> List<T> declaraveis(Class<T> tipo) {
+        Collection<T> soltos = applicationContext.getBeansOfType(tipo).values();
+        Set<T> todos = new LinkedHashSet<>(soltos);
+        applicationContext.getBeansOfType(Declarables.class).values()
+                .forEach(declarables -> todos.addAll(declarables.getDeclarablesByType(tipo)));
+        List<T> meus = new ArrayList<>();
+        for (T declaravel : todos) {
+            Collection<?> admins = declaravel.getDeclaringAdmins();
+            if (declaravel.shouldDeclare() && (admins.isEmpty() || admins.contains(this) || (beanName != null && admins.contains(beanName)))) {
+                meus.add(declaravel);
+            }
+        }
+        return meus;
+    }
+
+    @FunctionalInterface
+    private interface Operacao {
+
+        void executa(Channel channel) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,222 @@
+package org.cave.rabbit.rabbit.topologia;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.cave.rabbit.rabbit.config.NomeDoProcessoConfig;
+import org.cave.rabbit.rabbit.config.RabbitContainerFactoryConfig;
+import org.cave.rabbit.rabbit.config.TopologiaProperties;
+import org.cave.rabbit.rabbit.retentativa.PoliticaDeRetentativa;
+import org.springframework.amqp.core.AbstractDeclarable;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.annotation.ImportBeanDefinitionRegistrar;
+import org.springframework.core.env.Environment;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.util.StringUtils;
+
+/**
+ * Gera os beans de cada processo de {@link TopologiaProperties}, o mesmo que a NomeDoProcessoConfig faz na mão.
+ * <p>
+ * Para um processo "cobranca-boleto":
+ * <p>
+ * - topologiaCobrancaBoleto: fanout servico_ex_cobranca_boleto, fila servico_queue_cobranca_boleto (DLQ na
+ * servico_dlq_cobranca_boleto), uma servico_delayed_cobranca_boleto_Nms por degrau e o binding
+ * - retentativaCobrancaBoleto: {@link PoliticaDeRetentativa} com os degraus acima (só fila clássica, ver {@link TipoDeFila})
+ * - cobrancaBoletoContainerFactory: para o @RabbitListener(queues = "servico_queue_cobranca_boleto", containerFactory = "cobrancaBoletoContainerFactory")
+ * <p>
+ * Precisa rodar antes dos beans existirem (são definições de bean), então as propriedades são lidas direto do
+ * Environment com o {@link Binder}, e não injetadas.
+ */
+public class RegistroDeProcessos implements ImportBeanDefinitionRegistrar, EnvironmentAware {
+
+    public static final String PREFIXO = "rabbit.topologia";
+
+    private Environment environment;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public void registerBeanDefinitions(AnnotationMetadata metadata, BeanDefinitionRegistry registry) {
+        TopologiaProperties properties = Binder.get(environment).bind(PREFIXO, TopologiaProperties.class).orElseGet(TopologiaProperties::new);
+        properties.getProcessos().forEach((processo, config) -> {
+            registry.registerBeanDefinition("topologia" + StringUtils.capitalize(camelCase(processo)),
+                    BeanDefinitionBuilder.rootBeanDefinition(RegistroDeProcessos.class, "topologia")
+                            .addConstructorArgValue(processo)
+                            .addConstructorArgValue(config)
+                            .addConstructorArgReference("rabbitAdmin")
+                            .getBeanDefinition());
+            if (config.getTipo() == TipoDeFila.CLASSICA) { // Quorum retenta no broker, stream não retenta
+                registry.registerBeanDefinition("retentativa" + StringUtils.capitalize(camelCase(processo)),
+                        BeanDefinitionBuilder.rootBeanDefinition(RegistroDeProcessos.class, "retentativa")
+                                .addConstructorArgValue(processo)
+                                .addConstructorArgValue(config)
+                                .addConstructorArgReference("rabbitTemplate")
+                                .getBeanDefinition());
+            }
+            registry.registerBeanDefinition(factory(processo),
+                    BeanDefinitionBuilder.rootBeanDefinition(RegistroDeProcessos.class, "containerFactory")
+                            .addConstructorArgReference("connectionFactory")
+                            .addConstructorArgValue(config)
+                            .getBeanDefinition());
+        });
+    }
+
+    /**
+     * Tudo que o processo precisa no broker, num Declarables só. Igual à NomeDoProcessoConfig.
+     * <p>
+     * O que entra depende do {@link TipoDeFila}: delayeds só na clássica, DLQ na clássica e na quorum, nada disso no stream.
+     */
+    public static Declarables topologia(String processo, TopologiaProperties.Processo config, RabbitAdmin rabbitAdmin) {
+        List<AbstractDeclarable> declaraveis = new ArrayList<>();
+
+        FanoutExchange exchange = new FanoutExchange(exchange(processo));
+        declaraveis.add(exchange);
+
+        Map<String, Object> args = new HashMap<>();
+        if (config.getTipo() != TipoDeFila.CLASSICA) {
+            args.put(TipoDeFila.X_QUEUE_TYPE, config.getTipo().argumento());
+        }
+        if (config.getTipo() == TipoDeFila.STREAM) {
+            args.put(TipoDeFila.X_MAX_AGE, config.getRetencao()); // Stream não tem dead-letter
+        } else {
+            args.put(NomeDoProcessoConfig.X_DEAD_LETTER_EXCHANGE, "");
+            args.put(NomeDoProcessoConfig.X_DEAD_LETTER_ROUTING_KEY, dlq(processo));
+        }
+        if (config.getTipo() == TipoDeFila.QUORUM) {
+            args.put(TipoDeFila.X_DELIVERY_LIMIT, config.getLimiteEntregas()); // O broker manda pra DLQ depois de N entregas
+        }
+        if (config.getTipo() == TipoDeFila.CLASSICA && config.getPrioridadeMaxima() > 0) {
+            args.put(NomeDoProcessoConfig.X_MAX_PRIORITY, config.getPrioridadeMaxima());
+        }
+        Queue fila = new Queue(fila(processo), true, false, false, args);
+        declaraveis.add(fila);
+
+        if (config.getTipo() == TipoDeFila.CLASSICA) {
+            for (Duration atraso : config.getAtrasos()) {
+                Map<String, Object> argsDelayed = new HashMap<>();
+                argsDelayed.put(NomeDoProcessoConfig.X_DEAD_LETTER_EXCHANGE, "");
+                argsDelayed.put(NomeDoProcessoConfig.X_DEAD_LETTER_ROUTING_KEY, fila(processo));
+                argsDelayed.put(NomeDoProcessoConfig.X_MESSAGE_TTL, atraso.toMillis());
+                declaraveis.add(new Queue(PoliticaDeRetentativa.nomeDaFila(delayed(processo), atraso), true, false, false, argsDelayed));
+            }
+        }
+
+        if (config.getTipo() != TipoDeFila.STREAM) {
+            declaraveis.add(new Queue(dlq(processo), true, false, false));
+        }
+
+        Binding binding = BindingBuilder.bind(fila).to(exchange);
+        declaraveis.add(binding);
+
+        declaraveis.forEach(declaravel -> declaravel.setAdminsThatShouldDeclare(rabbitAdmin));
+        return new Declarables(new ArrayList<Declarable>(declaraveis));
+    }
+
+    public static PoliticaDeRetentativa retentativa(String processo, TopologiaProperties.Processo config, RabbitTemplate rabbitTemplate) {
+        return new PoliticaDeRetentativa(rabbitTemplate,
+                PoliticaDeRetentativa.nomesDasFilas(delayed(processo), config.getAtrasos()),
+                dlq(processo),
+                config.getTimeoutConfirmacaoMs());
+    }
+
+    /**
+     * Mesmo molde do {@link RabbitContainerFactoryConfig#nomeDoProcessoContainerFactory}, com os números do processo.
+     * <p>
+     * Stream: um consumidor só, começando no offset configurado. Quer mais leitores? Mais listeners (ou instâncias),
+     * cada um lê o log inteiro, sem cópia por fila.
+     */
+    public static RabbitListenerContainerFactory<SimpleMessageListenerContainer> containerFactory(ConnectionFactory connectionFactory,
+                                                                                                TopologiaProperties.Processo config) {
+        return (RabbitListenerEndpoint endpoint) -> {
+
+            SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
+            container.setConnectionFactory(connectionFactory);
+            container.setRecoveryInterval(RabbitContainerFactoryConfig.RECOVERY_INTERVAL);
+            container.setPrefetchCount(Math.max(config.getPrefetch(), config.getTamanhoLote())); // Em stream, é a janela de crédito
+            container.setDefaultRequeueRejected(config.getTipo() == TipoDeFila.QUORUM); // Quorum: falhou, volta e o broker conta a entrega
+
+            if (config.getTipo() == TipoDeFila.STREAM) {
+                // Cada consumidor de stream é um leitor independente a partir do offset: dois consumidores leriam tudo duas vezes
+                container.setConcurrentConsumers(1);
+                container.setConsumerArguments(Collections.singletonMap(TipoDeFila.X_STREAM_OFFSET, TipoDeFila.offset(config.getOffset())));
+            } else {
+                container.setConcurrentConsumers(config.getConsumidoresMin());
+                container.setMaxConcurrentConsumers(Math.max(config.getConsumidoresMin(), config.getConsumidoresMax()));
+            }
+
+            boolean lote = config.getTamanhoLote() > 1;
+            if (lote) {
+                container.setConsumerBatchEnabled(true);
+                container.setBatchSize(config.getTamanhoLote());
+                container.setReceiveTimeout(config.getReceiveTimeoutMs());
+            }
+
+            if (endpoint != null) {
+                endpoint.setBatchListener(lote);
+                endpoint.setupListenerContainer(container);
+            }
+
+            return container;
+        };
+    }
+
+    /**
+     * Nomes no broker. Mesmo padrão do {@link org.cave.rabbit.rabbit.config.constants.RabbitQueueConstants}.
+     */
+    public static String exchange(String processo) {
+        return "servico_ex_" + sufixo(processo);
+    }
+
+    public static String fila(String processo) {
+        return "servico_queue_" + sufixo(processo);
+    }
+
+    public static String delayed(String processo) {
+        return "servico_delayed_" + sufixo(processo); // Prefixo, cada degrau ganha o atraso no nome
+    }
+
+    public static String dlq(String processo) {
+        return "servico_dlq_" + sufixo(processo);
+    }
+
+    /**
+     * Nome do bean do container factory, para o containerFactory do @RabbitListener.
+     */
+    public static String factory(String processo) {
+        return camelCase(processo) + "ContainerFactory";
+    }
+
+    private static String sufixo(String processo) {
+        return processo.replace('-', '_');
+    }
+
+    private static String camelCase(String processo) {
+        StringBuilder nome = new StringBuilder();
+        for (String parte : processo.split("[-_]")) {
+            nome.append(nome.length() == 0 ? parte : StringUtils.capitalize(parte));
+        }
+        return nome.toString();
+    }
+
+}
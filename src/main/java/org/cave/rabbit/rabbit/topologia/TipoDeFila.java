@@ -0,0 +1,62 @@
+package org.cave.rabbit.rabbit.topologia;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+/**
+ * Tipo da fila principal de um processo de {@link org.cave.rabbit.rabbit.config.TopologiaProperties}.
+ * <p>
+ * CLASSICA: o que sempre usamos. Retentativa pelas delayeds e DLQ republicada pela aplicação ({@link
+ * org.cave.rabbit.rabbit.retentativa.PoliticaDeRetentativa}).
+ * <p>
+ * QUORUM: replicada (Raft). A retentativa é do próprio broker: falhou, a mensagem volta pra fila (requeue) e o broker
+ * conta as entregas. Passou do x-delivery-limit, ele mesmo manda pra DLQ. Sem delayeds, então a retentativa é imediata.
+ * <p>
+ * STREAM: log append-only (RabbitMQ 3.9+). Ler não apaga: cada consumidor começa de um offset (x-stream-offset) e
+ * segue dali, então dá pra reprocessar o histórico e ter N leitores sem copiar a mensagem em N filas. O que sai é por
+ * retenção (x-max-age), não por ack. Sem DLQ e sem retentativa: quem falhou é pulado (o ack só libera crédito).
+ */
+public enum TipoDeFila {
+
+    CLASSICA,
+    QUORUM,
+    STREAM;
+
+    public static final String X_QUEUE_TYPE = "x-queue-type";
+    public static final String X_DELIVERY_LIMIT = "x-delivery-limit";
+    public static final String X_MAX_AGE = "x-max-age";
+    public static final String X_STREAM_OFFSET = "x-stream-offset";
+
+    /**
+     * Valor do x-queue-type. Clássica não manda o argumento, igual às filas que já existem (senão daria PRECONDITION_FAILED).
+     */
+    public String argumento() {
+        return this == CLASSICA ? null : name().toLowerCase();
+    }
+
+    /**
+     * Converte o offset do .properties para o que o broker espera no x-stream-offset:
+     * <p>
+     * - first, last, next: texto
+     * - 12345: número, offset absoluto
+     * - 2024-01-31T10:00:00Z: timestamp (vai como Date, que o client manda como timestamp AMQP)
+     * - 1h, 7D...: intervalo, o broker volta esse tempo a partir de agora
+     *
+     * @param offset como está no .properties
+     * @return valor do argumento
+     */
+    public static Object offset(String offset) {
+        try {
+            return Long.parseLong(offset);
+        } catch (NumberFormatException e) {
+            // Não é número
+        }
+        try {
+            return Date.from(Instant.parse(offset));
+        } catch (DateTimeParseException e) {
+            return offset;
+        }
+    }
+
+}
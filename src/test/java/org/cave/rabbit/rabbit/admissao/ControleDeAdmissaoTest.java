@@ -0,0 +1,107 @@
+package org.cave.rabbit.rabbit.admissao;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Properties;
+import org.cave.rabbit.rabbit.config.AdmissaoProperties;
+import org.cave.rabbit.rabbit.config.ParticionamentoConfig;
+import org.cave.rabbit.rabbit.config.ParticionamentoProperties;
+import org.cave.rabbit.rabbit.config.constants.RabbitQueueConstants;
+import org.cave.rabbit.rabbit.metricas.MetricasRabbit;
+import org.cave.rabbit.rabbit.publicacao.PublicadorConfirmado;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionBlockedEvent;
+import org.springframework.amqp.rabbit.connection.ConnectionUnblockedEvent;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.http.HttpStatus;
+
+class ControleDeAdmissaoTest {
+
+    private RabbitAdmin rabbitAdmin;
+    private PublicadorConfirmado publicador;
+    private ParticionamentoProperties particionamento;
+    private ControleDeAdmissao admissao;
+
+    @BeforeEach
+    void setUp() {
+        rabbitAdmin = mock(RabbitAdmin.class);
+        publicador = mock(PublicadorConfirmado.class);
+        AdmissaoProperties properties = new AdmissaoProperties();
+        properties.setProfundidadeMaxima(100);
+        properties.setProfundidadeRetomada(50);
+        properties.setEmVooMaximo(10);
+        particionamento = new ParticionamentoProperties();
+        admissao = new ControleDeAdmissao(rabbitAdmin, publicador, new MetricasRabbit(new SimpleMeterRegistry()), properties, particionamento);
+    }
+
+    @Test
+    void filaCheiaRecusaAteBaixarDaRetomada() {
+        profundidade(101);
+        admissao.atualiza();
+        assertThat(admissao.avalia()).isEqualTo(DecisaoDeAdmissao.FILA_CHEIA);
+        assertThat(admissao.avalia().status()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+
+        profundidade(60);
+        admissao.atualiza();
+        assertThat(admissao.avalia()).isEqualTo(DecisaoDeAdmissao.FILA_CHEIA);
+
+        profundidade(49);
+        admissao.atualiza();
+        assertThat(admissao.avalia()).isEqualTo(DecisaoDeAdmissao.ACEITA);
+    }
+
+    @Test
+    void comParticoesSomaAsFilas() {
+        particionamento.setHabilitado(true);
+        particionamento.setParticoes(2);
+        profundidade(RabbitQueueConstants.PROCESSO_QUEUE, 1);
+        profundidade(ParticionamentoConfig.nomeDaParticao(0), 60);
+        profundidade(ParticionamentoConfig.nomeDaParticao(1), 60);
+
+        admissao.atualiza();
+
+        assertThat(admissao.avalia()).isEqualTo(DecisaoDeAdmissao.FILA_CHEIA);
+    }
+
+    @Test
+    void muitasPublicacoesEmVooViram429() {
+        when(publicador.emVoo()).thenReturn(10);
+
+        assertThat(admissao.avalia()).isEqualTo(DecisaoDeAdmissao.PUBLICACOES_EM_VOO);
+        assertThat(admissao.avalia().status()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(admissao.retryAfterSegundos(DecisaoDeAdmissao.PUBLICACOES_EM_VOO)).isEqualTo(1);
+    }
+
+    @Test
+    void brokerBloqueadoAteODesbloqueioOuAConexaoCair() {
+        Connection connection = mock(Connection.class);
+        when(connection.isOpen()).thenReturn(true);
+
+        admissao.bloqueada(new ConnectionBlockedEvent(connection, "low on memory"));
+        assertThat(admissao.avalia()).isEqualTo(DecisaoDeAdmissao.BROKER_BLOQUEADO);
+
+        admissao.desbloqueada(new ConnectionUnblockedEvent(connection));
+        assertThat(admissao.avalia()).isEqualTo(DecisaoDeAdmissao.ACEITA);
+
+        admissao.bloqueada(new ConnectionBlockedEvent(connection, "low on memory"));
+        when(connection.isOpen()).thenReturn(false);
+        admissao.atualiza();
+        assertThat(admissao.avalia()).isEqualTo(DecisaoDeAdmissao.ACEITA);
+    }
+
+    private void profundidade(long mensagens) {
+        profundidade(RabbitQueueConstants.PROCESSO_QUEUE, mensagens);
+    }
+
+    private void profundidade(String nome, long mensagens) {
+        Properties fila = new Properties();
+        fila.put(RabbitAdmin.QUEUE_MESSAGE_COUNT, mensagens);
+        when(rabbitAdmin.getQueueProperties(nome)).thenReturn(fila);
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.cave.rabbit.rabbit.claimcheck;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.stream.Stream;
+import org.cave.rabbit.rabbit.config.ClaimCheckProperties;
+import org.cave.rabbit.rabbit.metricas.MetricasRabbit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.util.StreamUtils;
+
+class ClaimCheckTest {
+
+    @TempDir
+    Path diretorio;
+
+    private ClaimCheckProperties properties;
+    private ClaimCheck claimCheck;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ClaimCheckProperties();
+        properties.setHabilitado(true);
+        properties.setLimiteBytes(16);
+        properties.setApagarAposMs(0);
+        claimCheck = new ClaimCheck(new ArmazemEmDisco(diretorio), properties, new MetricasRabbit(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void pequenaPassaDireto() {
+        Message message = mensagem(new byte[16]);
+
+        assertThat(claimCheck.referencia("ex", message)).isSameAs(message);
+    }
+
+    @Test
+    void grandeViraReferenciaEVoltaInteira() throws Exception {
+        byte[] corpo = new byte[1000];
+        corpo[999] = 7;
+
+        Message original = mensagem(corpo);
+
+        Message referencia = claimCheck.referencia("ex", original);
+
+        assertThat(original.getMessageProperties().getHeaders()).doesNotContainKeys(ClaimCheck.X_CLAIM_CHECK, ClaimCheck.X_CLAIM_CHECK_BYTES);
+        assertThat(referencia.getBody()).isEmpty();
+        assertThat(ClaimCheck.ehReferencia(referencia)).isTrue();
+        assertThat(referencia.getMessageProperties().getContentType()).isEqualTo("application/json");
+        assertThat(referencia.getMessageProperties().getHeaders()).containsEntry(ClaimCheck.X_CLAIM_CHECK_BYTES, 1000);
+        try (InputStream stream = claimCheck.abre(referencia)) {
+            assertThat(StreamUtils.copyToByteArray(stream)).isEqualTo(corpo);
+        }
+        assertThat(claimCheck.resolve(referencia).getBody()).isEqualTo(corpo);
+    }
+
+    @Test
+    void descartadaSomeNaColeta() throws Exception {
+        Message referencia = claimCheck.referencia("ex", mensagem(new byte[100]));
+
+        claimCheck.descarta(referencia);
+        claimCheck.coleta();
+
+        assertThatThrownBy(() -> claimCheck.abre(referencia)).isInstanceOf(NoSuchFileException.class);
+    }
+
+    @Test
+    void orfaoMaisVelhoQueARetencaoSomeSoNaRetencao() throws Exception {
+        properties.setRetencao(Duration.ofHours(1));
+        Message velha = claimCheck.referencia("ex", mensagem(new byte[100]));
+        Message nova = claimCheck.referencia("ex", mensagem(new byte[100]));
+        envelhece(velha.getMessageProperties().getHeaders().get(ClaimCheck.X_CLAIM_CHECK).toString());
+
+        claimCheck.coleta();
+        assertThat(claimCheck.resolve(velha).getBody()).hasSize(100);
+
+        claimCheck.aplicaRetencao();
+
+        assertThatThrownBy(() -> claimCheck.abre(velha)).isInstanceOf(NoSuchFileException.class);
+        assertThat(claimCheck.resolve(nova).getBody()).hasSize(100);
+    }
+
+    private void envelhece(String id) throws Exception {
+        try (Stream<Path> arquivos = Files.walk(diretorio)) {
+            Path blob = arquivos.filter(arquivo -> arquivo.getFileName().toString().equals(id)).findFirst().orElseThrow(AssertionError::new);
+            Files.setLastModifiedTime(blob, FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+        }
+    }
+
+    private static Message mensagem(byte[] corpo) {
+        return MessageBuilder.withBody(corpo).setContentType("application/json").build();
+    }
+
+}
@@ -0,0 +1,75 @@
+package org.cave.rabbit.rabbit.concorrencia;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class ControleDeConcorrenciaTest {
+
+    private final ControleDeConcorrencia controle = new ControleDeConcorrencia(3, 10, 100, 200, 2, 3, 1000);
+
+    @Test
+    void sobeSoDepoisDeTicksSeguidosComBacklog() {
+        assertThat(controle.proximo(3, 1000, -1, 0)).isEqualTo(3);
+        assertThat(controle.proximo(3, 1000, -1, 100)).isEqualTo(4);
+    }
+
+    @Test
+    void respeitaCarenciaDepoisDeUmaMudanca() {
+        controle.proximo(3, 1000, -1, 0);
+        assertThat(controle.proximo(3, 1000, -1, 100)).isEqualTo(4);
+
+        controle.proximo(4, 5000, -1, 200);
+        assertThat(controle.proximo(4, 5000, -1, 300)).isEqualTo(4);
+        assertThat(controle.proximo(4, 5000, -1, 1200)).isEqualTo(6);
+    }
+
+    @Test
+    void naoMexeDentroDaFaixaDeHisterese() {
+        for (int i = 0; i < 10; i++) {
+            assertThat(controle.proximo(5, 5 * 50, -1, i * 2000L)).isEqualTo(5);
+        }
+    }
+
+    @Test
+    void desceDevagarENuncaAbaixoDoMinimo() {
+        assertThat(controle.proximo(4, 0, -1, 0)).isEqualTo(4);
+        assertThat(controle.proximo(4, 0, -1, 0)).isEqualTo(4);
+        assertThat(controle.proximo(4, 0, -1, 0)).isEqualTo(3);
+        for (int i = 1; i < 10; i++) {
+            assertThat(controle.proximo(3, 0, -1, i * 2000L)).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void nuncaPassaDoMaximo() {
+        assertThat(controle.proximo(9, 100_000, -1, 0)).isEqualTo(9);
+        assertThat(controle.proximo(9, 100_000, -1, 0)).isEqualTo(10);
+    }
+
+    @Test
+    void handlerLentoSobeComMenosBacklog() {
+        // 50 por consumidor fica dentro da histerese; com p99 4x o alvo pesa 200
+        assertThat(controle.proximo(3, 3 * 50, -1, 0)).isEqualTo(3);
+        assertThat(controle.proximo(3, 3 * 50, -1, 100)).isEqualTo(3);
+
+        assertThat(controle.proximo(3, 3 * 50, 800, 200)).isEqualTo(3);
+        assertThat(controle.proximo(3, 3 * 50, 800, 300)).isEqualTo(4);
+    }
+
+    @Test
+    void handlerRapidoSeguraComMaisBacklog() {
+        assertThat(controle.proximo(3, 1000, 20, 0)).isEqualTo(3);
+        assertThat(controle.proximo(3, 1000, 20, 100)).isEqualTo(3);
+        assertThat(controle.proximo(3, 1000, 20, 200)).isEqualTo(3);
+    }
+
+    @Test
+    void prefetchCresceComHandlerRapido() {
+        assertThat(ControleDeConcorrencia.prefetch(-1, 200, 10, 250)).isEqualTo(250);
+        assertThat(ControleDeConcorrencia.prefetch(400, 200, 10, 250)).isEqualTo(10);
+        assertThat(ControleDeConcorrencia.prefetch(20, 200, 10, 250)).isEqualTo(100);
+        assertThat(ControleDeConcorrencia.prefetch(0.5, 200, 10, 250)).isEqualTo(250);
+    }
+
+}
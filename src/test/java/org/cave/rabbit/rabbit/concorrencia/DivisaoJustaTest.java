@@ -0,0 +1,38 @@
+package org.cave.rabbit.rabbit.concorrencia;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class DivisaoJustaTest {
+
+    @Test
+    void todosComBacklogDividemPeloPeso() {
+        int[] divisao = DivisaoJusta.divide(12, new int[] { 3, 1 }, new int[] { 1, 1 }, new int[] { 100, 100 });
+
+        assertThat(divisao).containsExactly(9, 3);
+    }
+
+    @Test
+    void enxurradaFicaSoComASobra() {
+        // O fluxo 1 tem pouco backlog (pede 3): recebe tudo, mesmo com peso menor
+        int[] divisao = DivisaoJusta.divide(16, new int[] { 4, 1 }, new int[] { 1, 1 }, new int[] { 100, 3 });
+
+        assertThat(divisao).containsExactly(13, 3);
+    }
+
+    @Test
+    void ninguemPedindoFicaNoMinimo() {
+        int[] divisao = DivisaoJusta.divide(16, new int[] { 1, 1, 1 }, new int[] { 1, 2, 1 }, new int[] { 1, 2, 1 });
+
+        assertThat(divisao).containsExactly(1, 2, 1);
+    }
+
+    @Test
+    void minimoVemAntesDoOrcamento() {
+        int[] divisao = DivisaoJusta.divide(2, new int[] { 1, 1 }, new int[] { 2, 1 }, new int[] { 10, 10 });
+
+        assertThat(divisao).containsExactly(2, 1);
+    }
+
+}
@@ -0,0 +1,85 @@
+package org.cave.rabbit.rabbit.concorrencia;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+class JanelaDeAcksTest {
+
+    private final Channel channel = mock(Channel.class);
+    private final JanelaDeAcks janela = new JanelaDeAcks(channel, 2);
+
+    @Test
+    void emOrdemConfirmaNaHora() throws Exception {
+        entrega(1, 2);
+
+        janela.concluida(1);
+        janela.concluida(2);
+
+        InOrder ordem = inOrder(channel);
+        ordem.verify(channel).basicAck(1, true);
+        ordem.verify(channel).basicAck(2, true);
+        assertThat(janela.emAberto()).isZero();
+    }
+
+    @Test
+    void foraDeOrdemEsperaAMaisAntigaESaiNumAckSo() throws Exception {
+        entrega(1, 2, 3);
+
+        janela.concluida(3);
+        janela.concluida(2);
+        verifyNoInteractions(channel);
+
+        janela.concluida(1);
+        verify(channel).basicAck(3, true);
+        verifyNoMoreInteractions(channel);
+        assertThat(janela.emAberto()).isZero();
+    }
+
+    @Test
+    void passouDaRetencaoConfirmaUmaAUma() throws Exception {
+        entrega(1, 2, 3, 4, 5);
+
+        janela.concluida(2);
+        janela.concluida(3);
+        verifyNoInteractions(channel);
+
+        janela.concluida(4);
+        verify(channel).basicAck(2, false);
+        verify(channel).basicAck(3, false);
+        verify(channel).basicAck(4, false);
+
+        // A marca pula as já confirmadas e só o 1 sai no ack múltiplo
+        janela.concluida(1);
+        verify(channel).basicAck(1, true);
+        verifyNoMoreInteractions(channel);
+        assertThat(janela.emAberto()).isEqualTo(1);
+    }
+
+    @Test
+    void falhaViraNackSemRequeue() throws Exception {
+        entrega(1, 2);
+
+        janela.rejeitada(2);
+        verify(channel).basicNack(2, false, false);
+
+        janela.concluida(1);
+        verify(channel).basicAck(1, true);
+        verifyNoMoreInteractions(channel);
+        assertThat(janela.emAberto()).isZero();
+    }
+
+    private void entrega(long... tags) {
+        for (long tag : tags) {
+            janela.entregue(tag);
+        }
+    }
+
+}
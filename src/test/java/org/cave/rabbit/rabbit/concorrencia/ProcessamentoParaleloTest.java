@@ -0,0 +1,89 @@
+package org.cave.rabbit.rabbit.concorrencia;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import com.rabbitmq.client.Channel;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+
+class ProcessamentoParaleloTest {
+
+    private final Channel channel = mock(Channel.class);
+    private final ChannelAwareMessageListener listener = mock(ChannelAwareMessageListener.class);
+    private final CountDownLatch lenta = new CountDownLatch(1);
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+        doAnswer(invocation -> {
+            List<Message> lote = invocation.getArgument(0);
+            String corpo = new String(lote.get(0).getBody());
+            if (corpo.equals("lenta")) {
+                assertThat(lenta.await(5, TimeUnit.SECONDS)).isTrue();
+            } else if (corpo.equals("falha")) {
+                throw new IllegalStateException("falha");
+            }
+            return null;
+        }).when(listener).onMessageBatch(any(), any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        lenta.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void mensagemLentaNaoSeguraAsProntasDepoisDaRetencao() throws Exception {
+        ProcessamentoParalelo paralelo = new ProcessamentoParalelo(listener, executor, 2);
+
+        paralelo.onMessage(mensagem(1, "lenta"), channel);
+        for (long tag = 2; tag <= 5; tag++) {
+            paralelo.onMessage(mensagem(tag, "ok"), channel);
+        }
+
+        // Passou de 2 retidas atrás da lenta: as 3 saem uma a uma, sem esperar a marca. A quarta fica retida.
+        verify(channel, timeout(5000).times(3)).basicAck(anyLong(), eq(false));
+        verify(channel, never()).basicAck(anyLong(), eq(true));
+
+        lenta.countDown();
+        verify(channel, timeout(5000)).basicAck(anyLong(), eq(true)); // A marca anda e leva a lenta junto com a retida
+        verify(channel, never()).basicAck(1, false);
+    }
+
+    @Test
+    void falhaViraNackSemRequeue() throws Exception {
+        ProcessamentoParalelo paralelo = new ProcessamentoParalelo(listener, executor, 2);
+
+        paralelo.onMessage(mensagem(1, "ok"), channel);
+        verify(channel, timeout(5000)).basicAck(1, true);
+        paralelo.onMessage(mensagem(2, "falha"), channel);
+
+        verify(channel, timeout(5000)).basicNack(2, false, false);
+    }
+
+    private static Message mensagem(long tag, String corpo) {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(tag);
+        return new Message(corpo.getBytes(), properties);
+    }
+
+}
@@ -0,0 +1,78 @@
+package org.cave.rabbit.rabbit.dlq;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CheckpointReprocessamentoTest {
+
+    @TempDir
+    Path diretorio;
+
+    @Test
+    void retomaComOMesmoIdEAsChavesJaGravadas() throws Exception {
+        String id;
+        try (CheckpointReprocessamento checkpoint = CheckpointReprocessamento.abre(diretorio, "replay/1")) {
+            id = checkpoint.idExecucao();
+            checkpoint.registra(Arrays.asList("a", "b"));
+        }
+
+        try (CheckpointReprocessamento retomado = CheckpointReprocessamento.abre(diretorio, "replay/1")) {
+            assertThat(retomado.idExecucao()).isEqualTo(id);
+            assertThat(retomado.contem("a")).isTrue();
+            assertThat(retomado.contem("b")).isTrue();
+            assertThat(retomado.contem("c")).isFalse();
+            retomado.registra(Collections.singletonList("c"));
+        }
+
+        try (CheckpointReprocessamento retomado = CheckpointReprocessamento.abre(diretorio, "replay/1")) {
+            assertThat(retomado.contem("c")).isTrue();
+        }
+    }
+
+    @Test
+    void depoisDoAckSoFicaOQueAindaNaoApareceu() throws Exception {
+        try (CheckpointReprocessamento checkpoint = CheckpointReprocessamento.abre(diretorio, "grande")) {
+            checkpoint.registra(Arrays.asList("a", "b"));
+        }
+
+        try (CheckpointReprocessamento retomado = CheckpointReprocessamento.abre(diretorio, "grande")) {
+            retomado.registra(Arrays.asList("c", "d"));
+            retomado.confirma(Arrays.asList("a", "c", "d")); // "a" apareceu na retomada, "b" ainda não
+
+            assertThat(retomado.contem("a")).isFalse();
+            assertThat(retomado.contem("c")).isFalse();
+            assertThat(retomado.contem("b")).isTrue();
+        }
+
+        Path arquivo = diretorio.resolve("grande.checkpoint");
+        assertThat(Files.readAllLines(arquivo)).hasSize(2).endsWith("b");
+        try (CheckpointReprocessamento retomado = CheckpointReprocessamento.abre(diretorio, "grande")) {
+            assertThat(retomado.contem("b")).isTrue();
+            assertThat(retomado.contem("d")).isFalse();
+        }
+    }
+
+    @Test
+    void depoisDeApagadoComecaDoZero() throws Exception {
+        CheckpointReprocessamento checkpoint = CheckpointReprocessamento.abre(diretorio, "padrao");
+        String id = checkpoint.idExecucao();
+        checkpoint.registra(Collections.singletonList("a"));
+        checkpoint.apaga();
+
+        try (Stream<Path> arquivos = Files.list(diretorio)) {
+            assertThat(arquivos).isEmpty();
+        }
+        try (CheckpointReprocessamento novo = CheckpointReprocessamento.abre(diretorio, "padrao")) {
+            assertThat(novo.idExecucao()).isNotEqualTo(id);
+            assertThat(novo.contem("a")).isFalse();
+        }
+    }
+
+}
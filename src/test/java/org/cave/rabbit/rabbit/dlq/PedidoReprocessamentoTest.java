@@ -0,0 +1,28 @@
+package org.cave.rabbit.rabbit.dlq;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+class PedidoReprocessamentoTest {
+
+    @Test
+    void padraoEhValido() {
+        new PedidoReprocessamento().valida();
+    }
+
+    @Test
+    void recusaLoteVazioLimiteETaxaNegativos() {
+        PedidoReprocessamento loteVazio = new PedidoReprocessamento();
+        loteVazio.setTamanhoLote(0);
+        PedidoReprocessamento limiteNegativo = new PedidoReprocessamento();
+        limiteNegativo.setLimite(-1);
+        PedidoReprocessamento taxaNegativa = new PedidoReprocessamento();
+        taxaNegativa.setMensagensPorSegundo(-5);
+
+        assertThatThrownBy(loteVazio::valida).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(limiteNegativo::valida).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(taxaNegativa::valida).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
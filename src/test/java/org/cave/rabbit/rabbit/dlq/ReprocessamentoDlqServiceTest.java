@@ -0,0 +1,191 @@
+package org.cave.rabbit.rabbit.dlq;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.ReturnListener;
+import com.rabbitmq.client.impl.AMQImpl;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.cave.rabbit.rabbit.config.ReprocessamentoDlqProperties;
+import org.cave.rabbit.rabbit.config.constants.RabbitQueueConstants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+/**
+ * A DLQ aqui é uma fila em memória atrás de um Channel mockado: basicGet tira da cabeça, publicar na DLQ põe no fim.
+ */
+class ReprocessamentoDlqServiceTest {
+
+    private static final String DLQ = RabbitQueueConstants.PROCESSO_DLQ;
+
+    @TempDir
+    Path diretorio;
+
+    private final Deque<GetResponse> dlq = new ArrayDeque<>();
+    private final List<String> republicadas = new ArrayList<>();
+    private Channel channel;
+    private ReturnListener devolucoes;
+    private boolean semRota;
+    private long proximaTag;
+    private ReprocessamentoDlqService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        channel = mock(Channel.class);
+        when(channel.queueDeclarePassive(DLQ)).thenAnswer(invocation -> new AMQImpl.Queue.DeclareOk(DLQ, dlq.size(), 0));
+        when(channel.basicGet(DLQ, false)).thenAnswer(invocation -> dlq.poll());
+        doAnswer(invocation -> {
+            devolucoes = invocation.getArgument(0);
+            return null;
+        }).when(channel).addReturnListener(any(ReturnListener.class));
+        doAnswer(invocation -> {
+            AMQP.BasicProperties props = invocation.getArgument(3);
+            byte[] corpo = invocation.getArgument(4);
+            if (semRota) {
+                devolucoes.handleReturn(312, "NO_ROUTE", RabbitQueueConstants.PROCESSO_EX, "", props, corpo);
+            } else {
+                republicadas.add(props.getMessageId());
+            }
+            return null;
+        }).when(channel).basicPublish(eq(RabbitQueueConstants.PROCESSO_EX), eq(""), eq(true), any(AMQP.BasicProperties.class), any(byte[].class));
+        doAnswer(invocation -> {
+            dlq.add(new GetResponse(new Envelope(++proximaTag, false, "", DLQ), invocation.getArgument(2), invocation.getArgument(3), 0));
+            return null;
+        }).when(channel).basicPublish(eq(""), eq(DLQ), any(AMQP.BasicProperties.class), any(byte[].class));
+
+        RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.execute(any())).thenAnswer(invocation -> invocation.<ChannelCallback<?>>getArgument(0).doInRabbit(channel));
+
+        ReprocessamentoDlqProperties properties = new ReprocessamentoDlqProperties();
+        properties.setDiretorioCheckpoint(diretorio);
+        service = new ReprocessamentoDlqService(rabbitTemplate, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.encerra();
+    }
+
+    @Test
+    void republicaOQueCasaEMandaORestoProFimDaDlq() throws Exception {
+        morta("m1", "a");
+        morta("m2", "b");
+        morta("m3", "a");
+        PedidoReprocessamento pedido = pedido();
+        pedido.getHeaders().put("tipo", "a");
+
+        StatusReprocessamento status = executa(pedido);
+
+        assertThat(status.getEstado()).isEqualTo(StatusReprocessamento.Estado.CONCLUIDO);
+        assertThat(republicadas).containsExactly("m1", "m3");
+        assertThat(status.getReprocessadas()).isEqualTo(2);
+        assertThat(status.getFiltradas()).isEqualTo(1);
+        assertThat(ids()).containsExactly("m2"); // Uma volta só: a cópia no fim não é lida de novo
+        try (Stream<Path> arquivos = Files.list(diretorio)) {
+            assertThat(arquivos).isEmpty(); // Concluído, checkpoint apagado
+        }
+    }
+
+    @Test
+    void retomadaSoRemoveOQueJaEstavaNoCheckpoint() throws Exception {
+        try (CheckpointReprocessamento checkpoint = CheckpointReprocessamento.abre(diretorio, "padrao")) {
+            checkpoint.registra(Collections.singletonList("m1")); // Republicada, caiu antes do ack
+        }
+        morta("m1", "a");
+        morta("m2", "a");
+
+        StatusReprocessamento status = executa(pedido());
+
+        assertThat(republicadas).containsExactly("m2");
+        assertThat(status.getDuplicadas()).isEqualTo(1);
+        assertThat(status.getReprocessadas()).isEqualTo(1);
+        verify(channel).basicAck(1, false);
+        assertThat(dlq).isEmpty();
+    }
+
+    @Test
+    void devolvidaPelaExchangeFicaNaDlq() throws Exception {
+        semRota = true;
+        morta("m1", "a");
+
+        StatusReprocessamento status = executa(pedido());
+
+        assertThat(status.getReprocessadas()).isZero();
+        assertThat(status.getNaoRoteadas()).isEqualTo(1);
+        assertThat(ids()).containsExactly("m1");
+    }
+
+    @Test
+    void dryRunSoContaEDevolveTudo() throws Exception {
+        morta("m1", "a");
+        morta("m2", "b");
+        PedidoReprocessamento pedido = pedido();
+        pedido.setDryRun(true);
+        pedido.getHeaders().put("tipo", "b");
+
+        StatusReprocessamento status = executa(pedido);
+
+        assertThat(status.getLidas()).isEqualTo(2);
+        assertThat(status.getReprocessadas()).isEqualTo(1);
+        assertThat(status.getFiltradas()).isEqualTo(1);
+        verify(channel).basicNack(2, true, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        verify(channel, never()).basicPublish(any(), any(), anyBoolean(), any(AMQP.BasicProperties.class), any(byte[].class));
+    }
+
+    private StatusReprocessamento executa(PedidoReprocessamento pedido) throws InterruptedException {
+        StatusReprocessamento status = service.inicia(pedido);
+        for (long prazo = System.currentTimeMillis() + 5000;
+             status.getEstado() == StatusReprocessamento.Estado.EXECUTANDO && System.currentTimeMillis() < prazo; ) {
+            Thread.sleep(10);
+        }
+        assertThat(status.getErro()).isNull();
+        return status;
+    }
+
+    private static PedidoReprocessamento pedido() {
+        PedidoReprocessamento pedido = new PedidoReprocessamento();
+        pedido.setMensagensPorSegundo(10_000);
+        pedido.setTamanhoLote(2);
+        return pedido;
+    }
+
+    private void morta(String messageId, String tipo) {
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                .messageId(messageId)
+                .contentType("application/json")
+                .headers(Collections.singletonMap("tipo", tipo))
+                .build();
+        dlq.add(new GetResponse(new Envelope(++proximaTag, false, "", DLQ), props, "{}".getBytes(StandardCharsets.UTF_8), 0));
+    }
+
+    private List<String> ids() {
+        return dlq.stream().map(resposta -> resposta.getProps().getMessageId()).collect(Collectors.toList());
+    }
+
+}
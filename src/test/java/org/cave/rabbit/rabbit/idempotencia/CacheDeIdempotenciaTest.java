@@ -0,0 +1,45 @@
+package org.cave.rabbit.rabbit.idempotencia;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class CacheDeIdempotenciaTest {
+
+    @Test
+    void lembraAteVencer() {
+        CacheDeIdempotencia cache = new CacheDeIdempotencia(64);
+        cache.adiciona(42, 1000, 0);
+
+        assertThat(cache.contem(42, 999)).isTrue();
+        assertThat(cache.contem(42, 1000)).isFalse();
+        assertThat(cache.contem(43, 0)).isFalse();
+    }
+
+    @Test
+    void naoPassaDaCapacidadeEDespejaAQueVencePrimeiro() {
+        CacheDeIdempotencia cache = new CacheDeIdempotencia(8);
+        assertThat(cache.capacidade()).isEqualTo(8);
+
+        for (long chave = 1; chave <= 8; chave++) {
+            cache.adiciona(chave, 1000 + chave, 0);
+        }
+        cache.adiciona(9, 2000, 0);
+
+        assertThat(cache.contem(1, 0)).isFalse();
+        assertThat(cache.contem(2, 0)).isTrue();
+        assertThat(cache.contem(9, 0)).isTrue();
+    }
+
+    @Test
+    void reaproveitaPosicaoVencida() {
+        CacheDeIdempotencia cache = new CacheDeIdempotencia(8);
+        for (long chave = 1; chave <= 8; chave++) {
+            cache.adiciona(chave, 100, 0);
+        }
+        cache.adiciona(9, 500, 200);
+
+        assertThat(cache.contem(9, 200)).isTrue();
+    }
+
+}
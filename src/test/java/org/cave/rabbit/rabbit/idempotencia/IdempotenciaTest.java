@@ -0,0 +1,87 @@
+package org.cave.rabbit.rabbit.idempotencia;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+
+class IdempotenciaTest {
+
+    @TempDir
+    Path diretorio;
+
+    @Test
+    void duplicadaSoDepoisDeRegistrar() throws Exception {
+        try (Idempotencia idempotencia = new Idempotencia(ChaveIdempotencia.MESSAGE_ID, Duration.ofMinutes(1), 1024, diretorio.resolve("log"))) {
+            Message message = mensagem("id-1", "{}");
+            assertThat(idempotencia.duplicada(message)).isFalse();
+
+            idempotencia.registra(message);
+
+            assertThat(idempotencia.duplicada(mensagem("id-1", "{\"outro\":1}"))).isTrue();
+            assertThat(idempotencia.duplicada(mensagem("id-2", "{}"))).isFalse();
+        }
+    }
+
+    @Test
+    void sobreviveAoRestart() throws Exception {
+        Path arquivo = diretorio.resolve("sub").resolve("log");
+        try (Idempotencia idempotencia = new Idempotencia(ChaveIdempotencia.HASH_CORPO, Duration.ofMinutes(1), 1024, arquivo)) {
+            idempotencia.registra(mensagem(null, "{\"a\":1}"));
+        }
+
+        try (Idempotencia idempotencia = new Idempotencia(ChaveIdempotencia.HASH_CORPO, Duration.ofMinutes(1), 1024, arquivo)) {
+            assertThat(idempotencia.duplicada(mensagem("qualquer", "{\"a\":1}"))).isTrue();
+            assertThat(idempotencia.duplicada(mensagem(null, "{\"a\":2}"))).isFalse();
+        }
+    }
+
+    @Test
+    void arquivoDeOutraCapacidadeComecaVazio() throws Exception {
+        Path arquivo = diretorio.resolve("log");
+        try (Idempotencia idempotencia = new Idempotencia(ChaveIdempotencia.MESSAGE_ID, Duration.ofMinutes(1), 1024, arquivo)) {
+            idempotencia.registra(mensagem("id-1", "{}"));
+        }
+
+        try (Idempotencia idempotencia = new Idempotencia(ChaveIdempotencia.MESSAGE_ID, Duration.ofMinutes(1), 4096, arquivo)) {
+            assertThat(idempotencia.duplicada(mensagem("id-1", "{}"))).isFalse();
+        }
+    }
+
+    @Test
+    void posicaoNoCabecalhoNaoVoltaComVariasThreads() throws Exception {
+        Path arquivo = diretorio.resolve("log");
+        int threads = 8;
+        int porThread = 10_000;
+        try (LogDeIdempotencia log = new LogDeIdempotencia(arquivo, 1024)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++) {
+                executor.execute(() -> {
+                    for (int i = 1; i <= porThread; i++) {
+                        log.registra(i, Long.MAX_VALUE);
+                    }
+                });
+            }
+            executor.shutdown();
+            assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        }
+
+        ByteBuffer cabecalho = ByteBuffer.wrap(Files.readAllBytes(arquivo), 8, 8);
+        assertThat(cabecalho.getLong()).isEqualTo((long) threads * porThread);
+    }
+
+    private static Message mensagem(String messageId, String corpo) {
+        return MessageBuilder.withBody(corpo.getBytes(StandardCharsets.UTF_8)).setMessageId(messageId).build();
+    }
+
+}
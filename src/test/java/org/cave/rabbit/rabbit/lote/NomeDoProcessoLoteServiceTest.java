@@ -0,0 +1,104 @@
+package org.cave.rabbit.rabbit.lote;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import org.cave.rabbit.rabbit.config.ParticionamentoProperties;
+import org.cave.rabbit.rabbit.config.constants.RabbitQueueConstants;
+import org.cave.rabbit.rabbit.particionamento.RoteadorDeParticao;
+import org.cave.rabbit.rabbit.publicacao.PublicacaoRecusadaException;
+import org.cave.rabbit.rabbit.publicacao.PublicadorConfirmado;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class NomeDoProcessoLoteServiceTest {
+
+    private RabbitOperations operations;
+    private PublicadorConfirmado publicador;
+    private NomeDoProcessoLoteService service;
+
+    @BeforeEach
+    void setUp() {
+        operations = mock(RabbitOperations.class);
+        RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.invoke(any())).thenAnswer(invocation ->
+                invocation.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(operations));
+
+        publicador = mock(PublicadorConfirmado.class);
+        when(publicador.publicaAguardandoJanela(any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        service = new NomeDoProcessoLoteService();
+        ReflectionTestUtils.setField(service, "publicador", publicador);
+        ReflectionTestUtils.setField(service, "rabbitTemplate", rabbitTemplate);
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "roteador", new RoteadorDeParticao(new ParticionamentoProperties()));
+    }
+
+    @Test
+    void postaCadaElementoDoArray() {
+        ResultadoLote resultado = service.postaLote(corpo("[{\"a\":1},{\"b\":[1,2]},3,{\"c\":{}}]")).join();
+
+        assertThat(resultado.getAceitos()).isEqualTo(3);
+        assertThat(resultado.getRejeitados()).isEqualTo(1);
+        assertThat(resultado.getErro()).isNull();
+        ArgumentCaptor<Message> mensagens = ArgumentCaptor.forClass(Message.class);
+        verify(publicador, times(3)).publicaAguardandoJanela(same(operations), eq(RabbitQueueConstants.PROCESSO_EX), isNull(), mensagens.capture());
+        assertThat(mensagens.getAllValues())
+                .extracting(message -> new String(message.getBody(), StandardCharsets.UTF_8))
+                .containsExactly("{\"a\":1}", "{\"b\":[1,2]}", "{\"c\":{}}");
+        assertThat(mensagens.getValue().getMessageProperties().getContentType()).isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+    }
+
+    @Test
+    void postaCadaLinhaDoNdjson() {
+        ResultadoLote resultado = service.postaLote(corpo("{\"a\":1}\n{\"b\":2}\n[1]\n")).join();
+
+        assertThat(resultado.getAceitos()).isEqualTo(2);
+        assertThat(resultado.getRejeitados()).isEqualTo(1);
+        assertThat(resultado.getErro()).isNull();
+    }
+
+    @Test
+    void contaComoRejeitadoOQueOBrokerNaoConfirmou() {
+        CompletableFuture<Void> nack = new CompletableFuture<>();
+        nack.completeExceptionally(new PublicacaoRecusadaException("nack"));
+        when(publicador.publicaAguardandoJanela(any(), any(), any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null))
+                .thenReturn(nack);
+
+        ResultadoLote resultado = service.postaLote(corpo("[{\"a\":1},{\"b\":2}]")).join();
+
+        assertThat(resultado.getAceitos()).isEqualTo(1);
+        assertThat(resultado.getRejeitados()).isEqualTo(1);
+    }
+
+    @Test
+    void paraNoPrimeiroElementoQuebradoMantendoOsContadores() {
+        ResultadoLote resultado = service.postaLote(corpo("[{\"a\":1},{\"b\":")).join();
+
+        assertThat(resultado.getAceitos()).isEqualTo(1);
+        assertThat(resultado.getErro()).startsWith("JSON inválido");
+    }
+
+    private static ByteArrayInputStream corpo(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,43 @@
+package org.cave.rabbit.rabbit.mensagem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class CargaJsonTest {
+
+    private static final byte[] CORPO = "{\"a\":{\"x\":[1,2]},\"id\":42,\"nome\":\"zé\",\"nulo\":null}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void leSoOCampoPedido() {
+        CargaJson carga = new CargaJson(CORPO);
+
+        assertThat(carga.texto("id")).isEqualTo("42");
+        assertThat(carga.texto("nome")).isEqualTo("zé");
+        assertThat(carga.campo("a").get("x").size()).isEqualTo(2);
+        assertThat(carga.texto("a")).isNull();
+        assertThat(carga.texto("nulo")).isNull();
+        assertThat(carga.campo("inexistente")).isNull();
+    }
+
+    @Test
+    void expoeOsBytesSemCopia() {
+        CargaJson carga = new CargaJson(CORPO);
+
+        assertThat(carga.bytes()).isSameAs(CORPO);
+        assertThat(carga.buffer().isReadOnly()).isTrue();
+        assertThat(carga.buffer().remaining()).isEqualTo(CORPO.length);
+    }
+
+    @Test
+    void validaUmUnicoObjeto() {
+        ValidadorJson.validaObjeto(CORPO);
+
+        assertThatThrownBy(() -> ValidadorJson.validaObjeto("[1]".getBytes())).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ValidadorJson.validaObjeto("{\"a\":".getBytes())).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ValidadorJson.validaObjeto("{}{}".getBytes())).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
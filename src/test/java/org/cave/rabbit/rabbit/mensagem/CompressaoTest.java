@@ -0,0 +1,35 @@
+package org.cave.rabbit.rabbit.mensagem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.UncheckedIOException;
+import org.junit.jupiter.api.Test;
+
+class CompressaoTest {
+
+    @Test
+    void voltaOQueFoiComprimido() {
+        byte[] dados = new byte[100_000];
+        dados[99_999] = 7;
+
+        for (Compressao compressao : Compressao.values()) {
+            assertThat(compressao.descomprime(compressao.comprime(dados))).isEqualTo(dados);
+        }
+    }
+
+    @Test
+    void paraNoLimiteDescomprimido() {
+        byte[] bomba = new byte[4 * 1024 * 1024]; // Zeros: comprimem pra poucos KB
+
+        for (Compressao compressao : Compressao.values()) {
+            byte[] comprimido = compressao.comprime(bomba);
+
+            assertThat(comprimido.length).isLessThan(64 * 1024);
+            assertThatThrownBy(() -> compressao.descomprime(comprimido, 1024 * 1024))
+                    .isInstanceOf(UncheckedIOException.class)
+                    .hasMessageContaining("passa de");
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package org.cave.rabbit.rabbit.mensagem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.cave.rabbit.rabbit.config.FormatosProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.support.converter.MessagingMessageConverter;
+
+class RegistroDeFormatosTest {
+
+    private static final String JSON = "{\"id\":42,\"itens\":[{\"nome\":\"a\"},{\"nome\":\"b\"}],\"ativo\":true}";
+
+    private FormatosProperties properties;
+    private RegistroDeFormatos registro;
+
+    @BeforeEach
+    void setUp() {
+        properties = new FormatosProperties();
+        properties.getPorExchange().put("ex-smile", FormatoCarga.SMILE);
+        properties.getPorExchange().put("ex-cbor", FormatoCarga.CBOR);
+        registro = new RegistroDeFormatos(properties);
+    }
+
+    @Test
+    void mantemJsonPequenoComoChegou() {
+        Message original = mensagemJson(JSON);
+
+        Message codificada = registro.codifica("ex-qualquer", original);
+
+        assertThat(codificada).isSameAs(original);
+        assertThat(codificada.getMessageProperties().getContentEncoding()).isNull();
+    }
+
+    @Test
+    void transcodificaPorExchangeEOConsumidorLeDeVolta() {
+        for (String exchange : new String[] { "ex-smile", "ex-cbor" }) {
+            Message codificada = registro.codifica(exchange, mensagemJson(JSON));
+
+            CargaJson carga = CargaJson.de(codificada);
+            assertThat(carga.formato()).isEqualTo(registro.formato(exchange));
+            assertThat(carga.texto("id")).isEqualTo("42");
+            assertThat(new String(carga.json(), StandardCharsets.UTF_8)).isEqualTo(JSON);
+        }
+    }
+
+    @Test
+    void comprimeAcimaDoLimiteComQualquerCompressao() {
+        StringBuilder grande = new StringBuilder("{\"itens\":[");
+        for (int i = 0; i < 500; i++) {
+            grande.append(i == 0 ? "" : ",").append("{\"nome\":\"item-").append(i).append("\"}");
+        }
+        String json = grande.append("]}").toString();
+
+        for (Compressao compressao : Compressao.values()) {
+            properties.setCompressao(compressao);
+            Message codificada = registro.codifica("ex-qualquer", mensagemJson(json));
+
+            assertThat(codificada.getMessageProperties().getContentEncoding()).isEqualTo(compressao.contentEncoding());
+            assertThat(codificada.getBody().length).isLessThan(json.length());
+            assertThat(new String(CargaJson.de(codificada).json(), StandardCharsets.UTF_8)).isEqualTo(json);
+        }
+    }
+
+    @Test
+    void conversorDoTemplateLePeloContentType() {
+        ConversorPorContentType conversor = new ConversorPorContentType(FormatoCarga.JSON);
+
+        Object lido = conversor.fromMessage(registro.codifica("ex-smile", mensagemJson(JSON)));
+
+        assertThat(lido).isInstanceOf(Map.class);
+        assertThat(((Map<?, ?>) lido).get("id")).isEqualTo(42);
+    }
+
+    @Test
+    void naoMexeNasPropriedadesDeQuemChamou() {
+        properties.setCompressao(Compressao.LZ4);
+        properties.setLimiteCompressaoBytes(0);
+        Message original = mensagemJson(JSON);
+
+        Message codificada = registro.codifica("ex-smile", original);
+
+        assertThat(codificada.getMessageProperties().getContentEncoding()).isEqualTo(Compressao.LZ4.contentEncoding());
+        assertThat(original.getMessageProperties().getContentType()).isEqualTo(FormatoCarga.JSON.contentType());
+        assertThat(original.getMessageProperties().getContentEncoding()).isNull();
+    }
+
+    @Test
+    void conversorDoListenerLePojoComprimidoEmSmile() {
+        properties.setCompressao(Compressao.LZ4);
+        properties.setLimiteCompressaoBytes(0);
+        Message codificada = registro.codifica("ex-smile", mensagemJson(JSON));
+        org.springframework.messaging.Message<?> doListener = (org.springframework.messaging.Message<?>) new MessagingMessageConverter().fromMessage(codificada);
+
+        Object lido = new ConversorPorContentType(FormatoCarga.JSON).fromMessage(doListener, Pedido.class);
+
+        assertThat(lido).isInstanceOf(Pedido.class);
+        assertThat(((Pedido) lido).id).isEqualTo(42);
+        assertThat(((Pedido) lido).itens).hasSize(2);
+    }
+
+    private static Message mensagemJson(String json) {
+        return new CargaJson(json.getBytes(StandardCharsets.UTF_8)).mensagem();
+    }
+
+    static class Pedido {
+
+        public int id;
+        public List<Map<String, String>> itens;
+        public boolean ativo;
+
+    }
+
+}
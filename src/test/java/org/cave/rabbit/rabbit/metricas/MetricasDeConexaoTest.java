@@ -0,0 +1,58 @@
+package org.cave.rabbit.rabbit.metricas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Collections;
+import java.util.Properties;
+import org.cave.rabbit.rabbit.config.ConexaoProperties;
+import org.cave.rabbit.rabbit.config.RabbitConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+
+class MetricasDeConexaoTest {
+
+    @Test
+    void maisDeUmaConexaoViraModoConnection() {
+        ConexaoProperties properties = new ConexaoProperties();
+        properties.getConsumo().setConexoes(3);
+        properties.getConsumo().setChannels(7);
+        properties.getConsumo().setCheckoutTimeoutMs(500);
+
+        CachingConnectionFactory consumo = RabbitConfig.criaConnectionFactory(properties, properties.getConsumo(), "consumo");
+        CachingConnectionFactory publicacao = RabbitConfig.criaConnectionFactory(properties, properties.getPublicacao(), "publicacao");
+
+        assertThat(consumo.getCacheMode()).isEqualTo(CachingConnectionFactory.CacheMode.CONNECTION);
+        assertThat(consumo.getConnectionCacheSize()).isEqualTo(3);
+        assertThat(consumo.getChannelCacheSize()).isEqualTo(7);
+        assertThat(publicacao.getCacheMode()).isEqualTo(CachingConnectionFactory.CacheMode.CHANNEL);
+    }
+
+    @Test
+    void gaugesPorConnectionFactory() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ConexaoProperties properties = new ConexaoProperties();
+        properties.getPublicacao().setChannels(40);
+        CachingConnectionFactory publicacao = RabbitConfig.criaConnectionFactory(properties, properties.getPublicacao(), "publicacao");
+
+        new MetricasDeConexao(new MetricasRabbit(registry), Collections.singletonMap("publicacaoConnectionFactory", publicacao)).registra();
+
+        assertThat(registry.get("rabbit.conexao.channels.cache").tag("conexao", "publicacaoConnectionFactory").gauge().value()).isEqualTo(40);
+        assertThat(registry.get("rabbit.conexao.conexoes.abertas").gauge().value()).isZero(); // Nunca conectou
+        assertThat(registry.get("rabbit.conexao.channels.ociosos.maximo").gauge().value()).isZero();
+    }
+
+    @Test
+    void somaOsOciososDeTodasAsConexoes() {
+        Properties cache = new Properties();
+        cache.setProperty("idleChannelsNotTx:a", "3");
+        cache.setProperty("idleChannelsNotTx:b", "2");
+        cache.setProperty("idleChannelsTx:a", "1");
+        cache.setProperty("idleChannelsNotTxHighWater:a", "9");
+        cache.setProperty("openConnections", "2");
+
+        assertThat(MetricasDeConexao.soma(cache, false)).isEqualTo(6);
+        assertThat(MetricasDeConexao.soma(cache, true)).isEqualTo(9);
+    }
+
+}
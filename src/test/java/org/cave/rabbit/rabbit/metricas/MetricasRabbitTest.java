@@ -0,0 +1,44 @@
+package org.cave.rabbit.rabbit.metricas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+class MetricasRabbitTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MetricasRabbit metricas = new MetricasRabbit(registry);
+
+    @Test
+    void separaConfirmacoesPorResultado() {
+        metricas.confirmacao("ex", MetricasRabbit.ACK, 1_000_000);
+        metricas.confirmacao("ex", MetricasRabbit.ACK, 2_000_000);
+        metricas.confirmacao("ex", MetricasRabbit.NACK, 3_000_000);
+
+        assertThat(registry.get("rabbit.publicacao.confirmacao").tag("resultado", "ack").timer().count()).isEqualTo(2);
+        assertThat(registry.get("rabbit.publicacao.confirmacao").tag("resultado", "nack").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void contaConsumoPorFilaEResultado() {
+        metricas.consumo("fila", "factory", MetricasRabbit.ACK, 1);
+        metricas.consumo("fila", "factory", MetricasRabbit.REJEITADA, 7);
+
+        assertThat(registry.get("rabbit.consumo.mensagens").tags("fila", "fila", "resultado", "rejeitada").counter().count()).isEqualTo(7);
+    }
+
+    @Test
+    void amostradorLogaUmaACadaN() {
+        AmostradorDeLog amostrador = new AmostradorDeLog(3);
+        int logadas = 0;
+        for (int i = 0; i < 9; i++) {
+            if (amostrador.deveLogar()) {
+                logadas++;
+            }
+        }
+        assertThat(logadas).isEqualTo(3);
+        assertThat(new AmostradorDeLog(0).deveLogar()).isFalse();
+    }
+
+}
@@ -0,0 +1,153 @@
+package org.cave.rabbit.rabbit.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+
+class LogDeSegmentosTest {
+
+    @TempDir
+    Path diretorio;
+
+    @Test
+    void leNaOrdemESoAndaNoConfirma() throws Exception {
+        try (LogDeSegmentos log = new LogDeSegmentos(diretorio, 1024, 4)) {
+            log.grava(bytes("a"));
+            log.grava(bytes("b"));
+            log.grava(bytes("c"));
+
+            assertThat(textos(log.le(2))).containsExactly("a", "b");
+            assertThat(textos(log.le(2))).containsExactly("a", "b"); // Sem confirma, lê de novo
+
+            log.confirma(log.le(2));
+            assertThat(textos(log.le(10))).containsExactly("c");
+            assertThat(log.pendentes()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void confirmaSoOComecoDaLeitura() throws Exception {
+        try (LogDeSegmentos log = new LogDeSegmentos(diretorio, 64, 10)) {
+            for (String texto : new String[] { "a", "b", "c", "d", "e" }) {
+                log.grava(Arrays.copyOf(bytes(texto), 20)); // 2 por segmento: o pedaço confirmado atravessa segmento
+            }
+            LogDeSegmentos.Leitura leitura = log.le(10);
+
+            log.confirma(leitura.ate(0));
+            assertThat(log.pendentes()).isEqualTo(5);
+            log.confirma(leitura.ate(3));
+
+            assertThat(log.pendentes()).isEqualTo(2);
+            assertThat(textos(log.le(10))).extracting(texto -> texto.substring(0, 1)).containsExactly("d", "e");
+        }
+    }
+
+    @Test
+    void passaDeSegmentoEApagaOsLidos() throws Exception {
+        try (LogDeSegmentos log = new LogDeSegmentos(diretorio, 64, 10)) {
+            for (int i = 0; i < 6; i++) {
+                log.grava(new byte[20]); // 28 bytes com o cabeçalho: 2 por segmento
+            }
+            assertThat(log.quantidadeDeSegmentos()).isEqualTo(3);
+
+            LogDeSegmentos.Leitura leitura = log.le(5);
+            assertThat(leitura.registros()).hasSize(5);
+            log.confirma(leitura);
+
+            assertThat(log.quantidadeDeSegmentos()).isEqualTo(1);
+            assertThat(segmentos()).hasSize(1);
+            assertThat(log.le(10).registros()).hasSize(1);
+        }
+    }
+
+    @Test
+    void recusaQuandoEncheOsSegmentos() throws Exception {
+        try (LogDeSegmentos log = new LogDeSegmentos(diretorio, 64, 1)) {
+            log.grava(new byte[20]);
+            log.grava(new byte[20]);
+
+            assertThatThrownBy(() -> log.grava(new byte[20])).isInstanceOf(IllegalStateException.class);
+            assertThatThrownBy(() -> log.grava(new byte[100])).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void continuaDeOndeParouDepoisDoRestart() throws Exception {
+        try (LogDeSegmentos log = new LogDeSegmentos(diretorio, 1024, 4)) {
+            log.grava(bytes("a"));
+            log.grava(bytes("b"));
+            log.confirma(log.le(1));
+        }
+
+        try (LogDeSegmentos log = new LogDeSegmentos(diretorio, 1024, 4)) {
+            assertThat(log.pendentes()).isEqualTo(1);
+            log.grava(bytes("c"));
+            assertThat(textos(log.le(10))).containsExactly("b", "c");
+        }
+    }
+
+    @Test
+    void registroCorrompidoEhOFim() throws Exception {
+        try (LogDeSegmentos log = new LogDeSegmentos(diretorio, 1024, 4)) {
+            log.grava(bytes("a"));
+            log.grava(bytes("b"));
+        }
+        try (FileChannel canal = FileChannel.open(segmentos().get(0), StandardOpenOption.WRITE)) {
+            canal.write(ByteBuffer.wrap(new byte[] { 'X' }), 8 + 1 + 8); // Corpo do "b", o crc não bate mais
+        }
+
+        try (LogDeSegmentos log = new LogDeSegmentos(diretorio, 1024, 4)) {
+            log.grava(bytes("c")); // Entra no lugar do "b"
+            assertThat(textos(log.le(10))).containsExactly("a", "c");
+        }
+    }
+
+    @Test
+    void registroGuardaOQueOPostPreenche() {
+        Message message = MessageBuilder.withBody("{}".getBytes(StandardCharsets.UTF_8))
+                .setContentType("application/json")
+                .setMessageId("id-1")
+                .setPriority(3)
+                .setHeader("x-chave-particao", "42")
+                .build();
+
+        RegistroDeSaida registro = RegistroDeSaida.decodifica(RegistroDeSaida.codifica("ex", null, message));
+
+        assertThat(registro.exchange()).isEqualTo("ex");
+        assertThat(registro.routingKey()).isNull();
+        assertThat(registro.message().getBody()).isEqualTo(message.getBody());
+        assertThat(registro.message().getMessageProperties().getMessageId()).isEqualTo("id-1");
+        assertThat(registro.message().getMessageProperties().getContentType()).isEqualTo("application/json");
+        assertThat(registro.message().getMessageProperties().getPriority()).isEqualTo(3);
+        assertThat(registro.message().getMessageProperties().getHeaders()).containsEntry("x-chave-particao", "42");
+    }
+
+    private List<Path> segmentos() throws Exception {
+        try (Stream<Path> arquivos = Files.list(diretorio)) {
+            return arquivos.filter(arquivo -> arquivo.toString().endsWith(".seg")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] bytes(String texto) {
+        return texto.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> textos(LogDeSegmentos.Leitura leitura) {
+        return leitura.registros().stream().map(registro -> new String(registro, StandardCharsets.UTF_8)).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,114 @@
+package org.cave.rabbit.rabbit.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import org.cave.rabbit.rabbit.config.PublicacaoProperties;
+import org.cave.rabbit.rabbit.metricas.MetricasRabbit;
+import org.cave.rabbit.rabbit.publicacao.PublicacaoRecusadaException;
+import org.cave.rabbit.rabbit.publicacao.PublicadorConfirmado;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+class OutboxTest {
+
+    @TempDir
+    Path diretorio;
+
+    private PublicadorConfirmado publicador;
+    private RabbitTemplate rabbitTemplate;
+    private PublicacaoProperties properties;
+    private SimpleMeterRegistry registry;
+    private Outbox outbox;
+
+    @BeforeEach
+    void setUp() {
+        RabbitOperations operations = mock(RabbitOperations.class);
+        rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.invoke(any())).thenAnswer(invocation ->
+                invocation.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(operations));
+
+        publicador = mock(PublicadorConfirmado.class);
+        when(publicador.publicaAguardandoJanela(any(), any(), any(), any())).thenAnswer(invocation -> {
+            Message message = invocation.getArgument(3);
+            if (!"veneno".equals(texto(message))) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> devolvida = new CompletableFuture<>();
+            devolvida.completeExceptionally(new PublicacaoRecusadaException("Mensagem devolvida"));
+            return devolvida;
+        });
+
+        properties = new PublicacaoProperties();
+        properties.getOutbox().setDiretorio(diretorio.toString());
+        properties.getOutbox().setSegmentoBytes(4096);
+        properties.getOutbox().setFsyncIntervaloMs(0);
+        properties.getOutbox().setReenvioMs(10);
+        properties.getOutbox().setMaximoTentativas(3);
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        outbox.encerra();
+    }
+
+    @Test
+    void mensagemQueNuncaPassaEhEstacionadaEORelaySegue() throws Exception {
+        outbox = new Outbox(publicador, rabbitTemplate, new MetricasRabbit(registry), properties);
+
+        outbox.grava("ex", null, mensagem("a"));
+        outbox.grava("ex", null, mensagem("veneno"));
+        outbox.grava("ex", null, mensagem("b"));
+
+        verify(publicador, timeout(5000).times(3)).publicaAguardandoJanela(any(), any(), any(), argThat(message -> "veneno".equals(texto(message))));
+        for (long prazo = System.currentTimeMillis() + 5000; pendentes() > 0 && System.currentTimeMillis() < prazo; ) {
+            Thread.sleep(10);
+        }
+
+        assertThat(pendentes()).isEqualTo(0);
+        assertThat(registry.get("rabbit.outbox.estacionadas").gauge().value()).isEqualTo(1);
+        verify(publicador, timeout(5000).times(1)).publicaAguardandoJanela(any(), any(), any(), argThat(message -> "a".equals(texto(message))));
+    }
+
+    @Test
+    void brokerForaNaoEstacionaNada() throws Exception {
+        doThrow(new PublicacaoRecusadaException("broker fora")).when(rabbitTemplate).invoke(any());
+        outbox = new Outbox(publicador, rabbitTemplate, new MetricasRabbit(registry), properties);
+
+        outbox.grava("ex", null, mensagem("a"));
+
+        verify(rabbitTemplate, timeout(5000).atLeast(5)).invoke(any());
+        assertThat(pendentes()).isEqualTo(1);
+        assertThat(registry.get("rabbit.outbox.estacionadas").gauge().value()).isEqualTo(0);
+    }
+
+    private double pendentes() {
+        return registry.get("rabbit.outbox.pendentes").gauge().value();
+    }
+
+    private static Message mensagem(String texto) {
+        return MessageBuilder.withBody(texto.getBytes(StandardCharsets.UTF_8)).setContentType("application/json").build();
+    }
+
+    private static String texto(Message message) {
+        return message == null ? null : new String(message.getBody(), StandardCharsets.UTF_8);
+    }
+
+}
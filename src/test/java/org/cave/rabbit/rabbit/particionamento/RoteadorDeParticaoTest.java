@@ -0,0 +1,52 @@
+package org.cave.rabbit.rabbit.particionamento;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import org.cave.rabbit.rabbit.config.ParticionamentoProperties;
+import org.cave.rabbit.rabbit.mensagem.CargaJson;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+
+class RoteadorDeParticaoTest {
+
+    @Test
+    void chaveVemDoCampoConfigurado() {
+        RoteadorDeParticao roteador = new RoteadorDeParticao(habilitado("cliente"));
+
+        Message message = roteador.mensagem(carga("{\"id\":\"a\",\"cliente\":42}"));
+
+        assertThat(message.getMessageProperties().<Object>getHeader(RoteadorDeParticao.X_CHAVE_PARTICAO)).isEqualTo("42");
+    }
+
+    @Test
+    void semOCampoGanhaChaveAleatoria() {
+        RoteadorDeParticao roteador = new RoteadorDeParticao(habilitado("cliente"));
+
+        Object primeira = roteador.mensagem(carga("{\"id\":\"a\"}")).getMessageProperties().getHeader(RoteadorDeParticao.X_CHAVE_PARTICAO);
+        Object segunda = roteador.mensagem(carga("{\"id\":\"a\"}")).getMessageProperties().getHeader(RoteadorDeParticao.X_CHAVE_PARTICAO);
+
+        assertThat(primeira).isNotNull().isNotEqualTo(segunda);
+    }
+
+    @Test
+    void desligadoNaoMexeNaMensagem() {
+        RoteadorDeParticao roteador = new RoteadorDeParticao(new ParticionamentoProperties());
+
+        Message message = roteador.mensagem(carga("{\"id\":\"a\"}"));
+
+        assertThat(message.getMessageProperties().getHeaders()).doesNotContainKey(RoteadorDeParticao.X_CHAVE_PARTICAO);
+    }
+
+    private static ParticionamentoProperties habilitado(String campo) {
+        ParticionamentoProperties properties = new ParticionamentoProperties();
+        properties.setHabilitado(true);
+        properties.setCampoChave(campo);
+        return properties;
+    }
+
+    private static CargaJson carga(String json) {
+        return new CargaJson(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,123 @@
+package org.cave.rabbit.rabbit.publicacao;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.cave.rabbit.rabbit.config.PublicacaoProperties;
+import org.cave.rabbit.rabbit.metricas.MetricasRabbit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+class AcumuladorDePublicacaoTest {
+
+    private RabbitTemplate rabbitTemplate;
+    private PublicadorConfirmado publicador;
+    private PublicacaoProperties properties;
+    private AcumuladorDePublicacao acumulador;
+
+    @BeforeEach
+    void setUp() {
+        RabbitOperations operations = mock(RabbitOperations.class);
+        rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.invoke(any())).thenAnswer(invocation ->
+                invocation.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(operations));
+
+        publicador = mock(PublicadorConfirmado.class);
+        when(publicador.publicaAguardandoJanela(any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        properties = new PublicacaoProperties();
+        properties.getAcumulador().setTamanhoLote(5);
+        properties.getAcumulador().setCanais(1);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        acumulador.encerra();
+    }
+
+    @Test
+    void enviaLoteCheioSemEsperarOLinger() throws Exception {
+        properties.getAcumulador().setLingerMs(60000);
+        acumulador = new AcumuladorDePublicacao(publicador, rabbitTemplate, new MetricasRabbit(new SimpleMeterRegistry()), properties);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(acumulador.publica("ex", null, mensagem()));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        verify(rabbitTemplate, times(2)).invoke(any());
+        verify(publicador, times(10)).publicaAguardandoJanela(any(), any(), any(), any());
+    }
+
+    @Test
+    void loteIncompletoSaiDepoisDoLinger() throws Exception {
+        properties.getAcumulador().setLingerMs(20);
+        acumulador = new AcumuladorDePublicacao(publicador, rabbitTemplate, new MetricasRabbit(new SimpleMeterRegistry()), properties);
+
+        acumulador.publica("ex", null, mensagem()).get(5, TimeUnit.SECONDS);
+
+        verify(rabbitTemplate, times(1)).invoke(any());
+    }
+
+    @Test
+    void futureFalhaQuandoOBrokerRecusa() {
+        CompletableFuture<Void> nack = new CompletableFuture<>();
+        nack.completeExceptionally(new PublicacaoRecusadaException("nack"));
+        when(publicador.publicaAguardandoJanela(any(), any(), any(), any())).thenReturn(nack);
+        properties.getAcumulador().setLingerMs(0);
+        acumulador = new AcumuladorDePublicacao(publicador, rabbitTemplate, new MetricasRabbit(new SimpleMeterRegistry()), properties);
+
+        CompletableFuture<Void> future = acumulador.publica("ex", null, mensagem());
+
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(PublicacaoRecusadaException.class);
+    }
+
+    @Test
+    void excecaoQualquerFalhaSoAMensagemEOCanalSegue() throws Exception {
+        when(publicador.publicaAguardandoJanela(any(), any(), any(), any()))
+                .thenThrow(new IllegalStateException("corpo ilegível"))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        properties.getAcumulador().setLingerMs(0);
+        acumulador = new AcumuladorDePublicacao(publicador, rabbitTemplate, new MetricasRabbit(new SimpleMeterRegistry()), properties);
+
+        CompletableFuture<Void> quebrada = acumulador.publica("ex", null, mensagem());
+        assertThatThrownBy(() -> quebrada.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+
+        acumulador.publica("ex", null, mensagem()).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void falhaDoInvokeNaoMataOCanal() throws Exception {
+        doThrow(new IllegalStateException("channel")).doReturn(null).when(rabbitTemplate).invoke(any());
+        properties.getAcumulador().setLingerMs(0);
+        acumulador = new AcumuladorDePublicacao(publicador, rabbitTemplate, new MetricasRabbit(new SimpleMeterRegistry()), properties);
+
+        CompletableFuture<Void> quebrada = acumulador.publica("ex", null, mensagem());
+        assertThatThrownBy(() -> quebrada.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+
+        acumulador.publica("ex", null, mensagem());
+        verify(rabbitTemplate, timeout(5000).times(2)).invoke(any());
+    }
+
+    private static Message mensagem() {
+        return MessageBuilder.withBody("{}".getBytes()).build();
+    }
+
+}
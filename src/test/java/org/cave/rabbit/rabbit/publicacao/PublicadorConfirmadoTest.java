@@ -0,0 +1,162 @@
+package org.cave.rabbit.rabbit.publicacao;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.cave.rabbit.rabbit.claimcheck.ClaimCheck;
+import org.cave.rabbit.rabbit.config.PublicacaoProperties;
+import org.cave.rabbit.rabbit.mensagem.RegistroDeFormatos;
+import org.cave.rabbit.rabbit.metricas.MetricasRabbit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+class PublicadorConfirmadoTest {
+
+    private RabbitTemplate rabbitTemplate;
+    private RegistroDeFormatos registroDeFormatos;
+    private ClaimCheck claimCheck;
+    private PublicacaoProperties properties;
+    private PublicadorConfirmado publicador;
+
+    @BeforeEach
+    void setUp() {
+        rabbitTemplate = mock(RabbitTemplate.class);
+        registroDeFormatos = mock(RegistroDeFormatos.class);
+        when(registroDeFormatos.codifica(any(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        claimCheck = mock(ClaimCheck.class);
+        when(claimCheck.referencia(any(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+
+        properties = new PublicacaoProperties();
+        properties.setJanela(1);
+        properties.setTimeoutConfirmacaoMs(60000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        publicador.encerra();
+    }
+
+    @Test
+    void ackLiberaAVaga() throws Exception {
+        publicador = novo();
+
+        CompletableFuture<Void> future = publicador.publica("ex", null, mensagem());
+        assertThat(publicador.publica("ex", null, mensagem())).isCompletedExceptionally(); // Janela de 1 cheia
+        confirma(enviada(1), true);
+
+        assertThat(future).isCompleted().isNotCompletedExceptionally();
+        assertThat(publicador.emVoo()).isZero();
+        assertThat(publicador.publica("ex", null, mensagem())).isNotDone();
+    }
+
+    @Test
+    void devolvidaComAckFalha() {
+        publicador = novo();
+
+        CompletableFuture<Void> future = publicador.publica("ex", null, mensagem());
+        CorrelationData correlationData = enviada(1);
+        correlationData.setReturnedMessage(mensagem());
+        confirma(correlationData, true);
+
+        assertThatThrownBy(future::join).hasCauseInstanceOf(PublicacaoRecusadaException.class).hasMessageContaining("devolvida");
+        assertThat(publicador.emVoo()).isZero();
+    }
+
+    @Test
+    void semConfirmacaoExpiraNoTimeout() {
+        properties.setTimeoutConfirmacaoMs(50);
+        publicador = novo();
+
+        CompletableFuture<Void> future = publicador.publica("ex", null, mensagem());
+
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(PublicacaoRecusadaException.class).hasMessageContaining("não confirmou");
+        assertThat(publicador.emVoo()).isZero();
+    }
+
+    @Test
+    void confirmacaoDepoisDoTimeoutNaoLiberaAVagaDeNovo() throws Exception {
+        properties.setTimeoutConfirmacaoMs(50);
+        publicador = novo();
+
+        CompletableFuture<Void> future = publicador.publica("ex", null, mensagem());
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        confirma(enviada(1), true); // Ack atrasado, o timeout já liberou a vaga
+
+        assertThat(publicador.publica("ex", null, mensagem())).isNotDone();
+        assertThat(publicador.publica("ex", null, mensagem())).isCompletedExceptionally(); // Continua sendo uma vaga só
+    }
+
+    @Test
+    void falhaCodificandoLiberaAVaga() {
+        when(registroDeFormatos.codifica(any(), any())).thenThrow(new IllegalStateException("formato"));
+        publicador = novo();
+
+        assertThatThrownBy(publicador.publica("ex", null, mensagem())::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(publicador.emVoo()).isZero();
+        assertThatThrownBy(publicador.publica("ex", null, mensagem())::join).hasMessageContaining("formato"); // Não "janela cheia"
+    }
+
+    @Test
+    void falhaNoClaimCheckLiberaAVaga() {
+        when(claimCheck.referencia(any(), any())).thenThrow(new IllegalStateException("armazem"));
+        publicador = novo();
+
+        assertThatThrownBy(publicador.publica("ex", null, mensagem())::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(publicador.emVoo()).isZero();
+        assertThatThrownBy(publicador.publica("ex", null, mensagem())::join).hasMessageContaining("armazem");
+    }
+
+    @Test
+    void mantemOMessageIdQueJaVeio() {
+        properties.setJanela(2);
+        publicador = novo();
+        Message comId = mensagem();
+        comId.getMessageProperties().setMessageId("id-do-outbox");
+
+        publicador.publica("ex", null, comId);
+        publicador.publica("ex", null, mensagem());
+
+        ArgumentCaptor<Message> enviadas = ArgumentCaptor.forClass(Message.class);
+        ArgumentCaptor<CorrelationData> correlacoes = ArgumentCaptor.forClass(CorrelationData.class);
+        verify(rabbitTemplate, times(2)).send(eq("ex"), isNull(), enviadas.capture(), correlacoes.capture());
+        assertThat(enviadas.getAllValues().get(0).getMessageProperties().getMessageId()).isEqualTo("id-do-outbox");
+        assertThat(enviadas.getAllValues().get(1).getMessageProperties().getMessageId()).isEqualTo(correlacoes.getAllValues().get(1).getId());
+    }
+
+    private PublicadorConfirmado novo() {
+        return new PublicadorConfirmado(rabbitTemplate, registroDeFormatos, claimCheck, new MetricasRabbit(new SimpleMeterRegistry()), properties);
+    }
+
+    private CorrelationData enviada(int vezes) {
+        ArgumentCaptor<CorrelationData> correlationData = ArgumentCaptor.forClass(CorrelationData.class);
+        verify(rabbitTemplate, times(vezes)).send(any(), any(), any(Message.class), correlationData.capture());
+        return correlationData.getValue();
+    }
+
+    private static void confirma(CorrelationData correlationData, boolean ack) {
+        correlationData.getFuture().set(new CorrelationData.Confirm(ack, null));
+    }
+
+    private static Message mensagem() {
+        return MessageBuilder.withBody("{}".getBytes()).setContentType("application/json").build();
+    }
+
+}
@@ -0,0 +1,77 @@
+package org.cave.rabbit.rabbit.retentativa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import org.cave.rabbit.rabbit.publicacao.PublicacaoRecusadaException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+class PoliticaDeRetentativaTest {
+
+    private static final List<String> FILAS = PoliticaDeRetentativa.nomesDasFilas("delayed", Arrays.asList(Duration.ofSeconds(1), Duration.ofMinutes(10)));
+
+    private RabbitOperations operations;
+    private PoliticaDeRetentativa politica;
+    private boolean devolve;
+
+    @BeforeEach
+    void setUp() {
+        operations = mock(RabbitOperations.class);
+        RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.invoke(any())).thenAnswer(invocation ->
+                invocation.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(operations));
+        doAnswer(invocation -> {
+            CorrelationData correlationData = invocation.getArgument(3);
+            if (devolve) {
+                correlationData.setReturnedMessage(invocation.getArgument(2));
+            }
+            correlationData.getFuture().set(new CorrelationData.Confirm(true, null)); // Devolvida também leva ack
+            return null;
+        }).when(operations).send(any(), any(), any(Message.class), any(CorrelationData.class));
+        politica = new PoliticaDeRetentativa(rabbitTemplate, FILAS, "dlq", 1000);
+    }
+
+    @Test
+    void nomeiaAsFilasPeloAtraso() {
+        assertThat(FILAS).containsExactly("delayed_1000ms", "delayed_600000ms");
+    }
+
+    @Test
+    void sobeUmDegrauPorFalhaEDepoisVaiPraDlq() {
+        Message message = new Message("{}".getBytes(), new MessageProperties());
+
+        assertThat(politica.reagenda(message, new IllegalStateException("1"))).isEqualTo("delayed_1000ms");
+        assertThat(politica.reagenda(message, new IllegalStateException("2"))).isEqualTo("delayed_600000ms");
+        assertThat(politica.reagenda(message, new IllegalStateException("3"))).isEqualTo("dlq");
+
+        assertThat(PoliticaDeRetentativa.tentativas(message)).isEqualTo(3);
+        assertThat(message.getMessageProperties().<String>getHeader(PoliticaDeRetentativa.X_EXCEPTION_MESSAGE)).isEqualTo("3");
+        verify(operations).send(eq(""), eq("dlq"), same(message), any(CorrelationData.class));
+    }
+
+    @Test
+    void filaDeAtrasoQueNaoExisteFazOReagendamentoFalhar() {
+        devolve = true;
+
+        assertThatThrownBy(() -> politica.reagenda(new Message("{}".getBytes(), new MessageProperties()), new IllegalStateException("1")))
+                .isInstanceOf(PublicacaoRecusadaException.class)
+                .hasMessageContaining("delayed_1000ms");
+    }
+
+}
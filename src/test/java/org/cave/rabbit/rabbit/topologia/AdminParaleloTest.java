@@ -0,0 +1,82 @@
+package org.cave.rabbit.rabbit.topologia;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.rabbitmq.client.Channel;
+import java.io.IOException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.context.support.GenericApplicationContext;
+
+class AdminParaleloTest {
+
+    private Channel channel;
+    private ConnectionListener listener;
+    private AdminParalelo admin;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        Connection connection = mock(Connection.class);
+        channel = mock(Channel.class);
+        when(connectionFactory.createConnection()).thenReturn(connection);
+        when(connection.createChannel(false)).thenReturn(channel);
+        when(channel.queueDeclarePassive("nova")).thenThrow(new IOException("404"));
+
+        admin = new AdminParalelo(connectionFactory, 4);
+        ArgumentCaptor<ConnectionListener> captor = ArgumentCaptor.forClass(ConnectionListener.class);
+        verify(connectionFactory).addConnectionListener(captor.capture());
+        listener = captor.getValue();
+
+        GenericApplicationContext context = new GenericApplicationContext();
+        FanoutExchange exchange = new FanoutExchange("ex");
+        Queue existente = new Queue("existente");
+        context.registerBean("ex", FanoutExchange.class, () -> exchange);
+        context.registerBean("existente", Queue.class, () -> existente);
+        context.registerBean("nova", Queue.class, () -> new Queue("nova"));
+        context.registerBean("binding", org.springframework.amqp.core.Binding.class, () -> BindingBuilder.bind(existente).to(exchange));
+        context.refresh();
+        admin.setApplicationContext(context);
+    }
+
+    @Test
+    void declaraSoOQueNaoExiste() throws IOException {
+        admin.initialize();
+
+        verify(channel).queueDeclare(eq("nova"), anyBoolean(), anyBoolean(), anyBoolean(), anyMap());
+        verify(channel, never()).queueDeclare(eq("existente"), anyBoolean(), anyBoolean(), anyBoolean(), anyMap());
+        verify(channel, never()).exchangeDeclare(any(String.class), any(String.class), anyBoolean(), anyBoolean(), anyBoolean(), anyMap());
+        verify(channel).queueBind(eq("existente"), eq("ex"), eq(""), anyMap());
+    }
+
+    @Test
+    void cacheValeAteAConexaoCair() throws IOException {
+        admin.initialize();
+        admin.initialize();
+
+        verify(channel, times(1)).queueDeclarePassive("existente");
+        verify(channel, times(1)).queueBind(eq("existente"), eq("ex"), eq(""), anyMap());
+
+        listener.onClose(mock(Connection.class));
+        admin.initialize();
+
+        verify(channel, times(2)).queueDeclarePassive("existente");
+        verify(channel, times(2)).queueDeclare(eq("nova"), anyBoolean(), anyBoolean(), anyBoolean(), anyMap());
+    }
+
+}
@@ -0,0 +1,99 @@
+package org.cave.rabbit.rabbit.topologia;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.time.Instant;
+import java.util.Date;
+import org.cave.rabbit.rabbit.config.TopologiaProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.mock.env.MockEnvironment;
+
+class RegistroDeProcessosTest {
+
+    @Test
+    void cadaProcessoGanhaTopologiaRetentativaEFactory() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("rabbit.topologia.processos.cobranca-boleto.consumidores-max", "5")
+                .withProperty("rabbit.topologia.processos.aviso.tipo", "QUORUM");
+        DefaultListableBeanFactory registry = new DefaultListableBeanFactory();
+        RegistroDeProcessos registro = new RegistroDeProcessos();
+        registro.setEnvironment(environment);
+
+        registro.registerBeanDefinitions(null, registry);
+
+        assertThat(registry.getBeanDefinitionNames()).containsExactlyInAnyOrder(
+                "topologiaCobrancaBoleto", "retentativaCobrancaBoleto", "cobrancaBoletoContainerFactory",
+                "topologiaAviso", "avisoContainerFactory"); // Quorum não usa a retentativa da aplicação
+    }
+
+    @Test
+    void topologiaSegueOPadraoDeNomes() {
+        TopologiaProperties.Processo config = new TopologiaProperties.Processo();
+
+        Declarables declarables = RegistroDeProcessos.topologia("cobranca-boleto", config, mock(RabbitAdmin.class));
+
+        assertThat(declarables.getDeclarablesByType(Queue.class))
+                .extracting(Queue::getName)
+                .containsExactly("servico_queue_cobranca_boleto",
+                        "servico_delayed_cobranca_boleto_1000ms", "servico_delayed_cobranca_boleto_10000ms",
+                        "servico_delayed_cobranca_boleto_60000ms", "servico_delayed_cobranca_boleto_600000ms",
+                        "servico_dlq_cobranca_boleto");
+        assertThat(declarables.getDeclarablesByType(Binding.class))
+                .extracting(Binding::getExchange, Binding::getDestination)
+                .containsExactly(org.assertj.core.groups.Tuple.tuple("servico_ex_cobranca_boleto", "servico_queue_cobranca_boleto"));
+    }
+
+    @Test
+    void quorumDeixaADlqComOBrokerESemDelayeds() {
+        TopologiaProperties.Processo config = new TopologiaProperties.Processo();
+        config.setTipo(TipoDeFila.QUORUM);
+        config.setLimiteEntregas(3);
+
+        Declarables declarables = RegistroDeProcessos.topologia("aviso", config, mock(RabbitAdmin.class));
+
+        assertThat(declarables.getDeclarablesByType(Queue.class))
+                .extracting(Queue::getName)
+                .containsExactly("servico_queue_aviso", "servico_dlq_aviso");
+        assertThat(declarables.getDeclarablesByType(Queue.class).get(0).getArguments())
+                .containsEntry(TipoDeFila.X_QUEUE_TYPE, "quorum")
+                .containsEntry(TipoDeFila.X_DELIVERY_LIMIT, 3)
+                .containsEntry("x-dead-letter-routing-key", "servico_dlq_aviso");
+    }
+
+    @Test
+    void streamTemRetencaoEConsumidorComecaNoOffset() {
+        TopologiaProperties.Processo config = new TopologiaProperties.Processo();
+        config.setTipo(TipoDeFila.STREAM);
+        config.setRetencao("12h");
+        config.setOffset("first");
+        config.setConsumidoresMax(10);
+
+        Declarables declarables = RegistroDeProcessos.topologia("auditoria", config, mock(RabbitAdmin.class));
+        SimpleMessageListenerContainer container = RegistroDeProcessos.containerFactory(mock(ConnectionFactory.class), config)
+                .createListenerContainer(null);
+
+        assertThat(declarables.getDeclarablesByType(Queue.class)).hasSize(1);
+        assertThat(declarables.getDeclarablesByType(Queue.class).get(0).getArguments())
+                .containsEntry(TipoDeFila.X_QUEUE_TYPE, "stream")
+                .containsEntry(TipoDeFila.X_MAX_AGE, "12h")
+                .doesNotContainKey("x-dead-letter-exchange");
+        assertThat(container.getConsumerArguments()).containsEntry(TipoDeFila.X_STREAM_OFFSET, "first");
+    }
+
+    @Test
+    void offsetViraNumeroTimestampOuTexto() {
+        assertThat(TipoDeFila.offset("42")).isEqualTo(42L);
+        assertThat(TipoDeFila.offset("2024-01-31T10:00:00Z")).isEqualTo(Date.from(Instant.parse("2024-01-31T10:00:00Z")));
+        assertThat(TipoDeFila.offset("1h")).isEqualTo("1h");
+        assertThat(TipoDeFila.offset("next")).isEqualTo("next");
+    }
+
+}